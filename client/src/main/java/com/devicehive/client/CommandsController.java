@@ -2,6 +2,7 @@ package com.devicehive.client;
 
 
 import com.devicehive.client.model.DeviceCommand;
+import com.devicehive.client.model.HistoryPage;
 import com.devicehive.client.model.SubscriptionFilter;
 import com.devicehive.client.model.exceptions.HiveException;
 
@@ -33,6 +34,24 @@ public interface CommandsController {
                                       String status, String sortField, String sortOrder, Integer take, Integer skip,
                                       Integer gridInterval) throws HiveException;
 
+    /**
+     * Queries commands page by page in timestamp order. Unlike skip, continuation token keeps its position when new
+     * commands are inserted, and deep pages are selected as fast as the first one.
+     *
+     * @param deviceGuid   device identifier
+     * @param start        start timestamp
+     * @param end          end timestamp
+     * @param commandName  filter by command
+     * @param status       filter by status
+     * @param sortOrder    ASC or DESC, ignored for the pages after the first one
+     * @param take         page size
+     * @param continuation continuation token of the previous page, null for the first page
+     * @return page of device commands
+     */
+    HistoryPage<DeviceCommand> queryCommands(String deviceGuid, Timestamp start, Timestamp end, String commandName,
+                                             String status, String sortOrder, int take, String continuation)
+        throws HiveException;
+
     /**
      * Get command with following parameters
      *
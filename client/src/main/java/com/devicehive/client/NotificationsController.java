@@ -2,6 +2,7 @@ package com.devicehive.client;
 
 
 import com.devicehive.client.model.DeviceNotification;
+import com.devicehive.client.model.HistoryPage;
 import com.devicehive.client.model.SubscriptionFilter;
 import com.devicehive.client.model.exceptions.HiveException;
 
@@ -34,6 +35,23 @@ public interface NotificationsController {
                                                 String sortOrder, String sortField, Integer take, Integer skip,
                                                 Integer gridInterval) throws HiveException;
 
+    /**
+     * Queries device notifications page by page in timestamp order. Unlike skip, continuation token keeps its position
+     * when new notifications are inserted, and deep pages are selected as fast as the first one.
+     *
+     * @param deviceId         device identifier
+     * @param start            start timestamp
+     * @param end              end timestamp
+     * @param notificationName notification name
+     * @param sortOrder        ASC or DESC, ignored for the pages after the first one
+     * @param take             page size
+     * @param continuation     continuation token of the previous page, null for the first page
+     * @return page of device notifications
+     */
+    HistoryPage<DeviceNotification> queryNotifications(String deviceId, Timestamp start, Timestamp end,
+                                                       String notificationName, String sortOrder, int take,
+                                                       String continuation) throws HiveException;
+
     /**
      * Insert and send notification to the client. See <a href="http://www.devicehive.com/restful#Reference/DeviceNotification/insert">DeviceHive
      * RESTful API: DeviceNotification: insert</a> for more details.
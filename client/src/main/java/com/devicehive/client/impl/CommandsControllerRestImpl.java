@@ -7,6 +7,7 @@ import com.devicehive.client.CommandsController;
 import com.devicehive.client.HiveMessageHandler;
 import com.devicehive.client.impl.context.RestAgent;
 import com.devicehive.client.model.DeviceCommand;
+import com.devicehive.client.model.HistoryPage;
 import com.devicehive.client.model.SubscriptionFilter;
 import com.devicehive.client.model.exceptions.HiveClientException;
 import com.devicehive.client.model.exceptions.HiveException;
@@ -68,6 +69,30 @@ class CommandsControllerRestImpl implements CommandsController {
         return result;
     }
 
+    @Override
+    public HistoryPage<DeviceCommand> queryCommands(String deviceGuid, Timestamp start, Timestamp end,
+                                                    String commandName, String status, String sortOrder, int take,
+                                                    String continuation) throws HiveException {
+        logger.debug("DeviceCommand: page requested for device id {}, start timestamp {}, end timestamp {}, " +
+                     "commandName {}, status {}, sort order {}, take param {}, continuation {}", deviceGuid, start,
+                     end, commandName, status, sortOrder, take, continuation);
+        String path = "/device/" + deviceGuid + "/command";
+        Map<String, Object> queryParams = new HashMap<>();
+        queryParams.put("start", start);
+        queryParams.put("end", end);
+        queryParams.put("command", commandName);
+        queryParams.put("status", status);
+        queryParams.put("sortOrder", sortOrder);
+        queryParams.put("take", take);
+        queryParams.put("continuation", continuation);
+        HistoryPage<DeviceCommand> result = restAgent.executeForPage(path, queryParams,
+                                                                     new TypeToken<List<DeviceCommand>>() {
+                                                                     }.getType(), COMMAND_LISTED);
+        logger.debug("DeviceCommand: page request proceed for device id {}, {} commands received", deviceGuid,
+                     result.getItems().size());
+        return result;
+    }
+
     @Override
     public DeviceCommand getCommand(String guid, long id) throws HiveException {
         logger.debug("DeviceCommand: get requested for device id {] and command id {}", guid, id);
@@ -5,4 +5,8 @@ public class Constants {
      * Should not be changed. Defines request and responses encoding.
      */
     public static final String CURRENT_CHARSET = "UTF-8";
+    /**
+     * Response header with continuation token of device notification and command queries.
+     */
+    public static final String CONTINUATION_HEADER = "X-DeviceHive-Continuation";
 }
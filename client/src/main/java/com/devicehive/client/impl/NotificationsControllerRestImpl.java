@@ -7,6 +7,7 @@ import com.devicehive.client.HiveMessageHandler;
 import com.devicehive.client.NotificationsController;
 import com.devicehive.client.impl.context.RestAgent;
 import com.devicehive.client.model.DeviceNotification;
+import com.devicehive.client.model.HistoryPage;
 import com.devicehive.client.model.SubscriptionFilter;
 import com.devicehive.client.model.exceptions.HiveClientException;
 import com.devicehive.client.model.exceptions.HiveException;
@@ -66,6 +67,29 @@ class NotificationsControllerRestImpl implements NotificationsController {
         return result;
     }
 
+    @Override
+    public HistoryPage<DeviceNotification> queryNotifications(String guid, Timestamp start, Timestamp end,
+                                                              String notificationName, String sortOrder, int take,
+                                                              String continuation) throws HiveException {
+        logger.debug("DeviceNotification: page requested with parameters: device id {}, start timestamp {}, " +
+                     "end timestamp {}, notification name {}, sort order {}, take {}, continuation {}", guid, start,
+                     end, notificationName, sortOrder, take, continuation);
+        String path = "/device/" + guid + "/notification";
+        Map<String, Object> queryParams = new HashMap<>();
+        queryParams.put("start", start);
+        queryParams.put("end", end);
+        queryParams.put("notification", notificationName);
+        queryParams.put("sortOrder", sortOrder);
+        queryParams.put("take", take);
+        queryParams.put("continuation", continuation);
+        HistoryPage<DeviceNotification> result = restAgent.executeForPage(path, queryParams,
+                                                                          new TypeToken<List<DeviceNotification>>() {
+                                                                          }.getType(), NOTIFICATION_TO_CLIENT);
+        logger.debug("DeviceNotification: page request proceed for device id {}, {} notifications received", guid,
+                     result.getItems().size());
+        return result;
+    }
+
     @Override
     public DeviceNotification insertNotification(String guid, DeviceNotification notification)
         throws HiveException {
@@ -4,6 +4,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.reflect.TypeToken;
 
 import com.devicehive.client.HiveMessageHandler;
+import com.devicehive.client.impl.Constants;
 import com.devicehive.client.impl.json.adapters.TimestampAdapter;
 import com.devicehive.client.impl.json.strategies.JsonPolicyApply;
 import com.devicehive.client.impl.json.strategies.JsonPolicyDef;
@@ -16,6 +17,7 @@ import com.devicehive.client.model.CommandPollManyResponse;
 import com.devicehive.client.model.DeviceCommand;
 import com.devicehive.client.model.DeviceNotification;
 import com.devicehive.client.model.ErrorMessage;
+import com.devicehive.client.model.HistoryPage;
 import com.devicehive.client.model.NotificationPollManyResponse;
 import com.devicehive.client.model.SubscriptionFilter;
 import com.devicehive.client.model.exceptions.HiveClientException;
@@ -281,6 +283,30 @@ public class RestAgent {
         }
     }
 
+    /**
+     * Executes GET request for a page of device notifications or commands
+     *
+     * @param path          requested uri
+     * @param queryParams   query params that should be added to the url. Null-valued params are ignored.
+     * @param typeOfR       type of response, list of notifications or commands
+     * @param receivePolicy policy that declares exclusion strategy for received object
+     * @return page with continuation token returned by server
+     */
+    public <T> HistoryPage<T> executeForPage(final String path, final Map<String, Object> queryParams,
+                                             final Type typeOfR, final JsonPolicyDef.Policy receivePolicy)
+        throws HiveException {
+        connectionLock.readLock().lock();
+        try {
+            final Response response = buildInvocation(path, HttpMethod.GET, null, queryParams, null, null).invoke();
+            final List<T> items = getEntity(response, typeOfR, receivePolicy);
+            return new HistoryPage<>(items, response.getHeaderString(Constants.CONTINUATION_HEADER));
+        } catch (ProcessingException e) {
+            throw new HiveException(Messages.INVOKE_TARGET_ERROR, e.getCause());
+        } finally {
+            connectionLock.readLock().unlock();
+        }
+    }
+
     //Private methods------------------------------------------------------------------------------------------
 
     /**
@@ -0,0 +1,35 @@
+package com.devicehive.client.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Page of device notifications or commands, ordered by timestamp. Next page is requested with the continuation token
+ * of this one, it starts right after the last item of this page, so items inserted meanwhile do not shift it.
+ */
+public class HistoryPage<T> implements Serializable {
+
+    private static final long serialVersionUID = -2879457637390658221L;
+    private final List<T> items;
+    private final String continuation;
+
+    public HistoryPage(List<T> items, String continuation) {
+        this.items = items;
+        this.continuation = continuation;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return token of the next page, or null if this page is the last one
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public boolean hasNext() {
+        return continuation != null;
+    }
+}
@@ -1,5 +1,6 @@
 package com.devicehive.auth;
 
+import com.devicehive.auth.websockets.WebsocketActionRequirement;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.AccessKey;
 import com.devicehive.model.AccessKeyPermission;
@@ -51,11 +52,9 @@ public class AccessKeyInterceptor {
             if (expirationDate != null && expirationDate.before(new Timestamp(System.currentTimeMillis()))) {
                 throw new HiveException(UNAUTHORIZED.getReasonPhrase(), UNAUTHORIZED.getStatusCode());
             }
-            Method method = context.getMethod();
-            AllowedKeyAction allowedActionAnnotation = method.getAnnotation(AllowedKeyAction.class);
             Set<AccessKeyPermission>
                 filtered =
-                CheckPermissionsHelper.filterPermissions(key.getPermissions(), allowedActionAnnotation.action(),
+                CheckPermissionsHelper.filterPermissions(key.getPermissions(), getAllowedAction(context),
                                                          hiveSecurityContext.getClientInetAddress(),
                                                          hiveSecurityContext.getOrigin());
             if (filtered.isEmpty()) {
@@ -68,5 +67,12 @@ public class AccessKeyInterceptor {
         }
     }
 
-
+    private AllowedKeyAction.Action getAllowedAction(InvocationContext context) {
+        WebsocketActionRequirement requirement = ThreadLocalVariablesKeeper.getActionRequirement();
+        if (requirement != null && requirement.getKeyAction() != null) {
+            return requirement.getKeyAction();
+        }
+        Method method = context.getMethod();
+        return method.getAnnotation(AllowedKeyAction.class).action();
+    }
 }
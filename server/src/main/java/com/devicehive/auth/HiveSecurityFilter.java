@@ -10,6 +10,7 @@ import com.devicehive.model.User;
 import com.devicehive.service.AccessKeyService;
 import com.devicehive.service.DeviceService;
 import com.devicehive.service.OAuthClientService;
+import com.devicehive.service.RestTokenService;
 import com.devicehive.service.UserService;
 
 import org.apache.commons.codec.binary.Base64;
@@ -49,6 +50,8 @@ public class HiveSecurityFilter implements Filter {
     @Inject
     private OAuthClientService clientService;
     @Inject
+    private RestTokenService restTokenService;
+    @Inject
     private HiveSecurityContext hiveSecurityContext;
 
     @Override
@@ -108,6 +111,12 @@ public class HiveSecurityFilter implements Filter {
                 return null;
             }
         }
+        if (auth.substring(0, 6).equalsIgnoreCase(Constants.OAUTH_AUTH_SCEME)) {
+            String token = auth.substring(6).trim();
+            if (RestTokenService.isToken(token)) {
+                return restTokenService.authenticate(token);
+            }
+        }
         return null;
     }
 
@@ -118,7 +127,7 @@ public class HiveSecurityFilter implements Filter {
         }
         if (auth.substring(0, 6).equalsIgnoreCase(Constants.OAUTH_AUTH_SCEME)) {
             String key = auth.substring(6).trim();
-            return accessKeyService.authenticate(key);
+            return RestTokenService.isToken(key) ? null : accessKeyService.authenticate(key);
         }
         return null;
     }
@@ -2,20 +2,18 @@ package com.devicehive.auth.websockets;
 
 
 import com.devicehive.auth.HivePrincipal;
-import com.devicehive.auth.HiveRoles;
 import com.devicehive.auth.HiveSecurityContext;
 import com.devicehive.exceptions.HiveException;
+import com.devicehive.util.ThreadLocalVariablesKeeper;
+import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.handlers.annotations.WebsocketController;
 
-import java.lang.reflect.Method;
-
 import javax.annotation.Priority;
-import javax.annotation.security.PermitAll;
-import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
+import javax.websocket.Session;
 import javax.ws.rs.core.Response;
 
 @Interceptor
@@ -29,38 +27,32 @@ public class AuthorizationInterceptor {
 
     @AroundInvoke
     public Object authorize(InvocationContext context) throws Exception {
-        Method method = context.getMethod();
-        boolean allowed = false;
-        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
-        if (method.isAnnotationPresent(RolesAllowed.class)) {
-            RolesAllowed rolesAllowed = method.getAnnotation(RolesAllowed.class);
-            String[] roles = rolesAllowed.value();
-            for (String role : roles) {
-                switch (role) {
-                    case HiveRoles.ADMIN:
-                        allowed = allowed ||
-                                  (principal != null && principal.getUser() != null && principal.getUser().isAdmin());
-                        break;
-                    case HiveRoles.CLIENT:
-                        allowed = allowed || (principal != null && principal.getUser() != null);
-                        break;
-                    case HiveRoles.DEVICE:
-                        allowed = allowed || (principal != null && principal.getDevice() != null);
-                        break;
-                    case HiveRoles.KEY:
-                        allowed = allowed || (principal != null && principal.getKey() != null);
-                        break;
-                    default:
-                }
-            }
-        } else {
-            allowed = method.isAnnotationPresent(PermitAll.class);
+        WebsocketActionRequirement requirement = ThreadLocalVariablesKeeper.getActionRequirement();
+        if (requirement == null) {
+            requirement = WebsocketActionRequirement.of(WebsocketActionRequirement.NOT_INDEXED, context.getMethod());
         }
-        if (!allowed) {
+        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
+        if (!isAllowed(requirement, principal)) {
             throw new HiveException(Response.Status.FORBIDDEN.getReasonPhrase(),
                                     Response.Status.FORBIDDEN.getStatusCode());
         }
         return context.proceed();
     }
 
+    private boolean isAllowed(WebsocketActionRequirement requirement, HivePrincipal principal) {
+        Session session = ThreadLocalVariablesKeeper.getSession();
+        HiveWebsocketSessionState state = session != null ? HiveWebsocketSessionState.get(session) : null;
+        // decisions are cached only for principal stored in session, device authenticated by request is checked
+        if (state == null || principal == null || principal != state.getHivePrincipal()
+            || requirement.getIndex() == WebsocketActionRequirement.NOT_INDEXED) {
+            return requirement.isAllowed(principal);
+        }
+        Boolean allowed = state.isActionAllowed(requirement.getIndex());
+        if (allowed == null) {
+            allowed = requirement.isAllowed(principal);
+            state.setActionAllowed(principal, requirement.getIndex(), allowed);
+        }
+        return allowed;
+    }
+
 }
@@ -0,0 +1,114 @@
+package com.devicehive.auth.websockets;
+
+import com.devicehive.auth.AllowedKeyAction;
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.auth.HiveRoles;
+
+import java.lang.reflect.Method;
+
+import javax.annotation.security.PermitAll;
+import javax.annotation.security.RolesAllowed;
+
+/**
+ * Authorization requirements of websocket action, resolved from <code>@RolesAllowed</code>, <code>@PermitAll</code>
+ * and <code>@AllowedKeyAction</code> annotations once, when action method is registered. Roles are kept as bit mask,
+ * so check of principal against action is a single bit operation.
+ */
+public final class WebsocketActionRequirement {
+
+    public static final int NOT_INDEXED = -1;
+
+    private static final int ADMIN_ROLE = 1;
+    private static final int CLIENT_ROLE = 1 << 1;
+    private static final int DEVICE_ROLE = 1 << 2;
+    private static final int KEY_ROLE = 1 << 3;
+
+    private final int index;
+    private final boolean permitAll;
+    private final int roles;
+    private final AllowedKeyAction.Action keyAction;
+
+    private WebsocketActionRequirement(int index, boolean permitAll, int roles, AllowedKeyAction.Action keyAction) {
+        this.index = index;
+        this.permitAll = permitAll;
+        this.roles = roles;
+        this.keyAction = keyAction;
+    }
+
+    /**
+     * @param index  index of action, unique for all registered websocket actions. Used as bit index of per-session
+     *               cache of authorization decisions.
+     * @param method action method
+     * @return requirements of the action
+     */
+    public static WebsocketActionRequirement of(int index, Method method) {
+        int roles = 0;
+        boolean permitAll = false;
+        RolesAllowed rolesAllowed = method.getAnnotation(RolesAllowed.class);
+        if (rolesAllowed != null) {
+            for (String role : rolesAllowed.value()) {
+                roles |= roleMask(role);
+            }
+        } else {
+            permitAll = method.isAnnotationPresent(PermitAll.class);
+        }
+        AllowedKeyAction allowedKeyAction = method.getAnnotation(AllowedKeyAction.class);
+        AllowedKeyAction.Action keyAction = allowedKeyAction != null ? allowedKeyAction.action() : null;
+        return new WebsocketActionRequirement(index, permitAll, roles, keyAction);
+    }
+
+    /**
+     * @param principal principal, may be null
+     * @return bit mask of roles the principal has
+     */
+    public static int rolesOf(HivePrincipal principal) {
+        if (principal == null) {
+            return 0;
+        }
+        int roles = 0;
+        if (principal.getUser() != null) {
+            roles |= CLIENT_ROLE;
+            if (principal.getUser().isAdmin()) {
+                roles |= ADMIN_ROLE;
+            }
+        }
+        if (principal.getDevice() != null) {
+            roles |= DEVICE_ROLE;
+        }
+        if (principal.getKey() != null) {
+            roles |= KEY_ROLE;
+        }
+        return roles;
+    }
+
+    private static int roleMask(String role) {
+        switch (role) {
+            case HiveRoles.ADMIN:
+                return ADMIN_ROLE;
+            case HiveRoles.CLIENT:
+                return CLIENT_ROLE;
+            case HiveRoles.DEVICE:
+                return DEVICE_ROLE;
+            case HiveRoles.KEY:
+                return KEY_ROLE;
+            default:
+                return 0;
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public AllowedKeyAction.Action getKeyAction() {
+        return keyAction;
+    }
+
+    public boolean isAllowed(int principalRoles) {
+        return permitAll || (roles & principalRoles) != 0;
+    }
+
+    public boolean isAllowed(HivePrincipal principal) {
+        return isAllowed(rolesOf(principal));
+    }
+}
@@ -10,6 +10,7 @@ public class Constants {
     public static final String UTF8 = "UTF-8";
     public static final Locale LOCALE = Locale.getDefault();
     public static final String PERSISTENCE_UNIT = "devicehive";
+    public static final String REPLICA_PERSISTENCE_UNIT = "devicehive-replica";
     public static final String API_VERSION = "1.3.1";
     public static final String WEBSOCKET_SERVER_URL = "websocket.url";
     public static final String REST_SERVER_URL = "rest.url";
@@ -22,11 +23,64 @@ public class Constants {
     public static final int MAX_LOGIN_ATTEMPTS_DEFAULT = 10;
     public static final String LAST_LOGIN_TIMEOUT = "user.login.lastTimeout"; // 1 hour
     public static final long LAST_LOGIN_TIMEOUT_DEFAULT = 60 * 60 * 1000; // 1 hour
+    public static final String PASSWORD_HASH_SCHEME = "user.password.scheme";
+    public static final String PASSWORD_HASH_SCHEME_DEFAULT = "pbkdf2";
+    public static final String PASSWORD_PBKDF2_ITERATIONS = "user.password.pbkdf2.iterations";
+    public static final int PASSWORD_PBKDF2_ITERATIONS_DEFAULT = 20000;
+    public static final String VERIFIED_CREDENTIALS_TTL = "user.login.verifiedCredentialsTtl";
+    public static final long VERIFIED_CREDENTIALS_TTL_DEFAULT = 60 * 1000; // 1 minute
+    public static final int VERIFIED_CREDENTIALS_MAX_SIZE = 10000;
+    public static final String ACCESS_KEY_CACHE_TTL = "accessKey.cache.ttl";
+    public static final long ACCESS_KEY_CACHE_TTL_DEFAULT = 5 * 60 * 1000; // 5 minutes
+    public static final String USER_NETWORK_CACHE_TTL = "user.network.cache.ttl";
+    public static final long USER_NETWORK_CACHE_TTL_DEFAULT = 5 * 60 * 1000; // 5 minutes
+    public static final int USER_NETWORK_CACHE_MAX_SIZE = 100000;
+    public static final String REST_TOKEN_SECRET = "rest.token.secret";
+    public static final String REST_TOKEN_TTL = "rest.token.ttl";
+    public static final long REST_TOKEN_TTL_DEFAULT = 15 * 60 * 1000; // 15 minutes
     public static final String WEBSOCKET_SESSION_PING_TIMEOUT = "websocket.ping.timeout";
     public static final long WEBSOCKET_SESSION_PING_TIMEOUT_DEFAULT = 2 * 60 * 1000; //2 minutes
     public static final int WEBSOCKET_MAX_BUFFER_SIZE = 10 * 1024;
+    public static final String WEBSOCKET_CBOR_SUBPROTOCOL = "devicehive.cbor";
+    public static final String WEBSOCKET_BATCH_SIZE = "batchSize";
+    public static final String WEBSOCKET_BATCH_DELAY = "batchDelay";
+    public static final int WEBSOCKET_MAX_BATCH_SIZE = 1000;
+    public static final long WEBSOCKET_MAX_BATCH_DELAY = 1000; // 1 second
+    public static final String WEBSOCKET_MAX_IN_FLIGHT = "maxInFlight";
+    public static final int WEBSOCKET_MAX_IN_FLIGHT_LIMIT = 64;
+    public static final String WEBSOCKET_ORDERED = "ordered";
+    public static final int WEBSOCKET_MAX_COMMAND_UPDATE_SUBSCRIPTIONS = 10000;
+    public static final String COMMAND_UPDATE_ROUTE_TTL = "command.update.route.ttl";
+    public static final long COMMAND_UPDATE_ROUTE_TTL_DEFAULT = 3600; // 1 hour
     public static final String DEVICE_ACTIVITY_MAP = "DEVICE_ACTIVITY_MAP";
+    public static final String DEVICE_ACTIVITY_FLUSH_INTERVAL = "device.activity.flush.interval";
+    public static final long DEVICE_ACTIVITY_FLUSH_INTERVAL_DEFAULT = 1000; // 1 second
+    public static final String DEVICE_EQUIPMENT_FLUSH_INTERVAL = "device.equipment.flush.interval";
+    public static final long DEVICE_EQUIPMENT_FLUSH_INTERVAL_DEFAULT = 1000; // 1 second
+    public static final int DEVICE_EQUIPMENT_CACHE_MAX_DEVICES = 100000;
+    public static final String REPLICA_MAX_LAG = "replica.max.lag";
+    public static final long REPLICA_MAX_LAG_DEFAULT = 5000; // 5 seconds
+    public static final long REPLICA_LAG_CHECK_INTERVAL = 1000; // 1 second
+    /**
+     * Seconds a notification bucket is left open after its end, should cover the longest notification insert
+     * transaction, as notification timestamp is the start time of its transaction.
+     */
+    public static final int NOTIFICATION_ROLLUP_DELAY = 60;
+    /**
+     * Maximum number of seconds rolled up at once, e.g. after downtime.
+     */
+    public static final int NOTIFICATION_ROLLUP_MAX_STEP = 24 * 60 * 60;
     public static final Integer DEFAULT_TAKE = 1000;
+    /**
+     * Number of notification and command ids taken from the sequence at once, should be equal to increment of
+     * device_notification_id_seq and device_command_id_seq.
+     */
+    public static final int MESSAGE_ID_ALLOCATION_SIZE = 50;
+    /**
+     * Number of device ids taken from device_id_seq at once, should be equal to its increment.
+     */
+    public static final int DEVICE_ID_ALLOCATION_SIZE = 50;
+    public static final int DEVICE_BATCH_MAX_SIZE = 1000;
     public static final String CURRENT_USER = "current";
     public static final String BASIC_AUTH_SCHEME = "Basic";
     public static final String OAUTH_AUTH_SCEME = "Bearer";
@@ -55,6 +109,12 @@ public class Constants {
     public static final String SORT_ORDER = "sortOrder";
     public static final String TAKE = "take";
     public static final String SKIP = "skip";
+    public static final String CONTINUATION = "continuation";
+    public static final String CONTINUATION_HEADER = "X-DeviceHive-Continuation";
+    public static final String FORMAT = "format";
+    public static final String PATH = "path";
+    public static final String FUNCTIONS = "functions";
+    public static final int EXPORT_FETCH_SIZE = 1000;
     public static final String WAIT_TIMEOUT = "waitTimeout";
     public static final String START = "start";
     public static final String END = "end";
@@ -83,5 +143,6 @@ public class Constants {
     public static final String LOGIN_PATTERN = "loginPattern";
     public static final String ROLE = "role";
     public static final String DEVICE = "device";
+    public static final String DEVICES = "devices";
 
 }
\ No newline at end of file
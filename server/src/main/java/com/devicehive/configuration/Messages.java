@@ -83,6 +83,15 @@ public class Messages {
     public static final String FIELD_LENGTH_CONSTRAINT = BidBundle.get("FIELD_LENGTH_CONSTRAINT");
     public static final String PING_ERROR = BidBundle.get("PING_ERROR");
     public static final String SHUTDOWN = BidBundle.get("SHUTDOWN");
+    public static final String SESSION_CLOSED = BidBundle.get("SESSION_CLOSED");
+    public static final String INVALID_CONTINUATION_TOKEN = BidBundle.get("INVALID_CONTINUATION_TOKEN");
+    public static final String UNKNOWN_EXPORT_FORMAT = BidBundle.get("UNKNOWN_EXPORT_FORMAT");
+    public static final String EXPORT_INTERRUPTED = BidBundle.get("EXPORT_INTERRUPTED");
+    public static final String UNKNOWN_AGGREGATE_FUNCTION = BidBundle.get("UNKNOWN_AGGREGATE_FUNCTION");
+    public static final String DEVICE_BATCH_TOO_LARGE = BidBundle.get("DEVICE_BATCH_TOO_LARGE");
+    public static final String TOKEN_NOT_RENEWABLE = BidBundle.get("TOKEN_NOT_RENEWABLE");
+    public static final String NOTIFICATION_PARAMETERS_NOT_AGGREGATABLE =
+        BidBundle.get("NOTIFICATION_PARAMETERS_NOT_AGGREGATABLE");
 
     /**
      * Bundle to extract localized strings from property files.
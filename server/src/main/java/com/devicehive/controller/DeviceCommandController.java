@@ -12,12 +12,14 @@ import com.devicehive.controller.util.ResponseFactory;
 import com.devicehive.controller.util.SimpleWaiter;
 import com.devicehive.json.strategies.JsonPolicyApply;
 import com.devicehive.json.strategies.JsonPolicyDef.Policy;
+import com.devicehive.messages.bus.GlobalMessageBus;
 import com.devicehive.messages.handler.RestHandlerCreator;
 import com.devicehive.messages.subscriptions.CommandSubscription;
 import com.devicehive.messages.subscriptions.CommandSubscriptionStorage;
 import com.devicehive.messages.subscriptions.CommandUpdateSubscription;
 import com.devicehive.messages.subscriptions.CommandUpdateSubscriptionStorage;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.ErrorResponse;
@@ -35,8 +37,10 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -66,6 +70,8 @@ import static com.devicehive.auth.AllowedKeyAction.Action.GET_DEVICE_COMMAND;
 import static com.devicehive.auth.AllowedKeyAction.Action.UPDATE_DEVICE_COMMAND;
 import static com.devicehive.configuration.Constants.COMMAND;
 import static com.devicehive.configuration.Constants.COMMAND_ID;
+import static com.devicehive.configuration.Constants.CONTINUATION;
+import static com.devicehive.configuration.Constants.CONTINUATION_HEADER;
 import static com.devicehive.configuration.Constants.DEVICE_GUID;
 import static com.devicehive.configuration.Constants.DEVICE_GUIDS;
 import static com.devicehive.configuration.Constants.END;
@@ -102,6 +108,8 @@ public class DeviceCommandController {
     private SubscriptionManager subscriptionManager;
     @EJB
     private TimestampService timestampService;
+    @EJB
+    private GlobalMessageBus globalMessageBus;
     @Resource(name = "concurrent/DeviceHiveWaitService")
     private ManagedExecutorService mes;
     @Inject
@@ -174,7 +182,7 @@ public class DeviceCommandController {
                     if (isMany) {
                         List<CommandPollManyResponse> resultList = new ArrayList<>(list.size());
                         for (DeviceCommand command : list) {
-                            resultList.add(new CommandPollManyResponse(command, command.getDevice().getGuid()));
+                            resultList.add(new CommandPollManyResponse(command, command.getDeviceGuid()));
                         }
                         response = ResponseFactory.response(Response.Status.OK, resultList, Policy.COMMAND_LISTED);
                     } else {
@@ -226,9 +234,6 @@ public class DeviceCommandController {
                 list = commandService.getDeviceCommandsList(devices, names, timestamp, principal);
             }
         }
-        for (DeviceCommand dc : list) {
-            dc.setUserId(dc.getUser().getId());
-        }
         return list;
     }
 
@@ -316,6 +321,7 @@ public class DeviceCommandController {
         }
 
         if (command.getEntityVersion() == 0) {
+            globalMessageBus.broadcastCommandUpdates(command.getId());
             CommandUpdateSubscriptionStorage storage = subscriptionManager.getCommandUpdateSubscriptionStorage();
             UUID reqId = UUID.randomUUID();
             RestHandlerCreator<DeviceCommand> restHandlerCreator = new RestHandlerCreator<>();
@@ -349,6 +355,8 @@ public class DeviceCommandController {
      * @param sortOrderSt ASC or DESC
      * @param take        like mysql LIMIT
      * @param skip        like mysql OFFSET
+     * @param continuation token of the page end returned in <code>X-DeviceHive-Continuation</code> header of the
+     *                    previous query, can be used with "Timestamp" sort field only, without skip and grid interval
      * @return list of device command with status 200, otherwise empty response with status 400
      */
     @GET
@@ -364,7 +372,8 @@ public class DeviceCommandController {
                           @QueryParam(SORT_ORDER) String sortOrderSt,
                           @QueryParam(TAKE) Integer take,
                           @QueryParam(SKIP) Integer skip,
-                          @QueryParam(GRID_INTERVAL) Integer gridInterval) {
+                          @QueryParam(GRID_INTERVAL) Integer gridInterval,
+                          @QueryParam(CONTINUATION) String continuation) {
 
         logger.debug("Device command query requested");
         boolean sortOrder = SortOrderQueryParamParser.parse(sortOrderSt);
@@ -380,16 +389,33 @@ public class DeviceCommandController {
                                             new ErrorResponse(Messages.INVALID_REQUEST_PARAMETERS));
         }
         sortField = sortField.toLowerCase();
+        boolean keyset = TIMESTAMP.equalsIgnoreCase(sortField) && skip == null && gridInterval == null;
+        ContinuationToken position = null;
+        if (continuation != null) {
+            if (!keyset) {
+                return ResponseFactory.response(Response.Status.BAD_REQUEST,
+                                                new ErrorResponse(Messages.INVALID_CONTINUATION_TOKEN));
+            }
+            position = ContinuationToken.parse(continuation);
+            sortOrder = position.isAscending();
+        }
 
         final HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
         Device device = deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
 
         List<DeviceCommand> commandList =
             commandService.queryDeviceCommand(device, start, end, command, status, sortField, sortOrder, take,
-                                              skip, gridInterval);
+                                              skip, gridInterval, position);
 
         logger.debug("Device command query request proceed successfully");
-        return ResponseFactory.response(Response.Status.OK, commandList, Policy.COMMAND_LISTED);
+        Map<String, String> headers = new HashMap<>();
+        int pageSize = take != null ? take : Constants.DEFAULT_TAKE;
+        if (keyset && !commandList.isEmpty() && commandList.size() == pageSize) {
+            DeviceCommand last = commandList.get(commandList.size() - 1);
+            headers.put(CONTINUATION_HEADER,
+                        new ContinuationToken(last.getTimestamp(), last.getId(), sortOrder).format());
+        }
+        return ResponseFactory.response(Response.Status.OK, commandList, Policy.COMMAND_LISTED, headers);
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.devicehive.controller;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 
@@ -22,6 +23,7 @@ import com.devicehive.model.updates.DeviceUpdate;
 import com.devicehive.service.DeviceEquipmentService;
 import com.devicehive.service.DeviceService;
 import com.devicehive.util.LogExecutionTime;
+import com.devicehive.util.ServerResponsesFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -189,6 +191,29 @@ public class DeviceController {
         return ResponseFactory.response(Response.Status.NO_CONTENT);
     }
 
+    /**
+     * Registers or updates several devices at once, each in the same way as {@link #register}. Devices are saved in
+     * one transaction, so if any of them fails, none is saved.
+     *
+     * @param devices In the request body, supply an array of Device resources with identifiers in the id field, at
+     *                most 1000 devices.
+     * @return response code 204, if successful
+     */
+    @PUT
+    @AllowedKeyAction(action = REGISTER_DEVICE)
+    @PermitAll
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response registerBatch(JsonArray devices) {
+        logger.debug("Device batch register method requested. Devices : {}", devices.size());
+
+        List<DeviceUpdate> deviceUpdates = ServerResponsesFactory.parseDeviceUpdates(devices);
+        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
+        deviceService.deviceSaveBatchAndNotify(deviceUpdates, principal);
+        logger.debug("Device batch register finished successfully. Devices : {}", deviceUpdates.size());
+
+        return ResponseFactory.response(Response.Status.NO_CONTENT);
+    }
+
     /**
      * Implementation of <a href="http://www.devicehive.com/restful#Reference/Device/get">DeviceHive RESTful API:
      * Device: get</a> Gets information about device.
@@ -17,23 +17,37 @@ import com.devicehive.messages.handler.RestHandlerCreator;
 import com.devicehive.messages.subscriptions.NotificationSubscription;
 import com.devicehive.messages.subscriptions.NotificationSubscriptionStorage;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.ErrorResponse;
+import com.devicehive.model.response.NotificationAggregateResponse;
 import com.devicehive.model.response.NotificationPollManyResponse;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
 import com.devicehive.service.TimestampService;
+import com.devicehive.util.AggregateFunction;
+import com.devicehive.util.ExportFormat;
 import com.devicehive.util.LogExecutionTime;
 import com.devicehive.util.ParseUtil;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -55,23 +69,30 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.Response;
 
 import static com.devicehive.auth.AllowedKeyAction.Action.CREATE_DEVICE_NOTIFICATION;
 import static com.devicehive.auth.AllowedKeyAction.Action.GET_DEVICE_NOTIFICATION;
+import static com.devicehive.configuration.Constants.CONTINUATION;
+import static com.devicehive.configuration.Constants.CONTINUATION_HEADER;
 import static com.devicehive.configuration.Constants.DEVICE_GUID;
 import static com.devicehive.configuration.Constants.DEVICE_GUIDS;
 import static com.devicehive.configuration.Constants.END;
+import static com.devicehive.configuration.Constants.FORMAT;
+import static com.devicehive.configuration.Constants.FUNCTIONS;
 import static com.devicehive.configuration.Constants.GRID_INTERVAL;
 import static com.devicehive.configuration.Constants.ID;
 import static com.devicehive.configuration.Constants.NAMES;
 import static com.devicehive.configuration.Constants.NOTIFICATION;
+import static com.devicehive.configuration.Constants.PATH;
 import static com.devicehive.configuration.Constants.SKIP;
 import static com.devicehive.configuration.Constants.SORT_FIELD;
 import static com.devicehive.configuration.Constants.SORT_ORDER;
 import static com.devicehive.configuration.Constants.START;
 import static com.devicehive.configuration.Constants.TAKE;
 import static com.devicehive.configuration.Constants.TIMESTAMP;
+import static com.devicehive.configuration.Constants.UTF8;
 import static com.devicehive.configuration.Constants.WAIT_TIMEOUT;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_FROM_DEVICE;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
@@ -120,6 +141,10 @@ public class DeviceNotificationController {
      * @param sortOrderSt  Result list sort order. Available values are ASC and DESC.
      * @param take         Number of records to take from the result list (default is 1000).
      * @param skip         Number of records to skip from the result list.
+     * @param continuation Token of the page end returned in <code>X-DeviceHive-Continuation</code> header of the
+     *                     previous query. Next page is selected right after that position, so it is not shifted by
+     *                     notifications inserted meanwhile. Can be used with Timestamp sort field only, without skip
+     *                     and grid interval, the sort order of the first page is kept.
      * @return If successful, this method returns array of <a href="http://www.devicehive
      *         .com/restful#Reference/DeviceNotification">DeviceNotification</a> resources in the response body. <table>
      *         <tr> <td>Property Name</td> <td>Type</td> <td>Description</td> </tr> <tr> <td>id</td> <td>integer</td>
@@ -140,7 +165,8 @@ public class DeviceNotificationController {
                           @QueryParam(SORT_ORDER) String sortOrderSt,
                           @QueryParam(TAKE) Integer take,
                           @QueryParam(SKIP) Integer skip,
-                          @QueryParam(GRID_INTERVAL) Integer gridInterval) {
+                          @QueryParam(GRID_INTERVAL) Integer gridInterval,
+                          @QueryParam(CONTINUATION) String continuation) {
 
         boolean sortOrder = SortOrderQueryParamParser.parse(sortOrderSt);
 
@@ -156,22 +182,133 @@ public class DeviceNotificationController {
                                                               Messages.INVALID_REQUEST_PARAMETERS));
         }
         sortField = sortField.toLowerCase();
+        boolean keyset = TIMESTAMP.equalsIgnoreCase(sortField) && skip == null && gridInterval == null;
+        ContinuationToken position = null;
+        if (continuation != null) {
+            if (!keyset) {
+                return ResponseFactory.response(Response.Status.BAD_REQUEST,
+                                                new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                                                                  Messages.INVALID_CONTINUATION_TOKEN));
+            }
+            position = ContinuationToken.parse(continuation);
+            sortOrder = position.isAscending();
+        }
 
         HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
         Device device = deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
 
+        int pageSize = take != null ? take : Constants.DEFAULT_TAKE;
         List<DeviceNotification> result = notificationService.queryDeviceNotification(device, start, end,
                                                                                       notification, sortField,
-                                                                                      sortOrder, take, skip,
-                                                                                      gridInterval);
+                                                                                      sortOrder, pageSize, skip,
+                                                                                      gridInterval, position);
 
         logger.debug("Device notification query succeed. Guid {}, start {}, end {}, notification {}, sort field {}," +
                      "sort order {}, take {}, skip {}", guid, start, end, notification, sortField, sortOrder, take,
                      skip);
 
+        Map<String, String> headers = new HashMap<>();
+        if (keyset && !result.isEmpty() && result.size() == pageSize) {
+            DeviceNotification last = result.get(result.size() - 1);
+            headers.put(CONTINUATION_HEADER,
+                        new ContinuationToken(last.getTimestamp(), last.getId(), sortOrder).format());
+        }
+        return ResponseFactory.response(Response.Status.OK, result, Policy.NOTIFICATION_TO_CLIENT, headers);
+    }
+
+    /**
+     * Aggregates numeric value of notification parameters per grid interval. Values are reduced by the database, so
+     * only one row per interval and notification name is transferred.
+     *
+     * @param guid         Device unique identifier.
+     * @param startTs      Filter by notification start timestamp (UTC).
+     * @param endTs        Filter by notification end timestamp (UTC).
+     * @param notification Filter by notification name.
+     * @param path         Dot separated path of the value inside parameters, e.g. <code>temperature.value</code>.
+     * @param gridInterval Interval length in seconds, required.
+     * @param functions    Comma separated list of min, max, avg, last and count, all of them if omitted.
+     * @param take         Number of intervals to return.
+     * @return List of aggregates with start timestamp of the interval and notification name.
+     */
+    @GET
+    @Path("/{deviceGuid}/notification/aggregate")
+    @RolesAllowed({HiveRoles.CLIENT, HiveRoles.ADMIN, HiveRoles.KEY})
+    @AllowedKeyAction(action = GET_DEVICE_NOTIFICATION)
+    public Response aggregate(@PathParam(DEVICE_GUID) String guid,
+                              @QueryParam(START) String startTs,
+                              @QueryParam(END) String endTs,
+                              @QueryParam(NOTIFICATION) String notification,
+                              @QueryParam(PATH) String path,
+                              @QueryParam(GRID_INTERVAL) Integer gridInterval,
+                              @QueryParam(FUNCTIONS) String functionsSt,
+                              @QueryParam(TAKE) Integer take) {
+        Set<AggregateFunction> functions = AggregateFunction.parse(functionsSt);
+        Timestamp start = TimestampQueryParamParser.parse(startTs);
+        Timestamp end = TimestampQueryParamParser.parse(endTs);
+
+        List<String> pathElements = path != null ? Arrays.asList(StringUtils.split(path, '.')) : null;
+        if (pathElements == null || pathElements.isEmpty() || gridInterval == null || gridInterval <= 0
+            || (take != null && take <= 0)) {
+            logger.debug("Device notification aggregate request failed. Bad request parameters. Guid {}, path {}, " +
+                         "grid interval {}, take {}", guid, path, gridInterval, take);
+            return ResponseFactory.response(Response.Status.BAD_REQUEST,
+                                            new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                                                              Messages.INVALID_REQUEST_PARAMETERS));
+        }
+
+        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
+        Device device = deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
+
+        List<NotificationAggregateResponse> result =
+            notificationService.aggregateDeviceNotification(device, start, end, notification, pathElements,
+                                                            gridInterval, functions,
+                                                            take != null ? take : Constants.DEFAULT_TAKE);
+
+        logger.debug("Device notification aggregate succeed. Guid {}, start {}, end {}, notification {}, path {}, " +
+                     "grid interval {}, functions {}", guid, start, end, notification, path, gridInterval, functions);
         return ResponseFactory.response(Response.Status.OK, result, Policy.NOTIFICATION_TO_CLIENT);
     }
 
+    /**
+     * Exports notifications of the device in timestamp order. Unlike query, notifications are not loaded to memory, they
+     * are read through database cursor and written to the response as they come, so any period can be exported.
+     *
+     * @param guid         Device unique identifier.
+     * @param startTs      Filter by notification start timestamp (UTC).
+     * @param endTs        Filter by notification end timestamp (UTC).
+     * @param notification Filter by notification name.
+     * @param formatSt     Export format: json (default), ndjson or csv.
+     * @return Notifications with id, timestamp, notification and parameters properties.
+     */
+    @GET
+    @Path("/{deviceGuid}/notification/export")
+    @RolesAllowed({HiveRoles.CLIENT, HiveRoles.ADMIN, HiveRoles.KEY})
+    @AllowedKeyAction(action = GET_DEVICE_NOTIFICATION)
+    public Response export(@PathParam(DEVICE_GUID) String guid,
+                           @QueryParam(START) String startTs,
+                           @QueryParam(END) String endTs,
+                           @QueryParam(NOTIFICATION) final String notification,
+                           @QueryParam(FORMAT) String formatSt) {
+        final ExportFormat format = ExportFormat.parse(formatSt);
+        final Timestamp start = TimestampQueryParamParser.parse(startTs);
+        final Timestamp end = TimestampQueryParamParser.parse(endTs);
+
+        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
+        final Device device = deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
+        logger.debug("Device notification export requested. Guid {}, start {}, end {}, notification {}, format {}",
+                     guid, start, end, notification, format);
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName(UTF8)));
+                notificationService.exportDeviceNotification(device, start, end, notification, format, writer);
+                writer.flush();
+            }
+        };
+        return Response.ok(output, MediaType.valueOf(format.getContentType())).build();
+    }
+
     /**
      * Implementation of <a href="http://www.devicehive.com/restful#Reference/DeviceNotification/get">DeviceHive RESTful
      * API: DeviceNotification: get</a> Gets information about device notification.
@@ -197,13 +334,6 @@ public class DeviceNotificationController {
             throw new HiveException(String.format(Messages.NOTIFICATION_NOT_FOUND, notificationId),
                                     NOT_FOUND.getStatusCode());
         }
-        String deviceGuidFromNotification = deviceNotification.getDevice().getGuid();
-        if (!deviceGuidFromNotification.equals(guid)) {
-            logger.debug("No device notifications found for device with guid : {}", guid);
-            return ResponseFactory.response(NOT_FOUND,
-                                            new ErrorResponse(
-                                                String.format(Messages.NO_NOTIFICATIONS_FROM_DEVICE, guid)));
-        }
         Device device = deviceService.findByGuidWithPermissionsCheck(guid, principal);
         if (device == null) {
             logger.debug("No permissions to get notifications for device with guid : {}", guid);
@@ -211,6 +341,12 @@ public class DeviceNotificationController {
                                             new ErrorResponse(
                                                 String.format(Messages.NO_NOTIFICATIONS_FROM_DEVICE, guid)));
         }
+        if (!deviceNotification.getDevice().getId().equals(device.getId())) {
+            logger.debug("No device notifications found for device with guid : {}", guid);
+            return ResponseFactory.response(NOT_FOUND,
+                                            new ErrorResponse(
+                                                String.format(Messages.NO_NOTIFICATIONS_FROM_DEVICE, guid)));
+        }
 
         logger.debug("Device notification proceed successfully");
 
@@ -287,7 +423,7 @@ public class DeviceNotificationController {
                         List<NotificationPollManyResponse> resultList = new ArrayList<>(list.size());
                         for (DeviceNotification notification : list) {
                             resultList.add(new NotificationPollManyResponse(notification,
-                                                                            notification.getDevice().getGuid()));
+                                                                            notification.getDeviceGuid()));
                         }
                         response =
                             ResponseFactory.response(Response.Status.OK, resultList, Policy.NOTIFICATION_TO_CLIENT);
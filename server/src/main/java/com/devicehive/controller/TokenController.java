@@ -0,0 +1,90 @@
+package com.devicehive.controller;
+
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.auth.HiveRoles;
+import com.devicehive.auth.HiveSecurityContext;
+import com.devicehive.configuration.Messages;
+import com.devicehive.controller.util.ResponseFactory;
+import com.devicehive.model.AccessToken;
+import com.devicehive.model.ErrorResponse;
+import com.devicehive.service.RestTokenService;
+import com.devicehive.util.LogExecutionTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.security.RolesAllowed;
+import javax.ejb.EJB;
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+import static com.devicehive.configuration.Constants.OAUTH_AUTH_SCEME;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+import static javax.ws.rs.core.Response.Status.OK;
+
+/**
+ * Issues short-lived signed tokens, so REST clients do not have to send credentials with every request. Token should
+ * be sent in <code>Authorization: Bearer {token}</code> header.
+ */
+@Path("/token")
+@LogExecutionTime
+public class TokenController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenController.class);
+
+    @EJB
+    private RestTokenService restTokenService;
+
+    @Inject
+    private HiveSecurityContext hiveSecurityContext;
+
+    /**
+     * Issues token for the current user. Request should be authorized with login and password, token is not issued for
+     * another token, otherwise a leaked token could be renewed forever.
+     *
+     * @return <code> { "access_token": {string}, "token_type": "Bearer", "expires_in": {integer} } </code> where
+     *         expires_in is token lifetime in seconds
+     */
+    @POST
+    @RolesAllowed({HiveRoles.CLIENT, HiveRoles.ADMIN})
+    public Response issue() {
+        if (RestTokenService.isToken(getBearer())) {
+            return ResponseFactory.response(FORBIDDEN,
+                                            new ErrorResponse(FORBIDDEN.getStatusCode(), Messages.TOKEN_NOT_RENEWABLE));
+        }
+        HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
+        logger.debug("Token requested for user {}", principal.getUser().getId());
+        AccessToken token = new AccessToken();
+        token.setTokenType(OAUTH_AUTH_SCEME);
+        token.setAccessToken(restTokenService.issue(principal.getUser()));
+        token.setExpiresIn(restTokenService.getTtl() / 1000);
+        return ResponseFactory.response(OK, token);
+    }
+
+    /**
+     * Revokes token the request is authorized with
+     */
+    @DELETE
+    @RolesAllowed({HiveRoles.CLIENT, HiveRoles.ADMIN})
+    public Response revoke() {
+        String bearer = getBearer();
+        if (bearer != null) {
+            restTokenService.revoke(bearer);
+        }
+        return ResponseFactory.response(NO_CONTENT);
+    }
+
+    private String getBearer() {
+        String authorization = hiveSecurityContext.getAuthorization();
+        if (authorization != null && authorization.length() > OAUTH_AUTH_SCEME.length()
+            && authorization.substring(0, OAUTH_AUTH_SCEME.length()).equalsIgnoreCase(OAUTH_AUTH_SCEME)) {
+            return authorization.substring(OAUTH_AUTH_SCEME.length()).trim();
+        }
+        return null;
+    }
+}
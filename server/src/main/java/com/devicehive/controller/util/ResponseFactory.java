@@ -4,6 +4,8 @@ import com.devicehive.json.strategies.JsonPolicyApply;
 import com.devicehive.json.strategies.JsonPolicyDef;
 
 import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Map;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -11,8 +13,16 @@ import javax.ws.rs.core.Response;
 public class ResponseFactory {
 
     public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy) {
+        return response(status, entity, policy, Collections.<String, String>emptyMap());
+    }
+
+    public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy,
+                                    Map<String, String> headers) {
 
         Response.ResponseBuilder responseBuilder = Response.status(status);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            responseBuilder.header(header.getKey(), header.getValue());
+        }
 
         if (policy == null && entity != null) {
             responseBuilder.entity(entity);
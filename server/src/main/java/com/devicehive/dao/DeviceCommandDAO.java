@@ -3,8 +3,10 @@ package com.devicehive.dao;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
 import com.devicehive.dao.filter.AccessKeyBasedFilterForDevices;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.JsonStringWrapper;
 import com.devicehive.model.Network;
 import com.devicehive.model.User;
 import com.devicehive.util.LogExecutionTime;
@@ -21,9 +23,11 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CompoundSelection;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
@@ -33,6 +37,7 @@ import static com.devicehive.model.DeviceCommand.Queries.Names.DELETE_BY_DEVICE_
 import static com.devicehive.model.DeviceCommand.Queries.Names.DELETE_BY_FOREIGN_KEY;
 import static com.devicehive.model.DeviceCommand.Queries.Names.DELETE_BY_ID;
 import static com.devicehive.model.DeviceCommand.Queries.Names.GET_BY_DEVICE_UUID_AND_ID;
+import static com.devicehive.model.DeviceCommand.Queries.Names.GET_BY_ID_WITH_DEVICE;
 import static com.devicehive.model.DeviceCommand.Queries.Parameters.DEVICE;
 import static com.devicehive.model.DeviceCommand.Queries.Parameters.GUID;
 import static com.devicehive.model.DeviceCommand.Queries.Parameters.ID;
@@ -44,6 +49,8 @@ public class DeviceCommandDAO {
 
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
+    @PersistenceContext(unitName = Constants.REPLICA_PERSISTENCE_UNIT)
+    private EntityManager replicaEm;
 
     public DeviceCommand createCommand(DeviceCommand deviceCommand) {
         em.persist(deviceCommand);
@@ -69,9 +76,15 @@ public class DeviceCommandDAO {
         return query.executeUpdate();
     }
 
+    /**
+     * Device is fetched with the command, it is lazy otherwise and callers compare it outside of transaction.
+     */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public DeviceCommand findById(Long id) {
-        return em.find(DeviceCommand.class, id);
+        TypedQuery<DeviceCommand> query = em.createNamedQuery(GET_BY_ID_WITH_DEVICE, DeviceCommand.class);
+        query.setParameter(ID, id);
+        List<DeviceCommand> resultList = query.getResultList();
+        return resultList.isEmpty() ? null : resultList.get(0);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -87,7 +100,8 @@ public class DeviceCommandDAO {
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<DeviceCommand> findCommands(Collection<Device> devices, Collection<String> names,
-                                            @NotNull Timestamp timestamp, HivePrincipal principal) {
+                                            @NotNull Timestamp timestamp, HivePrincipal principal,
+                                            List<Long> userNetworkIds) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<DeviceCommand> criteria = criteriaBuilder.createQuery(DeviceCommand.class);
         Root<DeviceCommand> from = criteria.from(DeviceCommand.class);
@@ -99,16 +113,16 @@ public class DeviceCommandDAO {
         if (devices != null) {
             predicates.add(from.get(DeviceCommand.DEVICE_COLUMN).in(devices));
         }
-        appendPrincipalPredicates(predicates, principal, from);
+        appendPrincipalPredicates(predicates, principal, userNetworkIds, from);
+        criteria.select(projection(criteriaBuilder, from));
         criteria.where(predicates.toArray(new Predicate[predicates.size()]));
-        TypedQuery<DeviceCommand> query = em.createQuery(criteria);
-        CacheHelper.cacheable(query);
-        return query.getResultList();
+        return em.createQuery(criteria).getResultList();
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @ReadReplica
     public List<DeviceCommand> queryDeviceCommand(Device device,
-                                                  Timestamp start,
+                                                  @ReadReplica.Since Timestamp start,
                                                   Timestamp end,
                                                   String command,
                                                   String status,
@@ -116,12 +130,15 @@ public class DeviceCommandDAO {
                                                   Boolean sortOrderAsc,
                                                   Integer take,
                                                   Integer skip,
-                                                  Integer gridInterval) {
+                                                  Integer gridInterval,
+                                                  ContinuationToken continuation) {
+        EntityManager em = ReadReplicaInterceptor.select(this.em, replicaEm);
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<DeviceCommand> criteria = criteriaBuilder.createQuery(DeviceCommand.class);
         Root<DeviceCommand> from = criteria.from(DeviceCommand.class);
         List<Predicate> predicates = new ArrayList<>();
         predicates.add(criteriaBuilder.equal(from.get(DeviceCommand.DEVICE_COLUMN), device));
+        criteria.select(projection(criteriaBuilder, from));
         //where
         if (start != null) {
             predicates.add(criteriaBuilder.greaterThan(from.<Timestamp>get(DeviceCommand.TIMESTAMP_COLUMN), start));
@@ -135,6 +152,9 @@ public class DeviceCommandDAO {
         if (status != null) {
             predicates.add(criteriaBuilder.equal(from.get(DeviceCommand.STATUS_COLUMN), status));
         }
+        if (continuation != null && gridInterval == null) {
+            predicates.add(continuationFilter(criteriaBuilder, from, continuation));
+        }
 
         //groupBy
         if (gridInterval != null) {
@@ -147,9 +167,11 @@ public class DeviceCommandDAO {
         //orderBy
         if (sortField != null) {
             if (sortOrderAsc) {
-                criteria.orderBy(criteriaBuilder.asc(from.get(sortField)));
+                criteria.orderBy(criteriaBuilder.asc(from.get(sortField)),
+                                 criteriaBuilder.asc(from.get(DeviceCommand.ID_COLUMN)));
             } else {
-                criteria.orderBy(criteriaBuilder.desc(from.get(sortField)));
+                criteria.orderBy(criteriaBuilder.desc(from.get(sortField)),
+                                 criteriaBuilder.desc(from.get(DeviceCommand.ID_COLUMN)));
             }
         }
 
@@ -157,14 +179,51 @@ public class DeviceCommandDAO {
         if (skip != null) {
             resultQuery.setFirstResult(skip);
         }
-        if (take == null) {
-            take = Constants.DEFAULT_TAKE;
-            resultQuery.setMaxResults(take);
-        }
+        resultQuery.setMaxResults(take != null ? take : Constants.DEFAULT_TAKE);
         return resultQuery.getResultList();
 
     }
 
+    /**
+     * Selects columns that are sent to clients, guid of the device and id of the user, so neither device nor user is
+     * loaded for each row.
+     */
+    private static CompoundSelection<DeviceCommand> projection(CriteriaBuilder criteriaBuilder,
+                                                               Root<DeviceCommand> from) {
+        return criteriaBuilder.construct(DeviceCommand.class,
+                                         from.get(DeviceCommand.ID_COLUMN),
+                                         from.get(DeviceCommand.TIMESTAMP_COLUMN),
+                                         from.get(DeviceCommand.USER_COLUMN).get(User.ID_COLUMN),
+                                         from.get(DeviceCommand.COMMAND_COLUMN),
+                                         from.get(DeviceCommand.PARAMETERS_COLUMN)
+                                             .get(JsonStringWrapper.JSON_STRING_COLUMN),
+                                         from.get(DeviceCommand.LIFETIME_COLUMN),
+                                         from.get(DeviceCommand.FLAGS_COLUMN),
+                                         from.get(DeviceCommand.STATUS_COLUMN),
+                                         from.get(DeviceCommand.RESULT_COLUMN)
+                                             .get(JsonStringWrapper.JSON_STRING_COLUMN),
+                                         from.join(DeviceCommand.DEVICE_COLUMN).get(Device.GUID_COLUMN));
+    }
+
+    /**
+     * Selects commands after the position in (timestamp, id) order. Redundant timestamp bound lets the planner use
+     * (device_id, timestamp) index.
+     */
+    private Predicate continuationFilter(CriteriaBuilder cb, Root<DeviceCommand> from,
+                                         ContinuationToken continuation) {
+        Path<Timestamp> timestamp = from.get(DeviceCommand.TIMESTAMP_COLUMN);
+        Path<Long> id = from.get(DeviceCommand.ID_COLUMN);
+        Timestamp position = continuation.getTimestamp();
+        if (continuation.isAscending()) {
+            return cb.and(cb.greaterThanOrEqualTo(timestamp, position),
+                          cb.or(cb.greaterThan(timestamp, position),
+                                cb.greaterThan(id, continuation.getId())));
+        }
+        return cb.and(cb.lessThanOrEqualTo(timestamp, position),
+                      cb.or(cb.lessThan(timestamp, position),
+                            cb.lessThan(id, continuation.getId())));
+    }
+
     private Subquery<Timestamp> gridIntervalFilter(CriteriaBuilder cb,
                                                    CriteriaQuery<DeviceCommand> criteria,
                                                    Integer gridInterval,
@@ -181,18 +240,15 @@ public class DeviceCommandDAO {
     }
 
     private void appendPrincipalPredicates(List<Predicate> predicates, HivePrincipal principal,
+                                           List<Long> userNetworkIds,
                                            Root<DeviceCommand> from) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         if (principal != null) {
-            User user = principal.getUser();
-            if (user == null && principal.getKey() != null) {
-                user = principal.getKey().getUser();
-            }
-            if (user != null && !user.isAdmin()) {
-                Predicate userPredicate = from.join(DeviceCommand.DEVICE_COLUMN)
-                    .join(Device.NETWORK_COLUMN)
-                    .join(Network.USERS_ASSOCIATION).in(user);
-                predicates.add(userPredicate);
+            if (userNetworkIds != null) {
+                predicates.add(userNetworkIds.isEmpty()
+                               ? criteriaBuilder.disjunction()
+                               : from.get(DeviceCommand.DEVICE_COLUMN).get(Device.NETWORK_COLUMN)
+                                   .get(Network.ID_COLUMN).in(userNetworkIds));
             }
             if (principal.getDevice() != null) {
                 Predicate devicePredicate = from.get(DeviceCommand.DEVICE_COLUMN).in(principal.getDevice());
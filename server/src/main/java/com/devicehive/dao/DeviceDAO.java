@@ -4,11 +4,13 @@ import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
 import com.devicehive.dao.filter.AccessKeyBasedFilterForDevices;
 import com.devicehive.model.Device;
-import com.devicehive.model.User;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -21,15 +23,17 @@ import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.JoinType;
-import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.validation.constraints.NotNull;
 
 import static com.devicehive.model.Device.Queries.Names.DELETE_BY_UUID;
 import static com.devicehive.model.Device.Queries.Names.FIND_BY_UUID_AND_KEY;
+import static com.devicehive.model.Device.Queries.Names.FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS;
 import static com.devicehive.model.Device.Queries.Names.FIND_BY_UUID_WITH_NETWORK_AND_DEVICE_CLASS;
 import static com.devicehive.model.Device.Queries.Parameters.GUID;
+import static com.devicehive.model.Device.Queries.Parameters.GUIDS;
+import static com.devicehive.model.Device.Queries.Parameters.ID;
 import static com.devicehive.model.Device.Queries.Parameters.KEY;
 
 @Stateless
@@ -44,6 +48,8 @@ public class DeviceDAO {
 
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
+    @PersistenceContext(unitName = Constants.REPLICA_PERSISTENCE_UNIT)
+    private EntityManager replicaEm;
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public Device findById(Long id) {
@@ -59,6 +65,16 @@ public class DeviceDAO {
         return res.isEmpty() ? null : res.get(0);
     }
 
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<Device> findByUUIDsWithNetworkAndDeviceClass(Collection<String> uuids) {
+        if (uuids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TypedQuery<Device> query = em.createNamedQuery(FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS, Device.class);
+        query.setParameter(GUIDS, uuids);
+        return query.getResultList();
+    }
+
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public Device findByUUIDAndKey(String uuid, String key) {
         TypedQuery<Device> query = em.createNamedQuery(FIND_BY_UUID_AND_KEY, Device.class);
@@ -86,12 +102,13 @@ public class DeviceDAO {
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public long getNumberOfAvailableDevices(HivePrincipal principal, List<String> guids) {
+    public long getNumberOfAvailableDevices(HivePrincipal principal, List<Long> userNetworkIds,
+                                            List<String> guids) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<Long> criteria = criteriaBuilder.createQuery(Long.class);
         Root<Device> from = criteria.from(Device.class);
         List<Predicate> predicates = new ArrayList<>();
-        appendPrincipalPredicates(predicates, principal, from);
+        appendPrincipalPredicates(predicates, principal, userNetworkIds, from);
         if (guids != null && !guids.isEmpty()) {
             predicates.add(from.get(GUID).in(guids));
         }
@@ -102,12 +119,13 @@ public class DeviceDAO {
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public List<Device> getDeviceList(HivePrincipal principal, Collection<String> guids) {
+    public List<Device> getDeviceList(HivePrincipal principal, List<Long> userNetworkIds,
+                                      Collection<String> guids) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<Device> criteria = criteriaBuilder.createQuery(Device.class);
         Root<Device> from = criteria.from(Device.class);
         List<Predicate> predicates = new ArrayList<>();
-        appendPrincipalPredicates(predicates, principal, from);
+        appendPrincipalPredicates(predicates, principal, userNetworkIds, from);
         if (guids != null && !guids.isEmpty()) {
             predicates.add(from.get(GUID).in(guids));
         }
@@ -116,7 +134,13 @@ public class DeviceDAO {
         return query.getResultList();
     }
 
+    /**
+     * Pages devices in two queries. Fetch join of device class equipment would make Hibernate apply take and skip in
+     * memory after loading all matching devices, so the first query selects only ids of the page and the second one
+     * loads these devices with network, device class and equipment.
+     */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @ReadReplica
     public List<Device> getList(String name,
                                 String namePattern,
                                 String status,
@@ -129,13 +153,13 @@ public class DeviceDAO {
                                 Boolean sortOrderAsc,
                                 Integer take,
                                 Integer skip,
-                                HivePrincipal principal) {
-
+                                HivePrincipal principal,
+                                List<Long> userNetworkIds) {
+        EntityManager em = ReadReplicaInterceptor.select(this.em, replicaEm);
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-        CriteriaQuery<Device> deviceCriteria = criteriaBuilder.createQuery(Device.class);
+        CriteriaQuery<Long> deviceCriteria = criteriaBuilder.createQuery(Long.class);
         Root<Device> fromDevice = deviceCriteria.from(Device.class);
-        fromDevice.fetch("network", JoinType.LEFT);
-        fromDevice.fetch("deviceClass").fetch("equipment", JoinType.LEFT);
+        deviceCriteria.select(fromDevice.<Long>get(ID));
         List<Predicate> devicePredicates = new ArrayList<>();
 
         //device fields filters
@@ -171,17 +195,22 @@ public class DeviceDAO {
                 .add(criteriaBuilder.equal(fromDevice.get("deviceClass").get("version"), deviceClassVersion));
         }
 
-        appendPrincipalPredicates(devicePredicates, principal, fromDevice);
+        appendPrincipalPredicates(devicePredicates, principal, userNetworkIds, fromDevice);
 
         deviceCriteria.where(devicePredicates.toArray(new Predicate[devicePredicates.size()]));
+        //id makes the order total, so pages do not overlap
         if (sortField != null) {
             if (sortOrderAsc == null || sortOrderAsc) {
-                deviceCriteria.orderBy(criteriaBuilder.asc(fromDevice.get(sortField)));
+                deviceCriteria.orderBy(criteriaBuilder.asc(fromDevice.get(sortField)),
+                                       criteriaBuilder.asc(fromDevice.get(ID)));
             } else {
-                deviceCriteria.orderBy(criteriaBuilder.desc(fromDevice.get(sortField)));
+                deviceCriteria.orderBy(criteriaBuilder.desc(fromDevice.get(sortField)),
+                                       criteriaBuilder.asc(fromDevice.get(ID)));
             }
+        } else {
+            deviceCriteria.orderBy(criteriaBuilder.asc(fromDevice.get(ID)));
         }
-        TypedQuery<Device> resultQuery = em.createQuery(deviceCriteria);
+        TypedQuery<Long> resultQuery = em.createQuery(deviceCriteria);
         if (skip != null) {
             resultQuery.setFirstResult(skip);
         }
@@ -189,20 +218,39 @@ public class DeviceDAO {
             take = Constants.DEFAULT_TAKE;
         }
         resultQuery.setMaxResults(take);
-        return resultQuery.getResultList();
+        List<Long> ids = resultQuery.getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        CriteriaQuery<Device> fetchCriteria = criteriaBuilder.createQuery(Device.class);
+        Root<Device> fetchDevice = fetchCriteria.from(Device.class);
+        fetchDevice.fetch("network", JoinType.LEFT);
+        fetchDevice.fetch("deviceClass").fetch("equipment", JoinType.LEFT);
+        fetchCriteria.where(fetchDevice.get(ID).in(ids));
+        Map<Long, Device> devices = new HashMap<>(ids.size());
+        for (Device device : em.createQuery(fetchCriteria).getResultList()) {
+            devices.put(device.getId(), device);
+        }
+        List<Device> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Device device = devices.get(id);
+            if (device != null) {
+                result.add(device);
+            }
+        }
+        return result;
     }
 
     private void appendPrincipalPredicates(List<Predicate> devicePredicates, HivePrincipal principal,
+                                           List<Long> userNetworkIds,
                                            Root<Device> fromDevice) {
-        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaBuilder criteriaBuilder = ReadReplicaInterceptor.select(em, replicaEm).getCriteriaBuilder();
         if (principal != null) {
-            User user = principal.getUser();
-            if (user == null && principal.getKey() != null) {
-                user = principal.getKey().getUser();
-            }
-            if (user != null && !user.isAdmin()) {
-                Path<User> path = fromDevice.join("network").join("users");
-                devicePredicates.add(path.in(user));
+            if (userNetworkIds != null) {
+                devicePredicates.add(userNetworkIds.isEmpty()
+                                     ? criteriaBuilder.disjunction()
+                                     : fromDevice.get("network").get("id").in(userNetworkIds));
             }
             if (principal.getDevice() != null) {
                 devicePredicates.add(criteriaBuilder.equal(fromDevice.get("id"), principal.getDevice().getId()));
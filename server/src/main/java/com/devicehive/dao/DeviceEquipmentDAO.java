@@ -4,6 +4,13 @@ import com.devicehive.configuration.Constants;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceEquipment;
 
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.ejb.Stateless;
@@ -26,6 +33,17 @@ import static com.devicehive.model.DeviceEquipment.Queries.Parameters.ID;
 @Stateless
 public class DeviceEquipmentDAO {
 
+    private static final String UPDATE_STATE =
+        "UPDATE device_equipment SET timestamp = ?, parameters = ?, entity_version = entity_version + 1 "
+        + "WHERE device_id = ? AND code = ? AND timestamp <= ?";
+    /**
+     * Inserts nothing if the row exists, that is newer state is stored, or if the device is removed.
+     */
+    private static final String INSERT_STATE =
+        "INSERT INTO device_equipment (timestamp, parameters, device_id, code) "
+        + "SELECT ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM device WHERE id = ?) "
+        + "AND NOT EXISTS (SELECT 1 FROM device_equipment WHERE device_id = ? AND code = ?)";
+
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
 
@@ -56,14 +74,59 @@ public class DeviceEquipmentDAO {
         return query.getResultList();
     }
 
-    public boolean update(DeviceEquipment deviceEquipment) {
-        DeviceEquipment equipment = findByCodeAndDevice(deviceEquipment.getCode(), deviceEquipment.getDevice());
-        if (equipment == null) {
-            return false;
+    /**
+     * Writes last states of equipment with one batch of updates and one batch of inserts. Stored state newer than the
+     * given one is kept, as other nodes flush their states too, and states of removed devices are skipped. Insert of
+     * the same device and code by another node at the same time fails the whole call on the unique constraint, the
+     * caller should try again, then the state is written by the update.
+     *
+     * @param states equipment states with device set, at most one per device and code
+     */
+    public void saveStates(@NotNull final List<DeviceEquipment> states) {
+        if (states.isEmpty()) {
+            return;
         }
-        equipment.setTimestamp(deviceEquipment.getTimestamp());
-        equipment.setParameters(deviceEquipment.getParameters());
-        return true;
+        em.unwrap(Session.class).doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                List<DeviceEquipment> missing = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATE)) {
+                    for (DeviceEquipment state : states) {
+                        setState(statement, state);
+                        statement.setTimestamp(5, state.getTimestamp());
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            missing.add(states.get(i));
+                        }
+                    }
+                }
+                if (missing.isEmpty()) {
+                    return;
+                }
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_STATE)) {
+                    for (DeviceEquipment state : missing) {
+                        setState(statement, state);
+                        statement.setLong(5, state.getDevice().getId());
+                        statement.setLong(6, state.getDevice().getId());
+                        statement.setString(7, state.getCode());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        });
+        // rows are written past Hibernate
+        em.getEntityManagerFactory().getCache().evict(DeviceEquipment.class);
+    }
+
+    private static void setState(PreparedStatement statement, DeviceEquipment state) throws SQLException {
+        statement.setTimestamp(1, state.getTimestamp());
+        statement.setString(2, state.getParameters() != null ? state.getParameters().getJsonString() : null);
+        statement.setLong(3, state.getDevice().getId());
+        statement.setString(4, state.getCode());
     }
 
     public boolean deleteDeviceEquipment(@NotNull Long id) {
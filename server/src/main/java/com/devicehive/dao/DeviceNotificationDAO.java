@@ -2,53 +2,154 @@ package com.devicehive.dao;
 
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
+import com.devicehive.configuration.Messages;
 import com.devicehive.dao.filter.AccessKeyBasedFilterForDevices;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
 import com.devicehive.model.Network;
-import com.devicehive.model.User;
+import com.devicehive.model.response.NotificationAggregateResponse;
+import com.devicehive.util.AggregateFunction;
+import com.devicehive.util.ExportFormat;
 import com.devicehive.util.LogExecutionTime;
 
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CompoundSelection;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
 
+import static com.devicehive.model.DeviceNotification.Queries.Names.GET_BY_ID_WITH_DEVICE;
+import static com.devicehive.model.DeviceNotification.Queries.Parameters.ID;
+
 @Stateless
 @LogExecutionTime
 public class DeviceNotificationDAO {
 
+    /**
+     * Bucket sizes of device_notification_rollup in seconds, from the coarsest one.
+     */
+    private static final int[] ROLLUP_SIZES = {3600, 300, 60};
+
+    /**
+     * JSON number, other values at the aggregated path are ignored.
+     */
+    /**
+     * JSON number that fits double precision, digits and exponent are limited so the cast can not overflow.
+     */
+    private static final String NUMBER_PATTERN =
+        "^-?(0|[1-9][0-9]{0,199})(\\.[0-9]{1,200})?([eE][-+]?[0-9]{1,2})?$";
+    /**
+     * Parameters written before they were required to be JSON are skipped without being cast.
+     */
+    private static final String JSON_OBJECT_PATTERN = "^\\s*\\{";
+
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
+    @PersistenceContext(unitName = Constants.REPLICA_PERSISTENCE_UNIT)
+    private EntityManager replicaEm;
+
 
+    /**
+     * Rolls up notifications of buckets that ended at least <code>delay</code> seconds ago and are not rolled up yet,
+     * for each rollup size. Each bucket is computed once from device_notification, so ingest does not touch rollups.
+     * Progress of each size is kept in device_notification_rollup_state, its rows are locked in the same order by
+     * every run, so concurrent runs on other nodes wait and then find nothing to do.
+     *
+     * @param delay   seconds a bucket is left open after its end
+     * @param maxStep maximum number of seconds rolled up at once, multiple of all rollup sizes
+     * @return number of rollup rows inserted
+     */
+    public int rollUpNotifications(int delay, int maxStep) {
+        int inserted = 0;
+        for (int size : ROLLUP_SIZES) {
+            Object[] state = (Object[]) em.createNativeQuery(
+                "SELECT rolled_up_to, to_timestamp(floor((extract(EPOCH FROM now()) - ?) / ?) * ?) "
+                + "FROM device_notification_rollup_state WHERE bucket_size = ? FOR UPDATE")
+                .setParameter(1, delay)
+                .setParameter(2, size)
+                .setParameter(3, size)
+                .setParameter(4, size)
+                .getSingleResult();
+            Timestamp from = (Timestamp) state[0];
+            Timestamp to = (Timestamp) state[1];
+            if (to.getTime() - from.getTime() > maxStep * 1000L) {
+                to = new Timestamp(from.getTime() + maxStep * 1000L);
+            }
+            if (!to.after(from)) {
+                continue;
+            }
+            inserted += em.createNativeQuery(
+                "INSERT INTO device_notification_rollup (device_id, notification, bucket_size, bucket_start, "
+                + "first_id, first_timestamp, count) "
+                + "SELECT DISTINCT ON (device_id, bucket_start, notification) device_id, notification, ?, "
+                + "bucket_start, id, timestamp, count(*) OVER (PARTITION BY device_id, bucket_start, notification) "
+                + "FROM (SELECT id, timestamp, notification, device_id, "
+                + "to_timestamp(floor(extract(EPOCH FROM timestamp) / ?) * ?) AS bucket_start "
+                + "FROM device_notification WHERE timestamp >= ? AND timestamp < ?) AS bucket_selection "
+                + "ORDER BY device_id, bucket_start, notification, timestamp, id")
+                .setParameter(1, size)
+                .setParameter(2, size)
+                .setParameter(3, size)
+                .setParameter(4, from)
+                .setParameter(5, to)
+                .executeUpdate();
+            em.createNativeQuery("UPDATE device_notification_rollup_state SET rolled_up_to = ? WHERE bucket_size = ?")
+                .setParameter(1, to)
+                .setParameter(2, size)
+                .executeUpdate();
+        }
+        return inserted;
+    }
 
     public DeviceNotification createNotification(DeviceNotification deviceNotification) {
         em.persist(deviceNotification);
         return deviceNotification;
     }
 
+    /**
+     * Device is fetched with the notification, it is lazy otherwise and callers compare it outside of transaction.
+     */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public DeviceNotification findById(@NotNull long id) {
-        return em.find(DeviceNotification.class, id);
+        TypedQuery<DeviceNotification> query = em.createNamedQuery(GET_BY_ID_WITH_DEVICE, DeviceNotification.class);
+        query.setParameter(ID, id);
+        List<DeviceNotification> resultList = query.getResultList();
+        return resultList.isEmpty() ? null : resultList.get(0);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<DeviceNotification> findNotifications(Collection<Device> devices, Collection<String> names,
-                                                      @NotNull Timestamp timestamp, HivePrincipal principal) {
+                                                      @NotNull Timestamp timestamp, HivePrincipal principal,
+                                                      List<Long> userNetworkIds) {
         if (devices != null && devices.isEmpty()) {
             return Collections.emptyList();
         }
@@ -64,15 +165,82 @@ public class DeviceNotificationDAO {
         if (devices != null) {
             predicates.add(from.get(DeviceNotification.DEVICE_COLUMN).in(devices));
         }
-        appendPrincipalPredicates(predicates, principal, from);
+        appendPrincipalPredicates(predicates, principal, userNetworkIds, from);
+        criteria.select(projection(criteriaBuilder, from));
         criteria.where(predicates.toArray(new Predicate[predicates.size()]));
-        TypedQuery<DeviceNotification> query = em.createQuery(criteria);
-        CacheHelper.cacheable(query);
-        return query.getResultList();
+        return em.createQuery(criteria).getResultList();
+    }
+
+    /**
+     * Selects columns that are sent to clients and guid of the device, so device is not loaded for each row.
+     */
+    private static CompoundSelection<DeviceNotification> projection(CriteriaBuilder criteriaBuilder,
+                                                                    Root<DeviceNotification> from) {
+        return criteriaBuilder.construct(DeviceNotification.class,
+                                         from.get(DeviceNotification.ID_COLUMN),
+                                         from.get(DeviceNotification.TIMESTAMP_COLUMN),
+                                         from.get(DeviceNotification.NOTIFICATION_COLUMN),
+                                         from.get(DeviceNotification.PARAMETERS_COLUMN)
+                                             .get(JsonStringWrapper.JSON_STRING_COLUMN),
+                                         from.join(DeviceNotification.DEVICE_COLUMN).get(Device.GUID_COLUMN));
+    }
+
+    /**
+     * Writes notifications of the device in timestamp order. Rows are fetched through server-side cursor and written
+     * as soon as they are read, so memory use does not depend on the number of notifications. Should be called in a
+     * transaction, cursor is not kept by PostgreSQL outside of it.
+     *
+     * @throws HiveException if notifications could not be written, e.g. client has disconnected
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void exportDeviceNotification(Device device, Timestamp start, Timestamp end, String notification,
+                                         final ExportFormat format, final Writer writer) {
+        StringBuilder sb = new StringBuilder("SELECT id, timestamp, notification, parameters FROM device_notification "
+                                             + "WHERE device_id = ? ");
+        final List<Object> parameters = new ArrayList<>();
+        parameters.add(device.getId());
+        if (start != null) {
+            sb.append(" AND timestamp >= ? ");
+            parameters.add(start);
+        }
+        if (end != null) {
+            sb.append(" AND timestamp <= ? ");
+            parameters.add(end);
+        }
+        if (notification != null) {
+            sb.append(" AND notification = ? ");
+            parameters.add(notification);
+        }
+        sb.append(" ORDER BY timestamp, id");
+        final String sql = sb.toString();
+        em.unwrap(Session.class).doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                                               ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(Constants.EXPORT_FETCH_SIZE);
+                    for (int i = 0; i < parameters.size(); i++) {
+                        statement.setObject(i + 1, parameters.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        format.writeStart(writer);
+                        for (long row = 0; resultSet.next(); row++) {
+                            format.writeRow(writer, row, resultSet.getLong(1), resultSet.getTimestamp(2),
+                                            resultSet.getString(3), resultSet.getString(4));
+                        }
+                        format.writeEnd(writer);
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new HiveException(Messages.EXPORT_INTERRUPTED, e);
+                }
+            }
+        });
     }
 
     /*
-     If grid interval is present query must looks like this:
+     If grid interval is a multiple of one of ROLLUP_SIZES, rollup is used, see appendRollupGridSelection. Otherwise
+     if grid interval is present query must looks like this:
 
      select * from device_notification
         where device_notification.timestamp in
@@ -102,71 +270,94 @@ public class DeviceNotificationDAO {
      2) Query parameters are set with query.setParameter(int position, Object value) to avoid sql injection.
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @ReadReplica
     public List<DeviceNotification> queryDeviceNotification(Device device,
-                                                            Timestamp start,
+                                                            @ReadReplica.Since Timestamp start,
                                                             Timestamp end,
                                                             String notification,
                                                             String sortField,
                                                             Boolean sortOrderAsc,
                                                             Integer take,
                                                             Integer skip,
-                                                            Integer gridInterval) {
+                                                            Integer gridInterval,
+                                                            ContinuationToken continuation) {
+        EntityManager em = ReadReplicaInterceptor.select(this.em, replicaEm);
         List<Object> parameters = new ArrayList<>();
         StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM device_notification ");     //this part of query is immutable
-        if (gridInterval != null) {
-            sb.append("WHERE device_notification.timestamp IN ")
-                .append("  (SELECT min(rank_selection.timestamp) ")
-                .append("  FROM ")
-                .append("     (SELECT device_notification.*, ")
-                .append("           rank() OVER (PARTITION BY device_notification.notification ORDER BY floor(" +
-                        "(extract(EPOCH FROM device_notification.timestamp)) / ?)) AS rank ")
-                .append("      FROM device_notification ");
-            parameters.add(gridInterval);
-        }
-        if (start != null && end != null) {
-            sb.append(" WHERE device_notification.timestamp BETWEEN ? AND ? ");
-            parameters.add(start);
-            parameters.add(end);
-        } else if (start != null) {
-            sb.append(" WHERE device_notification.timestamp >= ? ");
-            parameters.add(start);
-        } else if (end != null) {
-            sb.append(" WHERE device_notification.timestamp <= ? ");
-            parameters.add(end);
-        }
-        if (gridInterval != null) {
-            sb.append(" ) AS rank_selection ");
-            sb.append("  WHERE (rank_selection.device_id = ?) ");
+        sb.append("SELECT device_notification.id, device_notification.timestamp, device_notification.notification, ")
+            .append("device_notification.parameters FROM device_notification ");     //this part of query is immutable
+        Integer rollupSize = gridInterval != null ? getRollupSize(gridInterval) : null;
+        if (rollupSize != null) {
+            Timestamp rolledUpTo = (Timestamp) em.createNativeQuery(
+                "SELECT rolled_up_to FROM device_notification_rollup_state WHERE bucket_size = ?")
+                .setParameter(1, rollupSize)
+                .getSingleResult();
+            appendRollupGridSelection(sb, parameters, device, start, end, notification, gridInterval, rollupSize,
+                                      rolledUpTo);
         } else {
-            if (start != null || end != null) {
-                sb.append(" AND ");
-            } else {
-                sb.append(" WHERE ");
+            if (gridInterval != null) {
+                sb.append("WHERE device_notification.timestamp IN ")
+                    .append("  (SELECT min(rank_selection.timestamp) ")
+                    .append("  FROM ")
+                    .append("     (SELECT device_notification.*, ")
+                    .append("           rank() OVER (PARTITION BY device_notification.notification ORDER BY floor(" +
+                            "(extract(EPOCH FROM device_notification.timestamp)) / ?)) AS rank ")
+                    .append("      FROM device_notification ");
+                parameters.add(gridInterval);
+            }
+            if (start != null && end != null) {
+                sb.append(" WHERE device_notification.timestamp BETWEEN ? AND ? ");
+                parameters.add(start);
+                parameters.add(end);
+            } else if (start != null) {
+                sb.append(" WHERE device_notification.timestamp >= ? ");
+                parameters.add(start);
+            } else if (end != null) {
+                sb.append(" WHERE device_notification.timestamp <= ? ");
+                parameters.add(end);
             }
-            sb.append(" device_notification.device_id = ? ");
-        }
-        parameters.add(device.getId());   //device id is required
-        if (notification != null) {
-            sb.append(" AND ");
             if (gridInterval != null) {
-                sb.append(" (rank_selection.notification = ?) ");
+                sb.append(" ) AS rank_selection ");
+                sb.append("  WHERE (rank_selection.device_id = ?) ");
             } else {
-                sb.append(" device_notification.notification = ? ");
+                if (start != null || end != null) {
+                    sb.append(" AND ");
+                } else {
+                    sb.append(" WHERE ");
+                }
+                sb.append(" device_notification.device_id = ? ");
+            }
+            parameters.add(device.getId());   //device id is required
+            if (notification != null) {
+                sb.append(" AND ");
+                if (gridInterval != null) {
+                    sb.append(" (rank_selection.notification = ?) ");
+                } else {
+                    sb.append(" device_notification.notification = ? ");
+                }
+                parameters.add(notification);
+            }
+            if (continuation != null && gridInterval == null) {
+                // redundant timestamp bound lets the planner use (device_id, timestamp) index
+                String sign = continuation.isAscending() ? ">" : "<";
+                sb.append(" AND device_notification.timestamp ").append(sign).append("= ? ")
+                    .append(" AND (device_notification.timestamp, device_notification.id) ").append(sign)
+                    .append(" (?, ?) ");
+                parameters.add(continuation.getTimestamp());
+                parameters.add(continuation.getTimestamp());
+                parameters.add(continuation.getId());
+            }
+            if (gridInterval != null) {
+                sb.append("  GROUP BY rank_selection.rank, rank_selection.notification) ");   //select min(timestamp),
+                // group by is required. Selection should contain first timestamp in the interval. Rank is stands for
+                // timestamp in seconds / interval length
             }
-            parameters.add(notification);
-        }
-        if (gridInterval != null) {
-            sb.append("  GROUP BY rank_selection.rank, rank_selection.notification) ");   //select min(timestamp),
-            // group by is required. Selection should contain first timestamp in the interval. Rank is stands for
-            // timestamp in seconds / interval length
         }
         if (sortField != null) {
-            sb.append(" ORDER BY ").append(sortField);
-            if (sortOrderAsc) {
-                sb.append(" ASC ");
-            } else {
-                sb.append(" DESC ");
+            String order = sortOrderAsc ? " ASC " : " DESC ";
+            sb.append(" ORDER BY ").append(sortField).append(order);
+            if (DeviceNotification.TIMESTAMP_COLUMN.equals(sortField)) {
+                sb.append(", ").append(DeviceNotification.ID_COLUMN).append(order);
             }
         }
         if (take != null) {
@@ -176,27 +367,253 @@ public class DeviceNotificationDAO {
             sb.append(" OFFSET ").append(skip);
         }
         sb.append(";");
-        Query query = em.createNativeQuery(sb.toString(), DeviceNotification.class);
+        Query query = em.createNativeQuery(sb.toString());
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        // Rows are mapped to notifications directly, device is the same for all of them and is not loaded again
+        @SuppressWarnings("unchecked") List<Object[]> rows = query.getResultList();
+        List<DeviceNotification> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new DeviceNotification(((Number) row[0]).longValue(), (Timestamp) row[1], (String) row[2],
+                                              (String) row[3], device.getGuid()));
+        }
+        return result;
+    }
+
+    /*
+     Aggregates numeric value at the given JSON path of notification parameters per grid interval. Values are reduced
+     by PostgreSQL aggregates while the range is scanned, only one row per interval and notification name is returned:
+
+     select grid, notification, count(*), min(value), max(value), avg(value),
+            (array_agg(value order by timestamp desc, id desc))[1]
+     from
+       (select id, timestamp, notification, cast(floor(extract(EPOCH from timestamp) / 60) as bigint) as grid,
+               case when raw_value ~ '<number regex>' then cast(raw_value as double precision) end as value
+        from
+          (select id, timestamp, notification,
+                  case when parameters ~ '^\s*\{'
+                    then json_extract_path_text(cast(parameters as json), 'temperature') end as raw_value
+           from device_notification
+           where device_id = 8038 and timestamp between '2014-04-14 14:23:00.775+04' and '2014-04-15 14:23:00.775+04'
+          ) as raw_selection
+       ) as value_selection
+     where value is not null
+     group by grid, notification
+     order by grid, notification
+     limit 1000;
+
+     Notifications without the path, with non numeric value or with parameters that are not a JSON object are skipped.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @ReadReplica
+    public List<NotificationAggregateResponse> aggregateDeviceNotification(Device device,
+                                                                          @ReadReplica.Since Timestamp start,
+                                                                          Timestamp end,
+                                                                          String notification,
+                                                                          List<String> path,
+                                                                          int gridInterval,
+                                                                          Set<AggregateFunction> functions,
+                                                                          int take) {
+        EntityManager em = ReadReplicaInterceptor.select(this.em, replicaEm);
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT grid, notification, count(*), min(value), max(value), avg(value)");
+        if (functions.contains(AggregateFunction.LAST)) {
+            sb.append(", (array_agg(value ORDER BY timestamp DESC, id DESC))[1] ");
+        }
+        sb.append(" FROM ")
+            .append("   (SELECT id, timestamp, notification, ")
+            .append("           CAST(floor(extract(EPOCH FROM timestamp) / ?) AS bigint) AS grid, ")
+            .append("           CASE WHEN raw_value ~ ? THEN CAST(raw_value AS double precision) END AS value ")
+            .append("    FROM ")
+            .append("       (SELECT id, timestamp, notification, ")
+            .append("               CASE WHEN parameters ~ ? THEN json_extract_path_text(CAST(parameters AS json)");
+        parameters.add(gridInterval);
+        parameters.add(NUMBER_PATTERN);
+        parameters.add(JSON_OBJECT_PATTERN);
+        for (String element : path) {
+            sb.append(", ?");
+            parameters.add(element);
+        }
+        sb.append(") END AS raw_value ")
+            .append("        FROM device_notification ")
+            .append("        WHERE device_id = ? ");
+        parameters.add(device.getId());
+        if (start != null) {
+            sb.append(" AND timestamp >= ? ");
+            parameters.add(start);
+        }
+        if (end != null) {
+            sb.append(" AND timestamp <= ? ");
+            parameters.add(end);
+        }
+        if (notification != null) {
+            sb.append(" AND notification = ? ");
+            parameters.add(notification);
+        }
+        sb.append("       ) AS raw_selection ")
+            .append("   ) AS value_selection ")
+            .append(" WHERE value IS NOT NULL ")
+            .append(" GROUP BY grid, notification ")
+            .append(" ORDER BY grid, notification ")
+            .append(" LIMIT ").append(take);
+        Query query = em.createNativeQuery(sb.toString());
         for (int i = 0; i < parameters.size(); i++) {
             query.setParameter(i + 1, parameters.get(i));
         }
-        // Result list will contain only DeviceNotifications according to the query creation
-        @SuppressWarnings("unchecked") List<DeviceNotification> result = query.getResultList();
+        List<?> rows;
+        try {
+            rows = query.getResultList();
+        } catch (PersistenceException e) {
+            // malformed JSON that still looks like an object
+            throw new HiveException(Messages.NOTIFICATION_PARAMETERS_NOT_AGGREGATABLE, e,
+                                    HttpServletResponse.SC_BAD_REQUEST);
+        }
+        List<NotificationAggregateResponse> result = new ArrayList<>(rows.size());
+        for (Object element : rows) {
+            Object[] row = (Object[]) element;
+            Timestamp timestamp = new Timestamp(((Number) row[0]).longValue() * gridInterval * 1000L);
+            NotificationAggregateResponse aggregate = new NotificationAggregateResponse(timestamp, (String) row[1]);
+            if (functions.contains(AggregateFunction.COUNT)) {
+                aggregate.setCount(((Number) row[2]).longValue());
+            }
+            if (functions.contains(AggregateFunction.MIN)) {
+                aggregate.setMin(toDouble(row[3]));
+            }
+            if (functions.contains(AggregateFunction.MAX)) {
+                aggregate.setMax(toDouble(row[4]));
+            }
+            if (functions.contains(AggregateFunction.AVG)) {
+                aggregate.setAvg(toDouble(row[5]));
+            }
+            if (functions.contains(AggregateFunction.LAST)) {
+                aggregate.setLast(toDouble(row[6]));
+            }
+            result.add(aggregate);
+        }
         return result;
     }
 
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+
+    /**
+     * Picks the coarsest rollup which buckets fit grid interval exactly, so each grid cell is a union of whole rollup
+     * buckets.
+     *
+     * @return rollup bucket size in seconds or null if grid interval is not a multiple of any rollup
+     */
+    private static Integer getRollupSize(int gridInterval) {
+        for (int size : ROLLUP_SIZES) {
+            if (gridInterval % size == 0) {
+                return size;
+            }
+        }
+        return null;
+    }
+
+    /*
+     Selects first notification of each grid cell from the rollup of the given size, which is filled by
+     rollUpNotifications. Buckets that are only partially covered by the start..end range and buckets not rolled up yet
+     are resolved from device_notification itself, that is at most one bucket at the start and the last minutes at the
+     end:
+
+     select * from device_notification
+     where device_notification.id in
+       (select distinct on (grid_selection.notification, grid_selection.grid) grid_selection.id
+        from
+          (select first_id as id, first_timestamp as timestamp, notification,
+                  floor(extract(EPOCH from bucket_start) / 600) as grid
+           from device_notification_rollup
+           where device_id = 8038 and bucket_size = 300
+             and bucket_start >= '2014-04-14 14:25:00+00' and bucket_start < '2014-04-15 14:20:00+00'
+           union all
+           select id, timestamp, notification, floor(extract(EPOCH from timestamp) / 600) as grid
+           from device_notification
+           where device_id = 8038
+             and timestamp between '2014-04-14 14:23:00.775+00' and '2014-04-15 14:23:00.775+00'
+             and (timestamp < '2014-04-14 14:25:00+00' or timestamp >= '2014-04-15 14:20:00+00')
+          ) as grid_selection
+        order by grid_selection.notification, grid_selection.grid, grid_selection.timestamp, grid_selection.id)
+     */
+    private static void appendRollupGridSelection(StringBuilder sb, List<Object> parameters, Device device,
+                                                  Timestamp start, Timestamp end, String notification,
+                                                  int gridInterval, int rollupSize, Timestamp rolledUpTo) {
+        long bucketMillis = rollupSize * 1000L;
+        Timestamp innerStart = null;
+        if (start != null) {
+            long millis = start.getTime();
+            boolean aligned = millis % bucketMillis == 0 && start.getNanos() % 1000000 == 0;
+            innerStart = new Timestamp(aligned ? millis : (millis / bucketMillis + 1) * bucketMillis);
+        }
+        Timestamp innerEnd = end != null ? new Timestamp(end.getTime() / bucketMillis * bucketMillis) : null;
+        if (innerEnd == null || innerEnd.after(rolledUpTo)) {
+            innerEnd = rolledUpTo;
+        }
+
+        sb.append("WHERE device_notification.id IN ")
+            .append("  (SELECT DISTINCT ON (grid_selection.notification, grid_selection.grid) grid_selection.id ")
+            .append("  FROM ")
+            .append("     (SELECT first_id AS id, first_timestamp AS timestamp, notification, ")
+            .append("           floor(extract(EPOCH FROM bucket_start) / ?) AS grid ")
+            .append("      FROM device_notification_rollup ")
+            .append("      WHERE device_id = ? AND bucket_size = ? ");
+        parameters.add(gridInterval);
+        parameters.add(device.getId());
+        parameters.add(rollupSize);
+        if (innerStart != null) {
+            sb.append(" AND bucket_start >= ? ");
+            parameters.add(innerStart);
+        }
+        sb.append(" AND bucket_start < ? ");
+        parameters.add(innerEnd);
+        if (notification != null) {
+            sb.append(" AND notification = ? ");
+            parameters.add(notification);
+        }
+        sb.append("  UNION ALL ")
+            .append("   SELECT id, timestamp, notification, floor(extract(EPOCH FROM timestamp) / ?) AS grid ")
+            .append("   FROM device_notification ")
+            .append("   WHERE device_id = ? ");
+        parameters.add(gridInterval);
+        parameters.add(device.getId());
+        if (start != null) {
+            sb.append(" AND timestamp >= ? ");
+            parameters.add(start);
+        }
+        if (end != null) {
+            sb.append(" AND timestamp <= ? ");
+            parameters.add(end);
+        }
+        if (innerStart != null) {
+            sb.append(" AND (timestamp < ? OR timestamp >= ?) ");
+            parameters.add(innerStart);
+            parameters.add(innerEnd);
+        } else {
+            sb.append(" AND timestamp >= ? ");
+            parameters.add(innerEnd);
+        }
+        if (notification != null) {
+            sb.append(" AND notification = ? ");
+            parameters.add(notification);
+        }
+        sb.append(" ) AS grid_selection ")
+            .append(" ORDER BY grid_selection.notification, grid_selection.grid, grid_selection.timestamp, ")
+            .append(" grid_selection.id) ");
+    }
+
     private void appendPrincipalPredicates(List<Predicate> predicates, HivePrincipal principal,
+                                           List<Long> userNetworkIds,
                                            Root<DeviceNotification> from) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         if (principal != null) {
-            User user = principal.getUser();
-            if (user == null && principal.getKey() != null) {
-                user = principal.getKey().getUser();
-            }
-            if (user != null && !user.isAdmin()) {
-                Predicate userPredicate = from.join(DeviceNotification.DEVICE_COLUMN)
-                    .join(Device.NETWORK_COLUMN).join(Network.USERS_ASSOCIATION).in(user);
-                predicates.add(userPredicate);
+            if (userNetworkIds != null) {
+                predicates.add(userNetworkIds.isEmpty()
+                               ? criteriaBuilder.disjunction()
+                               : from.get(DeviceNotification.DEVICE_COLUMN).get(Device.NETWORK_COLUMN)
+                                   .get(Network.ID_COLUMN).in(userNetworkIds));
             }
             if (principal.getDevice() != null) {
                 Predicate devicePredicate = from.get(DeviceNotification.DEVICE_COLUMN).in(principal.getDevice());
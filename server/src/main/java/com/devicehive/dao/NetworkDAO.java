@@ -7,7 +7,6 @@ import com.devicehive.dao.filter.AccessKeyBasedFilterForNetworks;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.AccessKeyPermission;
 import com.devicehive.model.Network;
-import com.devicehive.model.User;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -23,7 +22,6 @@ import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.validation.constraints.NotNull;
@@ -40,6 +38,8 @@ public class NetworkDAO {
 
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
+    @PersistenceContext(unitName = Constants.REPLICA_PERSISTENCE_UNIT)
+    private EntityManager replicaEm;
 
     public Network createNetwork(Network network) {
         em.persist(network);
@@ -55,15 +55,17 @@ public class NetworkDAO {
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public List<Network> getNetworkList(@NotNull User user,
+    public List<Network> getNetworkList(List<Long> userNetworkIds,
                                         Set<AccessKeyPermission> permissions,
                                         List<Long> networkIds) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<Network> criteria = criteriaBuilder.createQuery(Network.class);
         Root<Network> from = criteria.from(Network.class);
         List<Predicate> predicates = new ArrayList<>();
-        if (!user.isAdmin()) {
-            predicates.add(from.join(Network.USERS_ASSOCIATION).get(User.ID_COLUMN).in(user.getId()));
+        if (userNetworkIds != null) {
+            predicates.add(userNetworkIds.isEmpty()
+                           ? criteriaBuilder.disjunction()
+                           : from.get(Network.ID_COLUMN).in(userNetworkIds));
         }
         if (permissions != null) {
             Collection<AccessKeyBasedFilterForNetworks> extraFilters = AccessKeyBasedFilterForNetworks
@@ -116,14 +118,16 @@ public class NetworkDAO {
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @ReadReplica
     public List<Network> list(String name,
                               String namePattern,
                               String sortField,
                               Boolean sortOrderAsc,
                               Integer take,
                               Integer skip,
-                              HivePrincipal principal) {
-
+                              HivePrincipal principal,
+                              List<Long> userNetworkIds) {
+        EntityManager em = ReadReplicaInterceptor.select(this.em, replicaEm);
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<Network> criteria = criteriaBuilder.createQuery(Network.class);
         Root<Network> from = criteria.from(Network.class);
@@ -137,7 +141,7 @@ public class NetworkDAO {
             }
         }
 
-        appendPrincipalPredicates(predicates, principal, from);
+        appendPrincipalPredicates(predicates, principal, userNetworkIds, from);
 
         criteria.where(predicates.toArray(new Predicate[predicates.size()]));
 
@@ -169,16 +173,14 @@ public class NetworkDAO {
         return networks.isEmpty() ? null : networks.get(0);
     }
 
-    private void appendPrincipalPredicates(List<Predicate> predicates, HivePrincipal principal, Root<Network> from) {
-        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+    private void appendPrincipalPredicates(List<Predicate> predicates, HivePrincipal principal,
+                                           List<Long> userNetworkIds, Root<Network> from) {
+        CriteriaBuilder criteriaBuilder = ReadReplicaInterceptor.select(em, replicaEm).getCriteriaBuilder();
         if (principal != null) {
-            User user = principal.getUser();
-            if (user == null && principal.getKey() != null) {
-                user = principal.getKey().getUser();
-            }
-            if (user != null && !user.isAdmin()) {
-                Path<User> path = from.join(Network.USERS_ASSOCIATION);
-                predicates.add(path.in(user));
+            if (userNetworkIds != null) {
+                predicates.add(userNetworkIds.isEmpty()
+                               ? criteriaBuilder.disjunction()
+                               : from.get(Network.ID_COLUMN).in(userNetworkIds));
             }
             if (principal.getDevice() != null) {
                 throw new HiveException("Can not get access to networks", 403);
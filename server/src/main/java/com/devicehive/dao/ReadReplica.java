@@ -0,0 +1,31 @@
+package com.devicehive.dao;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.interceptor.InterceptorBinding;
+
+/**
+ * Marks read-only DAO method that may be served by the read replica. Replica is used only outside of transaction, so
+ * the method never misses changes made by the caller, and only while replica lag is within bounds, see {@link
+ * ReplicaLagMonitor}. The method should take entity manager from {@link ReadReplicaInterceptor#select}.
+ */
+@Inherited
+@InterceptorBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface ReadReplica {
+
+    /**
+     * Marks timestamp parameter the method reads messages after. Recent messages may be not replicated yet, so such
+     * catch-up reads go to the primary database.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.PARAMETER)
+    public @interface Since {
+
+    }
+}
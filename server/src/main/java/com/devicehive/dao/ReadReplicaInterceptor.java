@@ -0,0 +1,75 @@
+package com.devicehive.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import javax.persistence.EntityManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Decides whether invocation of {@link ReadReplica} method goes to the replica. The decision is kept in thread local
+ * for the time of invocation, DAO picks entity manager with {@link #select}.
+ */
+@Interceptor
+@ReadReplica
+public class ReadReplicaInterceptor {
+
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+    private static final Integer NO_SINCE_PARAMETER = -1;
+    private static final ConcurrentMap<Method, Integer> SINCE_PARAMETERS = new ConcurrentHashMap<>();
+
+    @EJB
+    private ReplicaLagMonitor replicaLagMonitor;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    /**
+     * @return replica entity manager if current invocation is routed to the replica, primary one otherwise
+     */
+    public static EntityManager select(EntityManager primary, EntityManager replica) {
+        return Boolean.TRUE.equals(REPLICA.get()) ? replica : primary;
+    }
+
+    @AroundInvoke
+    public Object route(InvocationContext ctx) throws Exception {
+        Boolean previous = REPLICA.get();
+        boolean replica = transactionSynchronizationRegistry.getTransactionKey() == null
+                          && replicaLagMonitor.isUsable(getSince(ctx));
+        REPLICA.set(replica);
+        try {
+            return ctx.proceed();
+        } finally {
+            REPLICA.set(previous);
+        }
+    }
+
+    private static Timestamp getSince(InvocationContext ctx) {
+        Method method = ctx.getMethod();
+        Integer index = SINCE_PARAMETERS.get(method);
+        if (index == null) {
+            index = findSinceParameter(method);
+            SINCE_PARAMETERS.put(method, index);
+        }
+        return index.equals(NO_SINCE_PARAMETER) ? null : (Timestamp) ctx.getParameters()[index];
+    }
+
+    private static Integer findSinceParameter(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof ReadReplica.Since) {
+                    return i;
+                }
+            }
+        }
+        return NO_SINCE_PARAMETER;
+    }
+}
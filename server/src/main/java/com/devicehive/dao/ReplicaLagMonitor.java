@@ -0,0 +1,139 @@
+package com.devicehive.dao;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.util.LogExecutionTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Keeps replication lag of the read replica. Replica is not used while the lag exceeds <code>replica.max.lag</code>
+ * milliseconds or can not be measured. If replica data source points to the primary database the lag is zero.
+ * <p/>
+ * Lag is measured against the primary: each check samples the primary WAL location, and the replica is as fresh as
+ * the newest sample it has replayed. So a standby that lost its connection to the primary falls behind as soon as the
+ * primary writes anything, although it has replayed all it received.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@LogExecutionTime
+public class ReplicaLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final String PRIMARY_LOCATION_QUERY = "SELECT CAST(pg_current_xlog_location() AS text)";
+    /**
+     * Primary has no replay location, so it is null there.
+     */
+    private static final String REPLAY_LOCATION_QUERY = "SELECT CAST(pg_last_xlog_replay_location() AS text)";
+    /**
+     * Samples kept while the replica does not replay, older ones are dropped, which only overestimates the lag.
+     */
+    private static final int MAX_SAMPLES = 3600;
+
+    @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
+    private EntityManager em;
+    @PersistenceContext(unitName = Constants.REPLICA_PERSISTENCE_UNIT)
+    private EntityManager replicaEm;
+    @EJB
+    private ConfigurationService configurationService;
+    @Resource
+    private TimerService timerService;
+
+    private long maxLag;
+    private volatile long lag = Long.MAX_VALUE;
+    /**
+     * Primary WAL locations not replayed by the replica yet, as check time and location pairs, oldest first.
+     */
+    private final Deque<long[]> samples = new ArrayDeque<>();
+    /**
+     * Time of the newest sample replayed by the replica, -1 if none.
+     */
+    private long replayedAt = -1;
+
+    @PostConstruct
+    public void postConstruct() {
+        maxLag = configurationService.getLong(Constants.REPLICA_MAX_LAG, Constants.REPLICA_MAX_LAG_DEFAULT);
+        timerService.createIntervalTimer(0, Constants.REPLICA_LAG_CHECK_INTERVAL, new TimerConfig(null, false));
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void check() {
+        check(System.currentTimeMillis());
+    }
+
+    synchronized void check(long now) {
+        try {
+            long primaryLocation = parseLocation(em.createNativeQuery(PRIMARY_LOCATION_QUERY).getSingleResult());
+            Object replayLocation = replicaEm.createNativeQuery(REPLAY_LOCATION_QUERY).getSingleResult();
+            if (replayLocation == null) {
+                samples.clear();
+                replayedAt = now;
+                lag = 0;
+                return;
+            }
+            long replayed = parseLocation(replayLocation);
+            if (samples.size() == MAX_SAMPLES) {
+                samples.removeFirst();
+            }
+            samples.addLast(new long[]{now, primaryLocation});
+            while (!samples.isEmpty() && samples.peekFirst()[1] <= replayed) {
+                replayedAt = samples.removeFirst()[0];
+            }
+            lag = replayedAt >= 0 ? now - replayedAt : Long.MAX_VALUE;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to check replica lag, reads go to the primary database", e);
+            lag = Long.MAX_VALUE;
+        }
+        if (lag > maxLag) {
+            logger.debug("Replica lag is {} ms, reads go to the primary database", lag);
+        }
+    }
+
+    /**
+     * @param location WAL location as returned by PostgreSQL, e.g. <code>16/B374D848</code>
+     * @return location as a byte position
+     */
+    private static long parseLocation(Object location) {
+        String value = location.toString();
+        int separator = value.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed WAL location " + value);
+        }
+        return (Long.parseLong(value.substring(0, separator), 16) << 32)
+               | Long.parseLong(value.substring(separator + 1), 16);
+    }
+
+    /**
+     * @param since messages are read after this timestamp, null if the read is not a catch-up
+     * @return true if the read may be served by the replica
+     */
+    public boolean isUsable(Timestamp since) {
+        if (lag > maxLag) {
+            return false;
+        }
+        return since == null || since.getTime() < System.currentTimeMillis() - maxLag;
+    }
+}
@@ -1,8 +1,6 @@
 package com.devicehive.dao;
 
 import com.devicehive.configuration.Constants;
-import com.devicehive.model.Device;
-import com.devicehive.model.Network;
 import com.devicehive.model.User;
 import com.devicehive.service.helpers.PasswordProcessor;
 import com.devicehive.util.LogExecutionTime;
@@ -27,14 +25,10 @@ import javax.validation.constraints.NotNull;
 
 import static com.devicehive.model.User.Queries.Names.DELETE_BY_ID;
 import static com.devicehive.model.User.Queries.Names.FIND_BY_NAME;
+import static com.devicehive.model.User.Queries.Names.GET_NETWORK_IDS;
 import static com.devicehive.model.User.Queries.Names.GET_WITH_NETWORKS_BY_ID;
-import static com.devicehive.model.User.Queries.Names.HAS_ACCESS_TO_DEVICE;
-import static com.devicehive.model.User.Queries.Names.HAS_ACCESS_TO_NETWORK;
-import static com.devicehive.model.User.Queries.Parameters.DEVICE;
 import static com.devicehive.model.User.Queries.Parameters.ID;
 import static com.devicehive.model.User.Queries.Parameters.LOGIN;
-import static com.devicehive.model.User.Queries.Parameters.NETWORK;
-import static com.devicehive.model.User.Queries.Parameters.USER;
 
 @Stateless
 @LogExecutionTime
@@ -136,22 +130,17 @@ public class UserDAO {
 
     }
 
+    /**
+     * Retrieves ids of all networks user is assigned to
+     *
+     * @param id user id
+     * @return list of network ids, empty if user has no networks
+     */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public boolean hasAccessToNetwork(User user, Network network) {
-        TypedQuery<Long> query = em.createNamedQuery(HAS_ACCESS_TO_NETWORK, Long.class);
-        query.setParameter(USER, user);
-        query.setParameter(NETWORK, network);
-        Long count = query.getSingleResult();
-        return count != null && count > 0;
-    }
-
-    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public boolean hasAccessToDevice(User user, Device device) {
-        TypedQuery<Long> query = em.createNamedQuery(HAS_ACCESS_TO_DEVICE, Long.class);
-        query.setParameter(USER, user);
-        query.setParameter(DEVICE, device);
-        Long count = query.getSingleResult();
-        return count != null && count > 0;
+    public List<Long> getNetworkIds(@NotNull Long id) {
+        TypedQuery<Long> query = em.createNamedQuery(GET_NETWORK_IDS, Long.class);
+        query.setParameter(ID, id);
+        return query.getResultList();
     }
 
     public boolean delete(@NotNull long id) {
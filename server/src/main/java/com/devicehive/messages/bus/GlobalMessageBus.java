@@ -1,5 +1,7 @@
 package com.devicehive.messages.bus;
 
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
 import com.devicehive.messages.bus.listener.DeviceCommandCreateListener;
 import com.devicehive.messages.bus.listener.DeviceCommandUpdateListener;
 import com.devicehive.messages.bus.listener.DeviceNotificationCreateListener;
@@ -8,11 +10,14 @@ import com.devicehive.model.DeviceNotification;
 import com.devicehive.service.HazelcastService;
 import com.devicehive.util.LogExecutionTime;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
 import com.hazelcast.core.ITopic;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.ejb.Asynchronous;
@@ -29,6 +34,10 @@ import javax.inject.Inject;
 import static javax.ejb.ConcurrencyManagementType.BEAN;
 
 
+/**
+ * Publishes messages to other cluster nodes. Updates of a command that has waiters on its origin node only are sent
+ * to that node, updates of other commands are broadcast.
+ */
 @Singleton
 @ConcurrencyManagement(BEAN)
 @Startup
@@ -40,13 +49,20 @@ public class GlobalMessageBus {
     private static final String DEVICE_COMMAND = "DEVICE_COMMAND";
     private static final String DEVICE_COMMAND_UPDATE = "DEVICE_COMMAND_UPDATE";
     private static final String DEVICE_NOTIFICATION = "DEVICE_NOTIFICATION";
+    private static final String DEVICE_COMMAND_UPDATE_ROUTES = "DEVICE_COMMAND_UPDATE_ROUTES";
 
     @EJB
     private HazelcastService hazelcastService;
+    @EJB
+    private ConfigurationService configurationService;
 
     private HazelcastInstance hazelcast;
+    private IMap<Long, String> commandUpdateRoutes;
+    private String localMemberId;
+    private long routeTtl;
     private String commandListener;
     private String commandUpdateListener;
+    private String directCommandUpdateListener;
     private String notificationListener;
 
 
@@ -73,6 +89,13 @@ public class GlobalMessageBus {
         commandUpdateListener = deviceCommandUpdateTopic.addMessageListener(deviceCommandUpdateListener);
         logger.debug("Done {}", DEVICE_COMMAND_UPDATE);
 
+        localMemberId = hazelcast.getCluster().getLocalMember().getUuid();
+        commandUpdateRoutes = hazelcast.getMap(DEVICE_COMMAND_UPDATE_ROUTES);
+        routeTtl = configurationService.getLong(Constants.COMMAND_UPDATE_ROUTE_TTL,
+                                                Constants.COMMAND_UPDATE_ROUTE_TTL_DEFAULT);
+        ITopic<DeviceCommand> directCommandUpdateTopic = hazelcast.getTopic(getMemberTopic(localMemberId));
+        directCommandUpdateListener = directCommandUpdateTopic.addMessageListener(deviceCommandUpdateListener);
+
         logger.debug("Initializing topic {}...", DEVICE_NOTIFICATION);
         ITopic<DeviceNotification> deviceNotificationTopic = hazelcast.getTopic(DEVICE_NOTIFICATION);
         notificationListener = deviceNotificationTopic.addMessageListener(deviceNotificationCreateListener);
@@ -83,6 +106,7 @@ public class GlobalMessageBus {
     protected void preDestroy() {
         hazelcast.getTopic(DEVICE_COMMAND).removeMessageListener(commandListener);
         hazelcast.getTopic(DEVICE_COMMAND_UPDATE).removeMessageListener(commandUpdateListener);
+        hazelcast.getTopic(getMemberTopic(localMemberId)).removeMessageListener(directCommandUpdateListener);
         hazelcast.getTopic(DEVICE_NOTIFICATION).removeMessageListener(notificationListener);
     }
 
@@ -100,11 +124,43 @@ public class GlobalMessageBus {
         @Observes(during = TransactionPhase.AFTER_SUCCESS)
         @GlobalMessage @Update
         DeviceCommand deviceCommandUpdate) {
-        logger.debug("Sending device command update {}", deviceCommandUpdate.getId());
-        hazelcast.getTopic(DEVICE_COMMAND_UPDATE).publish(deviceCommandUpdate);
+        String member = commandUpdateRoutes.get(deviceCommandUpdate.getId());
+        if (member == null) {
+            logger.debug("Sending device command update {}", deviceCommandUpdate.getId());
+            hazelcast.getTopic(DEVICE_COMMAND_UPDATE).publish(deviceCommandUpdate);
+        } else if (!member.equals(localMemberId)) {
+            logger.debug("Sending device command update {} to member {}", deviceCommandUpdate.getId(), member);
+            hazelcast.getTopic(getMemberTopic(member)).publish(deviceCommandUpdate);
+        } else {
+            // waiters of the command are local, they are notified by local message bus
+            return;
+        }
         logger.debug("Sent");
     }
 
+    /**
+     * Routes updates of the command to this node only. Should be called when the command is created by a client
+     * that waits for its updates here. Route expires after configured time, then updates are broadcast again.
+     */
+    public void routeCommandUpdates(Long commandId) {
+        commandUpdateRoutes.set(commandId, localMemberId, routeTtl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Makes updates of the command be broadcast, unless they are routed to this node already. Should be called before
+     * waiting for updates of the command that could be created on another node.
+     */
+    public void broadcastCommandUpdates(Long commandId) {
+        String member = commandUpdateRoutes.get(commandId);
+        if (member != null && !member.equals(localMemberId)) {
+            commandUpdateRoutes.remove(commandId, member);
+        }
+    }
+
+    private static String getMemberTopic(String memberId) {
+        return DEVICE_COMMAND_UPDATE + "_" + memberId;
+    }
+
     @Asynchronous
     public void publishDeviceNotification(
         @GlobalMessage @Create
@@ -1,7 +1,6 @@
 package com.devicehive.messages.bus;
 
 import com.devicehive.configuration.Constants;
-import com.devicehive.messages.handler.WebsocketHandlerCreator;
 import com.devicehive.messages.subscriptions.CommandSubscription;
 import com.devicehive.messages.subscriptions.CommandUpdateSubscription;
 import com.devicehive.messages.subscriptions.NotificationSubscription;
@@ -10,7 +9,6 @@ import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.service.DeviceService;
 import com.devicehive.util.LogExecutionTime;
-import com.devicehive.websockets.util.SessionMonitor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +27,6 @@ import javax.ejb.TransactionAttributeType;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.event.Observes;
 import javax.enterprise.event.TransactionPhase;
-import javax.websocket.Session;
 
 import static javax.ejb.ConcurrencyManagementType.BEAN;
 
@@ -45,8 +42,6 @@ public class LocalMessageBus {
     private SubscriptionManager subscriptionManager;
     @EJB
     private DeviceService deviceService;
-    @EJB
-    private SessionMonitor sessionMonitor;
     @Resource(name = "concurrent/DeviceHiveMessageService")
     private ManagedExecutorService mes;
 
@@ -97,13 +92,6 @@ public class LocalMessageBus {
 
         logger.debug("Device command update was submitted: {}", deviceCommand.getId());
 
-        if (deviceCommand.getOriginSessionId() != null) {
-            Session session = sessionMonitor.getSession(deviceCommand.getOriginSessionId());
-            if (session != null) {
-                mes.submit(WebsocketHandlerCreator.createCommandUpdate(session).getHandler(deviceCommand, null));
-            }
-        }
-
         Set<CommandUpdateSubscription> subs = subscriptionManager.getCommandUpdateSubscriptionStorage()
             .getByCommandId(deviceCommand.getId());
         for (CommandUpdateSubscription commandUpdateSubscription : subs) {
@@ -6,7 +6,6 @@ import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.websockets.HiveWebsocketSessionState;
-import com.devicehive.websockets.util.FlushQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,16 +13,11 @@ import org.slf4j.LoggerFactory;
 import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 
-import javax.enterprise.inject.spi.CDI;
-import javax.enterprise.util.AnnotationLiteral;
 import javax.websocket.Session;
 
 public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(WebsocketHandlerCreator.class);
-    private static AnnotationLiteral<FlushQueue> flushQueue = new AnnotationLiteral<FlushQueue>() {
-        private static final long serialVersionUID = 1033448427444122108L;
-    };
     private final Session session;
     private final Lock lock;
 
@@ -82,11 +76,11 @@ public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
                 try {
                     lock.lock();
                     logger.debug("Add messages to queue process for session " + session.getId());
-                    HiveWebsocketSessionState.get(session).getQueue().add(json);
+                    HiveWebsocketSessionState.get(session).getWriter().enqueue(json);
                 } finally {
                     lock.unlock();
                 }
-                CDI.current().getBeanManager().fireEvent(session, flushQueue);
+                HiveWebsocketSessionState.get(session).getWriter().flush();
             }
         };
     }
@@ -10,6 +10,7 @@ import com.devicehive.exceptions.HiveException;
 import com.devicehive.json.GsonFactory;
 import com.devicehive.json.strategies.JsonPolicyDef;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -28,6 +29,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
@@ -88,6 +90,11 @@ public class AccessKeyPermission implements HiveEntity {
     @Version
     @Column(name = "entity_version")
     private long entityVersion;
+    /**
+     * Parsed JSON columns, so permission checks do not parse JSON on every request. Reset when any column is changed.
+     */
+    @Transient
+    private transient volatile Compiled compiled;
 
     public long getEntityVersion() {
         return entityVersion;
@@ -121,17 +128,53 @@ public class AccessKeyPermission implements HiveEntity {
     public void setDomains(String... domains) {
         Gson gson = GsonFactory.createGson();
         this.domains = new JsonStringWrapper(gson.toJsonTree(domains).toString());
+        compiled = null;
     }
 
     public void setDomains(JsonStringWrapper domains) {
         this.domains = domains;
+        compiled = null;
     }
 
     public Set<String> getDomainsAsSet() {
-        return getJsonAsSet(domains);
+        return getCompiled().domains;
     }
 
     public Set<Subnet> getSubnetsAsSet() {
+        return getCompiled().subnets;
+    }
+
+    public Set<String> getActionsAsSet() {
+        return getCompiled().actions;
+    }
+
+    public Set<String> getDeviceGuidsAsSet() {
+        return getCompiled().deviceGuids;
+    }
+
+    public Set<Long> getNetworkIdsAsSet() {
+        return getCompiled().networkIds;
+    }
+
+    private Compiled getCompiled() {
+        Compiled result = compiled;
+        if (result == null) {
+            result = new Compiled();
+            result.domains = unmodifiable(getJsonAsSet(domains));
+            result.subnets = unmodifiable(parseSubnets());
+            result.actions = unmodifiable(getJsonAsSet(actions));
+            result.deviceGuids = unmodifiable(getJsonAsSet(deviceGuids));
+            result.networkIds = unmodifiable(parseNetworkIds());
+            compiled = result;
+        }
+        return result;
+    }
+
+    private static <T> Set<T> unmodifiable(Set<T> set) {
+        return set == null ? null : Collections.unmodifiableSet(set);
+    }
+
+    private Set<Subnet> parseSubnets() {
         if (subnets == null) {
             return null;
         }
@@ -155,15 +198,7 @@ public class AccessKeyPermission implements HiveEntity {
         throw new HiveException("JSON array expected!", HttpServletResponse.SC_BAD_REQUEST);
     }
 
-    public Set<String> getActionsAsSet() {
-        return getJsonAsSet(actions);
-    }
-
-    public Set<String> getDeviceGuidsAsSet() {
-        return getJsonAsSet(deviceGuids);
-    }
-
-    public Set<Long> getNetworkIdsAsSet() {
+    private Set<Long> parseNetworkIds() {
         if (networkIds == null) {
             return null;
         }
@@ -210,11 +245,13 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setSubnets(JsonStringWrapper subnets) {
         this.subnets = subnets;
+        compiled = null;
     }
 
     public void setSubnets(String... subnets) {
         Gson gson = GsonFactory.createGson();
         this.subnets = new JsonStringWrapper(gson.toJsonTree(subnets).toString());
+        compiled = null;
     }
 
     public JsonStringWrapper getActions() {
@@ -223,11 +260,13 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setActions(JsonStringWrapper actions) {
         this.actions = actions;
+        compiled = null;
     }
 
     public void setActions(String... actions) {
         Gson gson = GsonFactory.createGson();
         this.actions = new JsonStringWrapper(gson.toJsonTree(actions).toString());
+        compiled = null;
     }
 
     public JsonStringWrapper getNetworkIds() {
@@ -236,6 +275,7 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setNetworkIds(JsonStringWrapper networkIds) {
         this.networkIds = networkIds;
+        compiled = null;
     }
 
     public JsonStringWrapper getDeviceGuids() {
@@ -244,6 +284,16 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setDeviceGuids(JsonStringWrapper deviceGuids) {
         this.deviceGuids = deviceGuids;
+        compiled = null;
+    }
+
+    private static class Compiled {
+
+        private Set<String> domains;
+        private Set<Subnet> subnets;
+        private Set<String> actions;
+        private Set<String> deviceGuids;
+        private Set<Long> networkIds;
     }
 
     public static class Queries {
@@ -0,0 +1,68 @@
+package com.devicehive.model;
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Position in device message history that is ordered by timestamp and id. Next page starts right after the position,
+ * so it is not affected by messages inserted meanwhile. Clients get the token as an opaque string.
+ */
+public class ContinuationToken {
+
+    private static final Charset UTF8 = Charset.forName(Constants.UTF8);
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = ":";
+
+    private final Timestamp timestamp;
+    private final long id;
+    private final boolean ascending;
+
+    public ContinuationToken(Timestamp timestamp, long id, boolean ascending) {
+        this.timestamp = timestamp;
+        this.id = id;
+        this.ascending = ascending;
+    }
+
+    /**
+     * @throws HiveException with 400 status if token is malformed
+     */
+    public static ContinuationToken parse(String token) {
+        try {
+            String[] parts = new String(Base64.decodeBase64(token), UTF8).split(SEPARATOR);
+            if (parts.length != 5 || !VERSION.equals(parts[0])) {
+                throw new HiveException(Messages.INVALID_CONTINUATION_TOKEN, SC_BAD_REQUEST);
+            }
+            Timestamp timestamp = new Timestamp(Long.parseLong(parts[2]));
+            timestamp.setNanos(Integer.parseInt(parts[3]));
+            return new ContinuationToken(timestamp, Long.parseLong(parts[4]), Boolean.parseBoolean(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(Messages.INVALID_CONTINUATION_TOKEN, SC_BAD_REQUEST);
+        }
+    }
+
+    public String format() {
+        String value = VERSION + SEPARATOR + ascending + SEPARATOR + timestamp.getTime() + SEPARATOR
+                       + timestamp.getNanos() + SEPARATOR + id;
+        return Base64.encodeBase64URLSafeString(value.getBytes(UTF8));
+    }
+
+    public Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+}
@@ -2,6 +2,7 @@ package com.devicehive.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyDef;
 
 import javax.persistence.AttributeOverride;
@@ -18,6 +19,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
@@ -40,6 +42,8 @@ import static com.devicehive.model.Device.Queries.Values;
 @NamedQueries({
                   @NamedQuery(name = Names.FIND_BY_UUID_WITH_NETWORK_AND_DEVICE_CLASS,
                               query = Values.FIND_BY_UUID_WITH_NETWORK_AND_DEVICE_CLASS),
+                  @NamedQuery(name = Names.FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS,
+                              query = Values.FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS),
                   @NamedQuery(name = Names.FIND_BY_UUID_AND_KEY, query = Values.FIND_BY_UUID_AND_KEY),
                   @NamedQuery(name = Names.DELETE_BY_UUID, query = Values.DELETE_BY_UUID)
               })
@@ -52,7 +56,9 @@ public class Device implements HiveEntity {
     private static final long serialVersionUID = 2959997451631843298L;
     @Id
     @SerializedName("sid")//overwork for  "declares multiple JSON fields" exception
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "device_id", sequenceName = "device_id_seq",
+                       allocationSize = Constants.DEVICE_ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_id")
     private Long id;
     @SerializedName("id")
     @Column
@@ -179,6 +185,8 @@ public class Device implements HiveEntity {
 
             static final String FIND_BY_UUID_WITH_NETWORK_AND_DEVICE_CLASS =
                 "Device.findByUUIDWithNetworkAndDeviceClass";
+            static final String FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS =
+                "Device.findByUUIDsWithNetworkAndDeviceClass";
             static final String FIND_BY_UUID_AND_KEY = "Device.findByUUIDAndKey";
             static final String DELETE_BY_UUID = "Device.deleteByUUID";
         }
@@ -191,6 +199,12 @@ public class Device implements HiveEntity {
                 "left join fetch d.deviceClass dc " +
                 "left join fetch dc.equipment " +
                 "where d.guid = :guid";
+            static final String FIND_BY_UUIDS_WITH_NETWORK_AND_DEVICE_CLASS =
+                "select distinct d from Device d " +
+                "left join fetch d.network " +
+                "left join fetch d.deviceClass dc " +
+                "left join fetch dc.equipment " +
+                "where d.guid in :guids";
             static final String FIND_BY_UUID_AND_KEY = "select d from Device d where d.guid = :guid and d.key = :key";
             static final String DELETE_BY_UUID = "delete from Device d where d.guid = :guid";
         }
@@ -198,6 +212,7 @@ public class Device implements HiveEntity {
         public static interface Parameters {
 
             static final String GUID = "guid";
+            static final String GUIDS = "guids";
             static final String KEY = "key";
             static final String ID = "id";
         }
@@ -2,6 +2,7 @@ package com.devicehive.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyDef;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -14,6 +15,7 @@ import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -21,6 +23,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import javax.persistence.Version;
@@ -47,7 +50,8 @@ import static com.devicehive.model.DeviceCommand.Queries.Values;
                   @NamedQuery(name = Names.DELETE_BY_ID, query = Values.DELETE_BY_ID),
                   @NamedQuery(name = Names.DELETE_BY_DEVICE_AND_USER, query = Values.DELETE_BY_DEVICE_AND_USER),
                   @NamedQuery(name = Names.DELETE_BY_FOREIGN_KEY, query = Values.DELETE_BY_FOREIGN_KEY),
-                  @NamedQuery(name = Names.GET_BY_DEVICE_UUID_AND_ID, query = Values.GET_BY_DEVICE_UUID_AND_ID)
+                  @NamedQuery(name = Names.GET_BY_DEVICE_UUID_AND_ID, query = Values.GET_BY_DEVICE_UUID_AND_ID),
+                  @NamedQuery(name = Names.GET_BY_ID_WITH_DEVICE, query = Values.GET_BY_ID_WITH_DEVICE)
               })
 @Cacheable
 public class DeviceCommand implements HiveEntity {
@@ -57,10 +61,17 @@ public class DeviceCommand implements HiveEntity {
     public static final String COMMAND_COLUMN = "command";
     public static final String STATUS_COLUMN = "status";
     public static final String ID_COLUMN = "id";
+    public static final String USER_COLUMN = "user";
+    public static final String PARAMETERS_COLUMN = "parameters";
+    public static final String LIFETIME_COLUMN = "lifetime";
+    public static final String FLAGS_COLUMN = "flags";
+    public static final String RESULT_COLUMN = "result";
     private static final long serialVersionUID = -1062670903456135249L;
     @SerializedName("id")
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "device_command_id", sequenceName = "device_command_id_seq",
+                       allocationSize = Constants.MESSAGE_ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_command_id")
     @JsonPolicyDef({COMMAND_TO_CLIENT, COMMAND_TO_DEVICE, COMMAND_UPDATE_TO_CLIENT, POST_COMMAND_TO_DEVICE,
                     COMMAND_LISTED})
     private Long id;
@@ -78,10 +89,12 @@ public class DeviceCommand implements HiveEntity {
     @JsonPolicyDef({COMMAND_TO_CLIENT, COMMAND_TO_DEVICE, COMMAND_UPDATE_TO_CLIENT, COMMAND_LISTED})
     private Long userId;
     @SerializedName("device")
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "device_id", updatable = false)
     @NotNull(message = "device field cannot be null.")
     private Device device;
+    @Transient
+    private String deviceGuid;
     @SerializedName("command")
     @Column
     @NotNull(message = "command field cannot be null.")
@@ -131,6 +144,27 @@ public class DeviceCommand implements HiveEntity {
     @Column(name = "entity_version")
     private long entityVersion;
 
+    public DeviceCommand() {
+    }
+
+    /**
+     * Creates command read by projection query. Neither device nor user is loaded, only guid of the device and id of
+     * the user are known.
+     */
+    public DeviceCommand(Long id, Timestamp timestamp, Long userId, String command, String parameters,
+                         Integer lifetime, Integer flags, String status, String result, String deviceGuid) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.userId = userId;
+        this.command = command;
+        this.parameters = parameters != null ? new JsonStringWrapper(parameters) : null;
+        this.lifetime = lifetime;
+        this.flags = flags;
+        this.status = status;
+        this.result = result != null ? new JsonStringWrapper(result) : null;
+        this.deviceGuid = deviceGuid;
+    }
+
     public Long getId() {
         return id;
     }
@@ -211,6 +245,10 @@ public class DeviceCommand implements HiveEntity {
         this.device = device;
     }
 
+    public String getDeviceGuid() {
+        return deviceGuid != null ? deviceGuid : device.getGuid();
+    }
+
     public long getEntityVersion() {
         return entityVersion;
     }
@@ -243,6 +281,7 @@ public class DeviceCommand implements HiveEntity {
             static final String DELETE_BY_DEVICE_AND_USER = "DeviceCommand.deleteByDeviceAndUser";
             static final String DELETE_BY_FOREIGN_KEY = "DeviceCommand.deleteByFK";
             static final String GET_BY_DEVICE_UUID_AND_ID = "DeviceCommand.getByDeviceUuidAndId";
+            static final String GET_BY_ID_WITH_DEVICE = "DeviceCommand.getByIdWithDevice";
         }
 
         static interface Values {
@@ -255,6 +294,8 @@ public class DeviceCommand implements HiveEntity {
             static final String GET_BY_DEVICE_UUID_AND_ID =
                 "select dc from DeviceCommand dc " +
                 "where dc.id = :id and dc.device.guid = :guid";
+            static final String GET_BY_ID_WITH_DEVICE =
+                "select dc from DeviceCommand dc join fetch dc.device where dc.id = :id";
         }
 
         public static interface Parameters {
@@ -3,6 +3,7 @@ package com.devicehive.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyDef;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -23,7 +24,9 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -41,7 +44,8 @@ import static com.devicehive.model.DeviceNotification.Queries.Values;
 @Table(name = "device_notification")
 @NamedQueries(value = {
     @NamedQuery(name = Names.DELETE_BY_ID, query = Values.DELETE_BY_FK),
-    @NamedQuery(name = Names.DELETE_BY_FK, query = Values.DELETE_BY_FK)
+    @NamedQuery(name = Names.DELETE_BY_FK, query = Values.DELETE_BY_FK),
+    @NamedQuery(name = Names.GET_BY_ID_WITH_DEVICE, query = Values.GET_BY_ID_WITH_DEVICE)
 
 })
 @Cacheable
@@ -51,6 +55,7 @@ public class DeviceNotification implements HiveEntity {
     public static final String DEVICE_COLUMN = "device";
     public static final String NOTIFICATION_COLUMN = "notification";
     public static final String ID_COLUMN = "id";
+    public static final String PARAMETERS_COLUMN = "parameters";
     private static final long serialVersionUID = 8704321978956225955L;
     @SerializedName("parameters")
     @Embedded
@@ -61,7 +66,9 @@ public class DeviceNotification implements HiveEntity {
     private JsonStringWrapper parameters;
     @SerializedName("id")
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "device_notification_id", sequenceName = "device_notification_id_seq",
+                       allocationSize = Constants.MESSAGE_ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_notification_id")
     @JsonPolicyDef({NOTIFICATION_TO_CLIENT, NOTIFICATION_TO_DEVICE})
     private Long id;
     @SerializedName("timestamp")
@@ -75,10 +82,12 @@ public class DeviceNotification implements HiveEntity {
                                         "128 symbols.")
     @JsonPolicyDef({NOTIFICATION_TO_CLIENT, NOTIFICATION_FROM_DEVICE})
     private String notification;
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "device_id", updatable = false)
     @NotNull(message = "device field cannot be null.")
     private Device device;
+    @Transient
+    private String deviceGuid;
     @Version
     @Column(name = "entity_version")
     private long entityVersion;
@@ -86,6 +95,18 @@ public class DeviceNotification implements HiveEntity {
     public DeviceNotification() {
     }
 
+    /**
+     * Creates notification read by projection query. Device is not loaded, only its guid is known.
+     */
+    public DeviceNotification(Long id, Timestamp timestamp, String notification, String parameters,
+                              String deviceGuid) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.notification = notification;
+        this.parameters = parameters != null ? new JsonStringWrapper(parameters) : null;
+        this.deviceGuid = deviceGuid;
+    }
+
     public Long getId() {
         return id;
     }
@@ -134,18 +155,25 @@ public class DeviceNotification implements HiveEntity {
         this.device = device;
     }
 
+    public String getDeviceGuid() {
+        return deviceGuid != null ? deviceGuid : device.getGuid();
+    }
+
     public static class Queries {
 
         public static interface Names {
 
             static final String DELETE_BY_ID = "DeviceNotification.deleteById";
             static final String DELETE_BY_FK = "DeviceNotification.deleteByFK";
+            static final String GET_BY_ID_WITH_DEVICE = "DeviceNotification.getByIdWithDevice";
         }
 
         static interface Values {
 
             static final String DELETE_BY_ID = "delete from DeviceNotification dn where dn.id = :id";
             static final String DELETE_BY_FK = "delete from DeviceNotification dn where dn.device = :device";
+            static final String GET_BY_ID_WITH_DEVICE =
+                "select dn from DeviceNotification dn join fetch dn.device where dn.id = :id";
         }
 
         public static interface Parameters {
@@ -37,8 +37,7 @@ import static com.devicehive.model.User.Queries.Values;
 @Table(name = "\"user\"")
 @NamedQueries({
                   @NamedQuery(name = Names.FIND_BY_NAME, query = Values.FIND_BY_NAME),
-                  @NamedQuery(name = Names.HAS_ACCESS_TO_NETWORK, query = Values.HAS_ACCESS_TO_NETWORK),
-                  @NamedQuery(name = Names.HAS_ACCESS_TO_DEVICE, query = Values.HAS_ACCESS_TO_DEVICE),
+                  @NamedQuery(name = Names.GET_NETWORK_IDS, query = Values.GET_NETWORK_IDS),
                   @NamedQuery(name = Names.GET_WITH_NETWORKS_BY_ID, query = Values.GET_WITH_NETWORKS_BY_ID),
                   @NamedQuery(name = Names.DELETE_BY_ID, query = Values.DELETE_BY_ID)
               })
@@ -205,8 +204,7 @@ public class User implements HiveEntity {
         public static interface Names {
 
             static final String FIND_BY_NAME = "User.findByName";
-            static final String HAS_ACCESS_TO_NETWORK = "User.hasAccessToNetwork";
-            static final String HAS_ACCESS_TO_DEVICE = "User.hasAccessToDevice";
+            static final String GET_NETWORK_IDS = "User.getNetworkIds";
             static final String GET_WITH_NETWORKS_BY_ID = "User.getWithNetworksById";
             static final String DELETE_BY_ID = "User.deleteById";
         }
@@ -214,15 +212,10 @@ public class User implements HiveEntity {
         static interface Values {
 
             static final String FIND_BY_NAME = "select u from User u where u.login = :login and u.status <> 3";
-            static final String HAS_ACCESS_TO_NETWORK =
-                "select count(distinct u) from User u " +
-                "join u.networks n " +
-                "where u = :user and n = :network";
-            static final String HAS_ACCESS_TO_DEVICE =
-                "select count(distinct n) from Network n " +
-                "join n.devices d " +
+            static final String GET_NETWORK_IDS =
+                "select n.id from Network n " +
                 "join n.users u " +
-                "where u = :user and d = :device";
+                "where u.id = :id";
             static final String GET_WITH_NETWORKS_BY_ID =
                 "select u from User u left join fetch u.networks where u.id = :id";
             static final String DELETE_BY_ID = "delete from User u where u.id = :id";
@@ -230,9 +223,6 @@ public class User implements HiveEntity {
 
         public static interface Parameters {
 
-            static final String USER = "user";
-            static final String NETWORK = "network";
-            static final String DEVICE = "device";
             static final String ID = "id";
             static final String LOGIN = "login";
         }
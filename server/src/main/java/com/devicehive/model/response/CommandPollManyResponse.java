@@ -48,7 +48,7 @@ public class CommandPollManyResponse implements HiveEntity {
     public static List<CommandPollManyResponse> getList(List<DeviceCommand> commands) {
         List<CommandPollManyResponse> result = new ArrayList<>(commands.size());
         for (DeviceCommand command : commands) {
-            result.add(new CommandPollManyResponse(command, command.getDevice().getGuid()));
+            result.add(new CommandPollManyResponse(command, command.getDeviceGuid()));
         }
         return result;
     }
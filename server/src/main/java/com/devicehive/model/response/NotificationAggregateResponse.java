@@ -0,0 +1,108 @@
+package com.devicehive.model.response;
+
+
+import com.google.gson.annotations.SerializedName;
+
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.HiveEntity;
+
+import java.sql.Timestamp;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
+
+/**
+ * Aggregates of numeric notification parameter over one grid interval. Functions that were not requested are null.
+ */
+public class NotificationAggregateResponse implements HiveEntity {
+
+    private static final long serialVersionUID = 2731539874361457095L;
+
+    @SerializedName("timestamp")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Timestamp timestamp;
+
+    @SerializedName("notification")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private String notification;
+
+    @SerializedName("count")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Long count;
+
+    @SerializedName("min")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Double min;
+
+    @SerializedName("max")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Double max;
+
+    @SerializedName("avg")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Double avg;
+
+    @SerializedName("last")
+    @JsonPolicyDef(NOTIFICATION_TO_CLIENT)
+    private Double last;
+
+    public NotificationAggregateResponse(Timestamp timestamp, String notification) {
+        this.timestamp = timestamp;
+        this.notification = notification;
+    }
+
+    public Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Timestamp timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getNotification() {
+        return notification;
+    }
+
+    public void setNotification(String notification) {
+        this.notification = notification;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public void setMax(Double max) {
+        this.max = max;
+    }
+
+    public Double getAvg() {
+        return avg;
+    }
+
+    public void setAvg(Double avg) {
+        this.avg = avg;
+    }
+
+    public Double getLast() {
+        return last;
+    }
+
+    public void setLast(Double last) {
+        this.last = last;
+    }
+}
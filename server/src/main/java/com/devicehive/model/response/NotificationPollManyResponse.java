@@ -31,7 +31,7 @@ public class NotificationPollManyResponse implements HiveEntity {
     public static List<NotificationPollManyResponse> getList(List<DeviceNotification> notifications) {
         List<NotificationPollManyResponse> result = new ArrayList<>(notifications.size());
         for (DeviceNotification notification : notifications) {
-            result.add(new NotificationPollManyResponse(notification, notification.getDevice().getGuid()));
+            result.add(new NotificationPollManyResponse(notification, notification.getDeviceGuid()));
         }
         return result;
     }
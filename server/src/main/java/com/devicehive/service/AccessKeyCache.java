@@ -0,0 +1,240 @@
+package com.devicehive.service;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.dao.AccessKeyDAO;
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.User;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+/**
+ * Near-cache of access keys used for authentication. Keys are stored with their permissions and owning user, every
+ * lookup returns a detached copy, so callers may narrow permissions of the key they got. Entry lives for configured
+ * time, but never past key expiration date. Changes of keys and of their owners are propagated to the whole cluster
+ * through Hazelcast topics.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class AccessKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessKeyCache.class);
+    private static final String KEY_INVALIDATION = "ACCESS_KEY_INVALIDATION";
+    private static final String USER_INVALIDATION = "ACCESS_KEY_USER_INVALIDATION";
+
+    @EJB
+    private HazelcastService hazelcastService;
+    @EJB
+    private ConfigurationService configurationService;
+    @EJB
+    private AccessKeyDAO accessKeyDAO;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private final ConcurrentMap<String, Entry> keys = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private long ttl;
+    private ITopic<Long> keyInvalidationTopic;
+    private ITopic<Long> userInvalidationTopic;
+    private String keyInvalidationListener;
+    private String userInvalidationListener;
+
+    @PostConstruct
+    protected void postConstruct() {
+        ttl = configurationService.getLong(Constants.ACCESS_KEY_CACHE_TTL, Constants.ACCESS_KEY_CACHE_TTL_DEFAULT);
+        HazelcastInstance hazelcast = hazelcastService.getHazelcast();
+        keyInvalidationTopic = hazelcast.getTopic(KEY_INVALIDATION);
+        userInvalidationTopic = hazelcast.getTopic(USER_INVALIDATION);
+        keyInvalidationListener = keyInvalidationTopic.addMessageListener(new MessageListener<Long>() {
+            @Override
+            public void onMessage(Message<Long> message) {
+                evictKey(message.getMessageObject());
+            }
+        });
+        userInvalidationListener = userInvalidationTopic.addMessageListener(new MessageListener<Long>() {
+            @Override
+            public void onMessage(Message<Long> message) {
+                evictUser(message.getMessageObject());
+            }
+        });
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        keyInvalidationTopic.removeMessageListener(keyInvalidationListener);
+        userInvalidationTopic.removeMessageListener(userInvalidationListener);
+    }
+
+    /**
+     * @param key access key
+     * @return copy of the access key with permissions and user, or null if there is no such key
+     */
+    public AccessKey get(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = keys.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            return copy(entry.accessKey);
+        }
+        long loadGeneration = generation.get();
+        AccessKey accessKey = accessKeyDAO.get(key);
+        if (accessKey == null) {
+            return null;
+        }
+        long expiresAt = now + ttl;
+        Timestamp expirationDate = accessKey.getExpirationDate();
+        if (expirationDate != null && expirationDate.getTime() < expiresAt) {
+            expiresAt = expirationDate.getTime();
+        }
+        AccessKey materialized = copy(accessKey);
+        // do not store key if keys were changed while it was loaded
+        if (expiresAt > now && loadGeneration == generation.get()) {
+            keys.put(key, new Entry(materialized, expiresAt));
+        }
+        return copy(materialized);
+    }
+
+    /**
+     * Drops the key on all cluster nodes. Should be called after the key or its permissions are changed or removed. If
+     * called in a transaction, the key is dropped when the transaction completes, so concurrent lookup can not load
+     * and keep the old row.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void invalidateKey(final long keyId) {
+        afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictKey(keyId);
+                keyInvalidationTopic.publish(keyId);
+            }
+        });
+    }
+
+    /**
+     * Drops keys of the user on all cluster nodes. Should be called after role or status of the user is changed or the
+     * user is removed. If called in a transaction, keys are dropped when the transaction completes.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void invalidateUser(final long userId) {
+        afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictUser(userId);
+                userInvalidationTopic.publish(userId);
+            }
+        });
+    }
+
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> iter = keys.values().iterator(); iter.hasNext(); ) {
+            if (iter.next().expiresAt <= now) {
+                iter.remove();
+            }
+        }
+    }
+
+    private void afterCompletion(final Runnable invalidation) {
+        if (transactionSynchronizationRegistry.getTransactionKey() == null) {
+            invalidation.run();
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                invalidation.run();
+            }
+        });
+    }
+
+    private void evictKey(Long keyId) {
+        generation.incrementAndGet();
+        for (Iterator<Entry> iter = keys.values().iterator(); iter.hasNext(); ) {
+            if (iter.next().accessKey.getId().equals(keyId)) {
+                iter.remove();
+                logger.debug("Access key {} is evicted", keyId);
+            }
+        }
+    }
+
+    private void evictUser(Long userId) {
+        generation.incrementAndGet();
+        for (Iterator<Map.Entry<String, Entry>> iter = keys.entrySet().iterator(); iter.hasNext(); ) {
+            if (iter.next().getValue().accessKey.getUser().getId().equals(userId)) {
+                iter.remove();
+            }
+        }
+        logger.debug("Access keys of user {} are evicted", userId);
+    }
+
+    private static AccessKey copy(AccessKey source) {
+        AccessKey result = new AccessKey();
+        result.setId(source.getId());
+        result.setKey(source.getKey());
+        result.setLabel(source.getLabel());
+        result.setExpirationDate(source.getExpirationDate());
+        result.setEntityVersion(source.getEntityVersion());
+        result.setPermissions(source.getPermissions() == null
+                              ? null
+                              : new HashSet<AccessKeyPermission>(source.getPermissions()));
+        User user = source.getUser();
+        User userCopy = new User();
+        userCopy.setId(user.getId());
+        userCopy.setLogin(user.getLogin());
+        userCopy.setRole(user.getRole());
+        userCopy.setStatus(user.getStatus());
+        userCopy.setLastLogin(user.getLastLogin());
+        userCopy.setLoginAttempts(user.getLoginAttempts());
+        userCopy.setPasswordHash(user.getPasswordHash());
+        userCopy.setPasswordSalt(user.getPasswordSalt());
+        userCopy.setEntityVersion(user.getEntityVersion());
+        result.setUser(userCopy);
+        return result;
+    }
+
+    private static class Entry {
+
+        private final AccessKey accessKey;
+        private final long expiresAt;
+
+        private Entry(AccessKey accessKey, long expiresAt) {
+            this.accessKey = accessKey;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -47,6 +47,8 @@ public class AccessKeyService {
     private DeviceDAO deviceDAO;
     @EJB
     private AccessKeyService self;
+    @EJB
+    private AccessKeyCache accessKeyCache;
 
     public AccessKey create(@NotNull User user, @NotNull AccessKey accessKey) {
         if (accessKey.getLabel() == null) {
@@ -97,12 +99,13 @@ public class AccessKeyService {
                 permissionDAO.insert(current);
             }
         }
+        accessKeyCache.invalidateKey(keyId);
         return true;
     }
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public AccessKey authenticate(@NotNull String key) {
-        return accessKeyDAO.get(key);
+        return accessKeyCache.get(key);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -144,9 +147,7 @@ public class AccessKeyService {
         if (allowedNetworks.contains(null)) {
             return userService.hasAccessToNetwork(user, targetNetwork);
         }
-        user = userService.findUserWithNetworks(user.getId());
-        return allowedNetworks.contains(targetNetwork.getId()) &&
-               (user.isAdmin() || user.getNetworks().contains(targetNetwork));
+        return allowedNetworks.contains(targetNetwork.getId()) && userService.hasAccessToNetwork(user, targetNetwork);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -155,7 +156,7 @@ public class AccessKeyService {
         Set<String> allowedDevices = new HashSet<>();
         Set<Long> allowedNetworks = new HashSet<>();
 
-        User accessKeyUser = userService.findUserWithNetworks(accessKey.getUser().getId());
+        User accessKeyUser = accessKey.getUser();
         Set<AccessKeyPermission> toRemove = new HashSet<>();
 
         Device device = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceGuid);      //not good way
@@ -189,8 +190,8 @@ public class AccessKeyService {
                     allowedDevices.contains(device.getGuid()) && userService.hasAccessToDevice(accessKeyUser, device);
 
         hasAccess = hasAccess && allowedNetworks.contains(null) ?
-                    accessKeyUser.isAdmin() || accessKeyUser.getNetworks().contains(device.getNetwork()) :
-                    (accessKeyUser.isAdmin() || accessKeyUser.getNetworks().contains(device.getNetwork()))
+                    userService.hasAccessToDevice(accessKeyUser, device) :
+                    userService.hasAccessToDevice(accessKeyUser, device)
                     && allowedNetworks.contains(device.getNetwork().getId());
 
         return hasAccess;
@@ -241,6 +242,7 @@ public class AccessKeyService {
             current.setAccessKey(existing);
             permissionDAO.insert(current);
         }
+        accessKeyCache.invalidateKey(existing.getId());
         return existing;
     }
 
@@ -255,10 +257,11 @@ public class AccessKeyService {
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public boolean delete(Long userId, @NotNull Long keyId) {
-        if (userId == null) {
-            return accessKeyDAO.delete(keyId);
-        }
-        return accessKeyDAO.delete(userId, keyId);
+        boolean deleted = userId == null
+                          ? accessKeyDAO.delete(keyId)
+                          : accessKeyDAO.delete(userId, keyId);
+        accessKeyCache.invalidateKey(keyId);
+        return deleted;
     }
 
 
@@ -1,5 +1,6 @@
 package com.devicehive.service;
 
+import com.devicehive.configuration.ConfigurationService;
 import com.devicehive.configuration.Constants;
 import com.devicehive.dao.DeviceDAO;
 import com.devicehive.model.Device;
@@ -11,13 +12,24 @@ import com.hazelcast.core.IMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.EJB;
 import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 
@@ -28,12 +40,23 @@ import javax.ejb.TransactionAttributeType;
 @LogExecutionTime
 public class DeviceActivityService {
 
+    /**
+     * Devices seen active since the last flush. Activity is accumulated locally and written to the cluster map with
+     * one <code>putAll</code> per flush interval, so a device reported active many times within the interval costs one
+     * map entry update.
+     */
+    private final ConcurrentMap<Long, Boolean> pending = new ConcurrentHashMap<>();
+
     private static final Logger logger = LoggerFactory.getLogger(DeviceActivityService.class);
 
     @EJB
     private HazelcastService hazelcastService;
     @EJB
     private DeviceDAO deviceDAO;
+    @EJB
+    private ConfigurationService configurationService;
+    @Resource
+    private TimerService timerService;
 
     private HazelcastInstance hazelcast;
     private IMap<Long, Long> deviceTimestampMap;
@@ -42,10 +65,37 @@ public class DeviceActivityService {
     public void postConstruct() {
         hazelcast = hazelcastService.getHazelcast();
         deviceTimestampMap = hazelcast.getMap(Constants.DEVICE_ACTIVITY_MAP);
+        long interval = configurationService.getLong(Constants.DEVICE_ACTIVITY_FLUSH_INTERVAL,
+                                                     Constants.DEVICE_ACTIVITY_FLUSH_INTERVAL_DEFAULT);
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        flush();
     }
 
     public void update(long deviceId) {
-        deviceTimestampMap.putAsync(deviceId, hazelcast.getCluster().getClusterTime());
+        pending.put(deviceId, Boolean.TRUE);
+    }
+
+    /**
+     * Writes accumulated activity to the cluster map.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Long now = hazelcast.getCluster().getClusterTime();
+        Map<Long, Long> batch = new HashMap<>();
+        for (Iterator<Long> iter = pending.keySet().iterator(); iter.hasNext(); ) {
+            batch.put(iter.next(), now);
+            iter.remove();
+        }
+        deviceTimestampMap.putAll(batch);
+        logger.debug("Activity of {} devices is flushed", batch.size());
     }
 
     @Schedule(hour = "*", minute = "*/5", persistent = false)
@@ -11,9 +11,12 @@ import com.devicehive.model.updates.DeviceClassUpdate;
 import com.devicehive.util.HiveValidator;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -101,6 +104,24 @@ public class DeviceClassService {
         }
     }
 
+    /**
+     * Creates or updates device classes of a device batch in a transaction of its own, so locks of updated device
+     * classes are released before the devices are saved. Device classes are handled in the order of their keys, so
+     * concurrent batches lock them in the same order.
+     *
+     * @param deviceClasses device class updates by key
+     * @return device class ids by the same keys
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Map<String, Long> createOrUpdateDeviceClasses(
+        SortedMap<String, NullableWrapper<DeviceClassUpdate>> deviceClasses) {
+        Map<String, Long> ids = new HashMap<>();
+        for (Map.Entry<String, NullableWrapper<DeviceClassUpdate>> entry : deviceClasses.entrySet()) {
+            ids.put(entry.getKey(), createOrUpdateDeviceClass(entry.getValue(), null).getId());
+        }
+        return ids;
+    }
+
     public DeviceClass addDeviceClass(DeviceClass deviceClass) {
         if (deviceClass.getId() != null) {
             throw new HiveException(Messages.ID_NOT_ALLOWED, BAD_REQUEST.getStatusCode());
@@ -8,6 +8,7 @@ import com.devicehive.messages.bus.Create;
 import com.devicehive.messages.bus.GlobalMessage;
 import com.devicehive.messages.bus.LocalMessage;
 import com.devicehive.messages.bus.Update;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.User;
@@ -42,6 +43,8 @@ public class DeviceCommandService {
     private TimestampService timestampService;
     @EJB
     private HiveValidator hiveValidator;
+    @EJB
+    private UserNetworkCache userNetworkCache;
 
     @Inject
     @Create
@@ -81,18 +84,20 @@ public class DeviceCommandService {
         if (devices != null) {
             return commandDAO
                 .findCommands(deviceService.findByGuidWithPermissionsCheck(devices, principal), names, timestamp,
-                              null);
+                              null, null);
         } else {
-            return commandDAO.findCommands(null, names, timestamp, principal);
+            return commandDAO.findCommands(null, names, timestamp, principal,
+                                           userNetworkCache.getNetworkIds(principal));
         }
     }
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public List<DeviceCommand> queryDeviceCommand(Device device, Timestamp start, Timestamp end, String command,
                                                   String status, String sortField, Boolean sortOrderAsc,
-                                                  Integer take, Integer skip, Integer gridInterval) {
+                                                  Integer take, Integer skip, Integer gridInterval,
+                                                  ContinuationToken continuation) {
         return commandDAO.queryDeviceCommand(device, start, end, command, status, sortField, sortOrderAsc, take,
-                                             skip, gridInterval);
+                                             skip, gridInterval, continuation);
     }
 
     public DeviceCommand getByDeviceGuidAndId(@NotNull String guid, @NotNull long id) {
@@ -106,11 +111,24 @@ public class DeviceCommandService {
     }
 
     public void submitDeviceCommand(DeviceCommand command, Device device, User user) {
+        submitDeviceCommand(command, device, user, null);
+    }
+
+    /**
+     * Creates the command. The command is published once the transaction commits.
+     *
+     * @param beforeCommit run when the command has got its id but is not committed yet, so nobody can update the
+     *                     command before it completes, e.g. subscription for the command updates can not miss any
+     */
+    public void submitDeviceCommand(DeviceCommand command, Device device, User user, Runnable beforeCommit) {
         command.setDevice(device);
         command.setUser(user);
         command.setUserId(user.getId());
         command.setTimestamp(timestampService.getTimestamp());
         commandDAO.createCommand(command);
+        if (beforeCommit != null) {
+            beforeCommit.run();
+        }
         commandEventGlobal.fire(command);
         commandEventLocal.fire(command);
     }
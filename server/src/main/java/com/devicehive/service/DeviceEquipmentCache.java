@@ -0,0 +1,277 @@
+package com.devicehive.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.dao.DeviceEquipmentDAO;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceEquipment;
+import com.devicehive.util.HiveValidator;
+import com.devicehive.util.LogExecutionTime;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+/**
+ * Keeps last known equipment state of devices, so equipment requests are served from memory and equipment
+ * notifications do not touch device_equipment table in the ingest transaction. States of a device are loaded on first
+ * use. Updates are written through to the database once per flush interval, several updates of the same device and
+ * code within the interval cost one update or insert. States that fail to be written are kept for the next flush. After
+ * a flush other cluster nodes drop their copies of the flushed devices through Hazelcast topic, so they may serve a
+ * state older than one flush interval. Updates not flushed yet are lost if the node crashes.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@LogExecutionTime
+public class DeviceEquipmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEquipmentCache.class);
+    private static final String DEVICE_EQUIPMENT_INVALIDATION = "DEVICE_EQUIPMENT_INVALIDATION";
+
+    @EJB
+    private HazelcastService hazelcastService;
+    @EJB
+    private DeviceEquipmentDAO deviceEquipmentDAO;
+    @EJB
+    private ConfigurationService configurationService;
+    @EJB
+    private HiveValidator hiveValidator;
+    @Resource
+    private TimerService timerService;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    /**
+     * Equipment states by device id and code.
+     */
+    private Cache<Long, ConcurrentMap<String, DeviceEquipment>> states;
+    /**
+     * States to be written on the next flush by device id and code, only the latest state of each code is kept.
+     */
+    private final ConcurrentMap<String, DeviceEquipment> pending = new ConcurrentHashMap<>();
+    /**
+     * States being written by the current flush, by device id and code.
+     */
+    private final ConcurrentMap<String, DeviceEquipment> flushing = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private HazelcastInstance hazelcast;
+    private ITopic<ArrayList<Long>> invalidationTopic;
+    private String invalidationListener;
+
+    @PostConstruct
+    protected void postConstruct() {
+        states = CacheBuilder.newBuilder()
+            .maximumSize(Constants.DEVICE_EQUIPMENT_CACHE_MAX_DEVICES)
+            .build();
+        hazelcast = hazelcastService.getHazelcast();
+        invalidationTopic = hazelcast.getTopic(DEVICE_EQUIPMENT_INVALIDATION);
+        invalidationListener = invalidationTopic.addMessageListener(new MessageListener<ArrayList<Long>>() {
+            @Override
+            public void onMessage(Message<ArrayList<Long>> message) {
+                if (!hazelcast.getCluster().getLocalMember().equals(message.getPublishingMember())) {
+                    evict(message.getMessageObject());
+                }
+            }
+        });
+        long interval = configurationService.getLong(Constants.DEVICE_EQUIPMENT_FLUSH_INTERVAL,
+                                                     Constants.DEVICE_EQUIPMENT_FLUSH_INTERVAL_DEFAULT);
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        invalidationTopic.removeMessageListener(invalidationListener);
+        flush();
+    }
+
+    /**
+     * @return last known states of all equipment of the device
+     */
+    public List<DeviceEquipment> getEquipment(Device device) {
+        return new ArrayList<>(getStates(device).values());
+    }
+
+    /**
+     * @return last known state of the device equipment, null if it was never reported
+     */
+    public DeviceEquipment getEquipment(Device device, String code) {
+        return getStates(device).get(code);
+    }
+
+    /**
+     * Remembers equipment state and schedules it for writing. Server time is used if the state has no timestamp. The
+     * state is validated here, as flush is too late to report an error to the device. If called in a transaction, the
+     * state is applied only after the transaction commits, so rolled back notification leaves no trace.
+     *
+     * @param equipment equipment state with device set
+     */
+    public void update(final DeviceEquipment equipment) {
+        if (equipment.getTimestamp() == null) {
+            equipment.setTimestamp(new Timestamp(hazelcast.getCluster().getClusterTime()));
+        }
+        hiveValidator.validate(equipment);
+        // states are loaded now, the database should not be read after completion
+        getStates(equipment.getDevice());
+        if (transactionSynchronizationRegistry.getTransactionKey() == null) {
+            apply(equipment);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    apply(equipment);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes pending states to the database.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<DeviceEquipment> batch = new ArrayList<>();
+        for (Map.Entry<String, DeviceEquipment> entry : pending.entrySet()) {
+            // state is visible to loads until it is written
+            flushing.put(entry.getKey(), entry.getValue());
+            // newer state put after this one stays for the next flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.add(entry.getValue());
+            } else {
+                flushing.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        ArrayList<Long> deviceIds = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (DeviceEquipment equipment : batch) {
+            if (seen.add(equipment.getDevice().getId())) {
+                deviceIds.add(equipment.getDevice().getId());
+            }
+        }
+        try {
+            deviceEquipmentDAO.saveStates(batch);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to save {} equipment states, they are kept for the next flush", batch.size(), e);
+            for (DeviceEquipment equipment : batch) {
+                String key = getKey(equipment);
+                // newer state put meanwhile wins
+                pending.putIfAbsent(key, equipment);
+                flushing.remove(key, equipment);
+            }
+            return;
+        }
+        for (DeviceEquipment equipment : batch) {
+            flushing.remove(getKey(equipment), equipment);
+        }
+        invalidationTopic.publish(deviceIds);
+        logger.debug("{} equipment states of {} devices are flushed", batch.size(), deviceIds.size());
+    }
+
+    /**
+     * States of the device evicted meanwhile are not reloaded, the next read gets this state from pending ones.
+     */
+    private void apply(DeviceEquipment equipment) {
+        pending.put(getKey(equipment), equipment);
+        ConcurrentMap<String, DeviceEquipment> deviceStates = states.getIfPresent(equipment.getDevice().getId());
+        if (deviceStates != null) {
+            deviceStates.put(equipment.getCode(), equipment);
+        }
+    }
+
+    private ConcurrentMap<String, DeviceEquipment> getStates(Device device) {
+        ConcurrentMap<String, DeviceEquipment> deviceStates = states.getIfPresent(device.getId());
+        if (deviceStates != null) {
+            return deviceStates;
+        }
+        long loadGeneration = generation.get();
+        deviceStates = new ConcurrentHashMap<>();
+        for (DeviceEquipment equipment : deviceEquipmentDAO.findByFK(device)) {
+            deviceStates.put(equipment.getCode(), equipment);
+        }
+        // do not store states if they were invalidated while being loaded
+        if (loadGeneration == generation.get()) {
+            ConcurrentMap<String, DeviceEquipment> existing = states.asMap().putIfAbsent(device.getId(), deviceStates);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        // states not written yet are newer than stored ones unless another node has written a newer state, they are
+        // read after the states are cached, so a state applied meanwhile gets either here or into the cached states
+        String prefix = device.getId() + "/";
+        overlay(deviceStates, flushing, prefix);
+        overlay(deviceStates, pending, prefix);
+        return deviceStates;
+    }
+
+    private static void overlay(ConcurrentMap<String, DeviceEquipment> deviceStates,
+                                ConcurrentMap<String, DeviceEquipment> unwritten, String prefix) {
+        for (Map.Entry<String, DeviceEquipment> entry : unwritten.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                DeviceEquipment equipment = entry.getValue();
+                DeviceEquipment stored = deviceStates.get(equipment.getCode());
+                while (stored == null || !stored.getTimestamp().after(equipment.getTimestamp())) {
+                    if (stored == null
+                        ? deviceStates.putIfAbsent(equipment.getCode(), equipment) == null
+                        : deviceStates.replace(equipment.getCode(), stored, equipment)) {
+                        break;
+                    }
+                    stored = deviceStates.get(equipment.getCode());
+                }
+            }
+        }
+    }
+
+    private static String getKey(DeviceEquipment equipment) {
+        return equipment.getDevice().getId() + "/" + equipment.getCode();
+    }
+
+    private void evict(List<Long> deviceIds) {
+        generation.incrementAndGet();
+        states.invalidateAll(deviceIds);
+        logger.debug("Equipment states of {} devices are evicted", deviceIds.size());
+    }
+}
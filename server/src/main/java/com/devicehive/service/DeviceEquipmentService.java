@@ -1,6 +1,5 @@
 package com.devicehive.service;
 
-import com.devicehive.dao.DeviceEquipmentDAO;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceEquipment;
 import com.devicehive.model.DeviceNotification;
@@ -20,9 +19,7 @@ import javax.validation.constraints.NotNull;
 public class DeviceEquipmentService {
 
     @EJB
-    private DeviceEquipmentDAO deviceEquipmentDAO;
-    @EJB
-    private TimestampService timestampService;
+    private DeviceEquipmentCache deviceEquipmentCache;
 
 
     /**
@@ -33,31 +30,25 @@ public class DeviceEquipmentService {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<DeviceEquipment> findByFK(@NotNull Device device) {
-        return deviceEquipmentDAO.findByFK(device);
+        return deviceEquipmentCache.getEquipment(device);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public DeviceEquipment findByCodeAndDevice(@NotNull String code, @NotNull Device device) {
-        return deviceEquipmentDAO.findByCodeAndDevice(code, device);
-    }
-
-    public void createDeviceEquipment(DeviceEquipment deviceEquipment) {
-        if (deviceEquipment != null && !deviceEquipmentDAO.update(deviceEquipment)) {
-            deviceEquipment.setTimestamp(timestampService.getTimestamp());
-            deviceEquipmentDAO.createDeviceEquipment(deviceEquipment);
-        }
+        return deviceEquipmentCache.getEquipment(device, code);
     }
 
+    /**
+     * Remembers equipment state reported by equipment notification, the state is written to the database later by
+     * {@link DeviceEquipmentCache}.
+     */
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public DeviceNotification refreshDeviceEquipment(DeviceNotification notification, Device device) {
-        DeviceEquipment deviceEquipment = null;
         if (notification.getNotification().equals(SpecialNotifications.EQUIPMENT)) {
-            deviceEquipment = ServerResponsesFactory.parseDeviceEquipmentNotification(notification, device);
-            if (deviceEquipment.getTimestamp() == null) {
-                deviceEquipment.setTimestamp(timestampService.getTimestamp());
-            }
+            DeviceEquipment deviceEquipment =
+                ServerResponsesFactory.parseDeviceEquipmentNotification(notification, device);
+            deviceEquipmentCache.update(deviceEquipment);
         }
-        createDeviceEquipment(deviceEquipment);
         return notification;
     }
 }
@@ -1,6 +1,7 @@
 package com.devicehive.service;
 
 import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
 import com.devicehive.dao.DeviceDAO;
 import com.devicehive.dao.DeviceNotificationDAO;
@@ -8,14 +9,19 @@ import com.devicehive.exceptions.HiveException;
 import com.devicehive.messages.bus.Create;
 import com.devicehive.messages.bus.GlobalMessage;
 import com.devicehive.messages.bus.LocalMessage;
+import com.devicehive.model.ContinuationToken;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.SpecialNotifications;
+import com.devicehive.model.response.NotificationAggregateResponse;
+import com.devicehive.util.AggregateFunction;
+import com.devicehive.util.ExportFormat;
 import com.devicehive.util.LogExecutionTime;
 import com.devicehive.util.ServerResponsesFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.Writer;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -24,6 +30,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.ejb.EJB;
+import javax.ejb.Schedule;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -46,6 +53,8 @@ public class DeviceNotificationService {
     private DeviceDAO deviceDAO;
     @EJB
     private DeviceService deviceService;
+    @EJB
+    private UserNetworkCache userNetworkCache;
 
     @Inject
     @Create
@@ -78,9 +87,10 @@ public class DeviceNotificationService {
                 String message = String.format(Messages.DEVICES_NOT_FOUND, StringUtils.join(notAllowedDeviceIds, ","));
                 throw new HiveException(message, Response.Status.NOT_FOUND.getStatusCode());
             }
-            return deviceNotificationDAO.findNotifications(availableDevices, names, timestamp, null);
+            return deviceNotificationDAO.findNotifications(availableDevices, names, timestamp, null, null);
         } else {
-            return deviceNotificationDAO.findNotifications(null, names, timestamp, principal);
+            return deviceNotificationDAO.findNotifications(null, names, timestamp, principal,
+                                                           userNetworkCache.getNetworkIds(principal));
         }
     }
 
@@ -98,17 +108,38 @@ public class DeviceNotificationService {
                                                             Boolean sortOrderAsc,
                                                             Integer take,
                                                             Integer skip,
-                                                            Integer gridInterval) {
+                                                            Integer gridInterval,
+                                                            ContinuationToken continuation) {
         return deviceNotificationDAO
             .queryDeviceNotification(device, start, end, notification, sortField, sortOrderAsc, take, skip,
-                                     gridInterval);
+                                     gridInterval, continuation);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<NotificationAggregateResponse> aggregateDeviceNotification(Device device,
+                                                                          Timestamp start,
+                                                                          Timestamp end,
+                                                                          String notification,
+                                                                          List<String> path,
+                                                                          int gridInterval,
+                                                                          Set<AggregateFunction> functions,
+                                                                          int take) {
+        return deviceNotificationDAO
+            .aggregateDeviceNotification(device, start, end, notification, path, gridInterval, functions, take);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void exportDeviceNotification(Device device, Timestamp start, Timestamp end, String notification,
+                                         ExportFormat format, Writer writer) {
+        deviceNotificationDAO.exportDeviceNotification(device, start, end, notification, format, writer);
     }
 
     //device should be already set
 
     public List<DeviceNotification> saveDeviceNotification(List<DeviceNotification> notifications) {
+        Timestamp timestamp = timestampService.getTimestamp();
         for (DeviceNotification notification : notifications) {
-            notification.setTimestamp(timestampService.getTimestamp());
+            notification.setTimestamp(timestamp);
             deviceNotificationDAO.createNotification(notification);
         }
         return notifications;
@@ -148,5 +179,16 @@ public class DeviceNotificationService {
         return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_UPDATE);
     }
 
+    /**
+     * Rolls up notifications of closed buckets for grid queries, each node runs it and waits for the one holding the
+     * rollup state.
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void rollUpNotifications() {
+        deviceNotificationDAO.rollUpNotifications(Constants.NOTIFICATION_ROLLUP_DELAY,
+                                                  Constants.NOTIFICATION_ROLLUP_MAX_STEP);
+    }
+
 
 }
@@ -3,7 +3,9 @@ package com.devicehive.service;
 import com.devicehive.auth.CheckPermissionsHelper;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.auth.HiveRoles;
+import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
+import com.devicehive.dao.DeviceClassDAO;
 import com.devicehive.dao.DeviceDAO;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.messages.bus.Create;
@@ -15,8 +17,10 @@ import com.devicehive.model.DeviceClass;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.Equipment;
 import com.devicehive.model.Network;
+import com.devicehive.model.NullableWrapper;
 import com.devicehive.model.SpecialNotifications;
 import com.devicehive.model.User;
+import com.devicehive.model.updates.DeviceClassUpdate;
 import com.devicehive.model.updates.DeviceUpdate;
 import com.devicehive.util.HiveValidator;
 import com.devicehive.util.LogExecutionTime;
@@ -26,6 +30,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -33,8 +38,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -64,11 +73,17 @@ public class DeviceService {
     @EJB
     private DeviceClassService deviceClassService;
     @EJB
+    private DeviceClassDAO deviceClassDAO;
+    @EJB
     private DeviceActivityService deviceActivityService;
     @EJB
     private AccessKeyService accessKeyService;
     @EJB
     private HiveValidator hiveValidator;
+    @EJB
+    private UserNetworkCache userNetworkCache;
+    @Resource
+    private SessionContext sessionContext;
     @Inject
     @Create
     @LocalMessage
@@ -110,6 +125,144 @@ public class DeviceService {
         deviceActivityService.update(dn.getDevice().getId());
     }
 
+    /**
+     * Registers or updates devices in one transaction with the same checks as {@link #deviceSaveAndNotify}. Networks
+     * and device classes are resolved once per distinct value, the first device referencing a device class defines
+     * its fields and equipment. Device classes are written in a transaction of their own before the devices, so their
+     * locks are not held while the batch is saved, and they stay written if the batch fails. Existing devices are
+     * loaded with one query, device changes and notifications are written in JDBC batches. If any device fails, none
+     * of them is saved.
+     *
+     * @param devices device updates with guids, equipment of a device goes in its device class update
+     */
+    public void deviceSaveBatchAndNotify(List<DeviceUpdate> devices, HivePrincipal principal) {
+        logger.debug("Device batch: {} devices. Current role: {}.", devices.size(),
+                     principal == null ? null : principal.getRole());
+        if (devices.size() > Constants.DEVICE_BATCH_MAX_SIZE) {
+            throw new HiveException(String.format(Messages.DEVICE_BATCH_TOO_LARGE, Constants.DEVICE_BATCH_MAX_SIZE),
+                                    BAD_REQUEST.getStatusCode());
+        }
+        List<String> guids = new ArrayList<>(devices.size());
+        for (DeviceUpdate device : devices) {
+            validateDevice(device);
+            if (device.getGuid() == null || device.getGuid().getValue() == null) {
+                throw new HiveException(Messages.DEVICE_GUID_REQUIRED, BAD_REQUEST.getStatusCode());
+            }
+            guids.add(device.getGuid().getValue());
+        }
+        List<DeviceNotification> notifications;
+        try {
+            notifications = deviceSaveBatch(devices, guids, principal);
+        } catch (HiveException e) {
+            //application exception does not roll back the transaction by itself
+            sessionContext.setRollbackOnly();
+            throw e;
+        }
+        for (DeviceNotification dn : notifications) {
+            eventLocal.fire(dn);
+            eventGlobal.fire(dn);
+            deviceActivityService.update(dn.getDevice().getId());
+        }
+    }
+
+    private List<DeviceNotification> deviceSaveBatch(List<DeviceUpdate> devices, List<String> guids,
+                                                     HivePrincipal principal) {
+        String role = principal != null && principal.isAuthenticated() ? principal.getRole() : null;
+        Map<String, Device> existingDevices = new HashMap<>();
+        for (Device device : deviceDAO.findByUUIDsWithNetworkAndDeviceClass(guids)) {
+            existingDevices.put(device.getGuid(), device);
+        }
+        Map<String, Network> networks = new HashMap<>();
+        List<Network> deviceNetworks = new ArrayList<>(devices.size());
+        SortedMap<String, NullableWrapper<DeviceClassUpdate>> deviceClassUpdates = new TreeMap<>();
+        List<String> deviceClassKeys = new ArrayList<>(devices.size());
+        for (DeviceUpdate deviceUpdate : devices) {
+            Device existingDevice = existingDevices.get(deviceUpdate.getGuid().getValue());
+            if (HiveRoles.DEVICE.equals(role)) {
+                checkUpdateByDevice(deviceUpdate, principal.getDevice());
+            } else if (HiveRoles.KEY.equals(role)) {
+                checkKeyAccessToNetwork(deviceUpdate, existingDevice, principal.getKey());
+            }
+            deviceNetworks.add(resolveNetwork(networks, deviceUpdate.getNetwork(), role, principal));
+            deviceClassKeys.add(getDeviceClassKey(deviceClassUpdates, deviceUpdate.getDeviceClass()));
+        }
+        Map<String, DeviceClass> deviceClasses = new HashMap<>();
+        if (!deviceClassUpdates.isEmpty()) {
+            Map<String, Long> ids = deviceClassService.createOrUpdateDeviceClasses(deviceClassUpdates);
+            for (Map.Entry<String, Long> entry : ids.entrySet()) {
+                deviceClasses.put(entry.getKey(), deviceClassDAO.getDeviceClass(entry.getValue()));
+            }
+        }
+        List<DeviceNotification> notifications = new ArrayList<>(devices.size());
+        for (int i = 0; i < devices.size(); i++) {
+            DeviceUpdate deviceUpdate = devices.get(i);
+            String guid = deviceUpdate.getGuid().getValue();
+            Device existingDevice = existingDevices.get(guid);
+            Network network = deviceNetworks.get(i);
+            DeviceClass deviceClass = deviceClassKeys.get(i) != null ? deviceClasses.get(deviceClassKeys.get(i)) : null;
+            DeviceNotification dn;
+            if (HiveRoles.ADMIN.equals(role) || HiveRoles.CLIENT.equals(role)) {
+                dn = saveByUser(deviceUpdate, existingDevice, network, deviceClass, principal.getUser());
+            } else if (HiveRoles.DEVICE.equals(role)) {
+                dn = updateByDevice(deviceUpdate, existingDevice, network, deviceClass);
+            } else if (HiveRoles.KEY.equals(role)) {
+                dn = saveByKey(deviceUpdate, existingDevice, network, deviceClass, principal.getKey());
+            } else {
+                dn = save(deviceUpdate, existingDevice, network, deviceClass);
+            }
+            //the same device may come twice
+            existingDevices.put(guid, dn.getDevice());
+            notifications.add(dn);
+        }
+        return deviceNotificationService.saveDeviceNotification(notifications);
+    }
+
+    private Network resolveNetwork(Map<String, Network> networks, NullableWrapper<Network> network, String role,
+                                   HivePrincipal principal) {
+        if (network == null || network.getValue() == null) {
+            return null;
+        }
+        Network value = network.getValue();
+        String networkKey = value.getId() + "/" + value.getName() + "/" + value.getKey();
+        if (networks.containsKey(networkKey)) {
+            return networks.get(networkKey);
+        }
+        Network resolved;
+        if (HiveRoles.ADMIN.equals(role) || HiveRoles.CLIENT.equals(role)) {
+            resolved = networkService.createOrUpdateNetworkByUser(network, principal.getUser());
+        } else if (HiveRoles.KEY.equals(role)) {
+            resolved = networkService.createOrVeriryNetworkByKey(network, principal.getKey());
+        } else {
+            resolved = networkService.createOrVeriryNetwork(network);
+        }
+        networks.put(networkKey, resolved);
+        return resolved;
+    }
+
+    /**
+     * Collects device class update, the first update of each device class is kept.
+     *
+     * @return key of the device class or null if the device keeps its device class
+     */
+    private String getDeviceClassKey(SortedMap<String, NullableWrapper<DeviceClassUpdate>> deviceClassUpdates,
+                                     NullableWrapper<DeviceClassUpdate> deviceClass) {
+        if (deviceClass == null) {
+            return null;
+        }
+        if (deviceClass.getValue() == null) {
+            throw new HiveException(Messages.EMPTY_DEVICE_CLASS, BAD_REQUEST.getStatusCode());
+        }
+        hiveValidator.validate(deviceClass.getValue());
+        DeviceClass value = deviceClass.getValue().convertTo();
+        String deviceClassKey = value.getId() != null
+                                ? value.getId().toString()
+                                : value.getName() + "/" + value.getVersion();
+        if (!deviceClassUpdates.containsKey(deviceClassKey)) {
+            deviceClassUpdates.put(deviceClassKey, deviceClass);
+        }
+        return deviceClassKey;
+    }
+
     public DeviceNotification deviceSaveByUser(DeviceUpdate deviceUpdate,
                                                Set<Equipment> equipmentSet,
                                                User user) {
@@ -118,6 +271,11 @@ public class DeviceService {
         DeviceClass deviceClass = deviceClassService
             .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
         Device existingDevice = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceUpdate.getGuid().getValue());
+        return saveNotification(saveByUser(deviceUpdate, existingDevice, network, deviceClass, user));
+    }
+
+    private DeviceNotification saveByUser(DeviceUpdate deviceUpdate, Device existingDevice, Network network,
+                                          DeviceClass deviceClass, User user) {
         if (existingDevice == null) {
             Device device = deviceUpdate.convertTo();
             if (deviceClass != null) {
@@ -127,11 +285,7 @@ public class DeviceService {
                 device.setNetwork(network);
             }
             existingDevice = deviceDAO.createDevice(device);
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice, SpecialNotifications.DEVICE_ADD);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_ADD);
         } else {
             if (!userService.hasAccessToDevice(user, existingDevice)) {
                 throw new HiveException(Messages.UNAUTHORIZED_REASON_PHRASE, UNAUTHORIZED.getStatusCode());
@@ -154,12 +308,8 @@ public class DeviceService {
             if (deviceUpdate.getKey() != null) {
                 existingDevice.setKey(deviceUpdate.getKey().getValue());
             }
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice,
-                 SpecialNotifications.DEVICE_UPDATE);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice,
+                                                                      SpecialNotifications.DEVICE_UPDATE);
         }
     }
 
@@ -168,24 +318,29 @@ public class DeviceService {
                                               AccessKey key) {
         logger.debug("Device save executed for device: id {}, user: {}", deviceUpdate.getGuid(), key.getKey());
         Device existingDevice = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceUpdate.getGuid().getValue());
+        checkKeyAccessToNetwork(deviceUpdate, existingDevice, key);
+        Network network = networkService.createOrVeriryNetworkByKey(deviceUpdate.getNetwork(), key);
+        DeviceClass deviceClass = deviceClassService
+            .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
+        return saveNotification(saveByKey(deviceUpdate, existingDevice, network, deviceClass, key));
+    }
+
+    private void checkKeyAccessToNetwork(DeviceUpdate deviceUpdate, Device existingDevice, AccessKey key) {
         if (existingDevice != null && !accessKeyService.hasAccessToNetwork(key, existingDevice.getNetwork())) {
             throw new HiveException(
                 String.format(Messages.DEVICE_NOT_FOUND, deviceUpdate.getGuid().getValue()),
                 UNAUTHORIZED.getStatusCode());
         }
-        Network network = networkService.createOrVeriryNetworkByKey(deviceUpdate.getNetwork(), key);
-        DeviceClass deviceClass = deviceClassService
-            .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
+    }
+
+    private DeviceNotification saveByKey(DeviceUpdate deviceUpdate, Device existingDevice, Network network,
+                                         DeviceClass deviceClass, AccessKey key) {
         if (existingDevice == null) {
             Device device = deviceUpdate.convertTo();
             device.setDeviceClass(deviceClass);
             device.setNetwork(network);
             existingDevice = deviceDAO.createDevice(device);
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice, SpecialNotifications.DEVICE_ADD);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_ADD);
         } else {
             if (!accessKeyService.hasAccessToDevice(key, deviceUpdate.getGuid().getValue())) {
                 throw new HiveException(
@@ -210,11 +365,8 @@ public class DeviceService {
             if (deviceUpdate.getKey() != null) {
                 existingDevice.setKey(deviceUpdate.getKey().getValue());
             }
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice, SpecialNotifications.DEVICE_UPDATE);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice,
+                                                                      SpecialNotifications.DEVICE_UPDATE);
         }
     }
 
@@ -223,6 +375,15 @@ public class DeviceService {
                                                    Device device) {
         logger.debug("Device update executed for device update: id {}, device: {}", deviceUpdate.getGuid(),
                      device.getId());
+        checkUpdateByDevice(deviceUpdate, device);
+        DeviceClass deviceClass = deviceClassService
+            .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
+        Device existingDevice = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceUpdate.getGuid().getValue());
+        Network network = networkService.createOrVeriryNetwork(deviceUpdate.getNetwork());
+        return saveNotification(updateByDevice(deviceUpdate, existingDevice, network, deviceClass));
+    }
+
+    private void checkUpdateByDevice(DeviceUpdate deviceUpdate, Device device) {
         if (deviceUpdate.getGuid() == null) {
             throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, BAD_REQUEST.getStatusCode());
         }
@@ -233,14 +394,14 @@ public class DeviceService {
         if (deviceUpdate.getKey() != null && !device.getKey().equals(deviceUpdate.getKey().getValue())) {
             throw new HiveException(Messages.INCORRECT_CREDENTIALS, UNAUTHORIZED.getStatusCode());
         }
-        DeviceClass deviceClass = deviceClassService
-            .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
-        Device existingDevice = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceUpdate.getGuid().getValue());
+    }
+
+    private DeviceNotification updateByDevice(DeviceUpdate deviceUpdate, Device existingDevice, Network network,
+                                              DeviceClass deviceClass) {
         if (deviceUpdate.getDeviceClass() != null && !existingDevice.getDeviceClass().getPermanent()) {
             existingDevice.setDeviceClass(deviceClass);
         }
         if (deviceUpdate.getNetwork() != null) {
-            Network network = networkService.createOrVeriryNetwork(deviceUpdate.getNetwork());
             existingDevice.setNetwork(network);
         }
         if (deviceUpdate.getStatus() != null) {
@@ -255,12 +416,7 @@ public class DeviceService {
         if (deviceUpdate.getKey() != null) {
             existingDevice.setKey(deviceUpdate.getKey().getValue());
         }
-        final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-            (existingDevice,
-             SpecialNotifications.DEVICE_UPDATE);
-        List<DeviceNotification> resultList =
-            deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-        return resultList.get(0);
+        return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_UPDATE);
     }
 
     public DeviceNotification deviceSave(DeviceUpdate deviceUpdate,
@@ -270,7 +426,11 @@ public class DeviceService {
         DeviceClass deviceClass = deviceClassService
             .createOrUpdateDeviceClass(deviceUpdate.getDeviceClass(), equipmentSet);
         Device existingDevice = deviceDAO.findByUUIDWithNetworkAndDeviceClass(deviceUpdate.getGuid().getValue());
+        return saveNotification(save(deviceUpdate, existingDevice, network, deviceClass));
+    }
 
+    private DeviceNotification save(DeviceUpdate deviceUpdate, Device existingDevice, Network network,
+                                    DeviceClass deviceClass) {
         if (existingDevice == null) {
             Device device = deviceUpdate.convertTo();
             if (deviceClass != null) {
@@ -280,12 +440,7 @@ public class DeviceService {
                 device.setNetwork(network);
             }
             existingDevice = deviceDAO.createDevice(device);
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice,
-                 SpecialNotifications.DEVICE_ADD);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_ADD);
         } else {
             if (deviceUpdate.getKey() == null || !existingDevice.getKey().equals(deviceUpdate.getKey().getValue())) {
                 throw new HiveException(Messages.INCORRECT_CREDENTIALS, UNAUTHORIZED.getStatusCode());
@@ -302,15 +457,17 @@ public class DeviceService {
             if (deviceUpdate.getNetwork() != null) {
                 existingDevice.setNetwork(network);
             }
-            final DeviceNotification addDeviceNotification = ServerResponsesFactory.createNotificationForDevice
-                (existingDevice,
-                 SpecialNotifications.DEVICE_UPDATE);
-            List<DeviceNotification> resultList =
-                deviceNotificationService.saveDeviceNotification(Arrays.asList(addDeviceNotification));
-            return resultList.get(0);
+            return ServerResponsesFactory.createNotificationForDevice(existingDevice,
+                                                                      SpecialNotifications.DEVICE_UPDATE);
         }
     }
 
+    private DeviceNotification saveNotification(DeviceNotification notification) {
+        List<DeviceNotification> resultList =
+            deviceNotificationService.saveDeviceNotification(Arrays.asList(notification));
+        return resultList.get(0);
+    }
+
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public Device findByGuidWithPermissionsCheck(String guid, HivePrincipal principal) {
         List<Device> result = findByGuidWithPermissionsCheck(Arrays.asList(guid), principal);
@@ -319,7 +476,7 @@ public class DeviceService {
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<Device> findByGuidWithPermissionsCheck(Collection<String> guids, HivePrincipal principal) {
-        return deviceDAO.getDeviceList(principal, guids);
+        return deviceDAO.getDeviceList(principal, userNetworkCache.getNetworkIds(principal), guids);
     }
 
     /**
@@ -330,16 +487,16 @@ public class DeviceService {
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void validateDevice(DeviceUpdate device) throws HiveException {
         if (device == null) {
-            throw new HiveException(Messages.EMPTY_DEVICE);
+            throw new HiveException(Messages.EMPTY_DEVICE, BAD_REQUEST.getStatusCode());
         }
         if (device.getName() != null && device.getName() == null) {
-            throw new HiveException(Messages.EMPTY_DEVICE_NAME);
+            throw new HiveException(Messages.EMPTY_DEVICE_NAME, BAD_REQUEST.getStatusCode());
         }
         if (device.getKey() != null && device.getKey() == null) {
-            throw new HiveException(Messages.EMPTY_DEVICE_KEY);
+            throw new HiveException(Messages.EMPTY_DEVICE_KEY, BAD_REQUEST.getStatusCode());
         }
         if (device.getDeviceClass() != null && device.getDeviceClass().getValue() == null) {
-            throw new HiveException(Messages.EMPTY_DEVICE_CLASS);
+            throw new HiveException(Messages.EMPTY_DEVICE_CLASS, BAD_REQUEST.getStatusCode());
         }
         hiveValidator.validate(device);
     }
@@ -369,7 +526,8 @@ public class DeviceService {
     }
 
     public boolean deleteDevice(@NotNull String guid, HivePrincipal principal) {
-        List<Device> existing = deviceDAO.getDeviceList(principal, Arrays.asList(guid));
+        List<Device> existing = deviceDAO.getDeviceList(principal, userNetworkCache.getNetworkIds(principal),
+                                                        Arrays.asList(guid));
         return existing.isEmpty() || deviceDAO.deleteDevice(guid);
     }
 
@@ -389,19 +547,21 @@ public class DeviceService {
                                 HivePrincipal principal) {
 
         return deviceDAO.getList(name, namePattern, status, networkId, networkName, deviceClassId, deviceClassName,
-            deviceClassVersion, sortField, sortOrderAsc, take, skip, principal);
+            deviceClassVersion, sortField, sortOrderAsc, take, skip, principal,
+            userNetworkCache.getNetworkIds(principal));
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<Device> getList(Long networkId,
                                 HivePrincipal principal) {
         return deviceDAO
-            .getList(null, null, null, networkId, null, null, null, null, null, null, null, null, principal);
+            .getList(null, null, null, networkId, null, null, null, null, null, null, null, null, principal,
+                     userNetworkCache.getNetworkIds(principal));
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public long getAllowedDevicesCount(HivePrincipal principal, List<String> guids) {
-        return deviceDAO.getNumberOfAvailableDevices(principal, guids);
+        return deviceDAO.getNumberOfAvailableDevices(principal, userNetworkCache.getNetworkIds(principal), guids);
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
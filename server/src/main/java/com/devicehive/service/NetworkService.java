@@ -52,13 +52,16 @@ public class NetworkService {
     private ConfigurationService configurationService;
     @EJB
     private HiveValidator hiveValidator;
+    @EJB
+    private UserNetworkCache userNetworkCache;
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public Network getWithDevicesAndDeviceClasses(@NotNull Long networkId,
                                                   @NotNull HiveSecurityContext hiveSecurityContext) {
         HivePrincipal principal = hiveSecurityContext.getHivePrincipal();
         if (principal.getUser() != null) {
-            List<Network> found = networkDAO.getNetworkList(principal.getUser(), null, Arrays.asList(networkId));
+            List<Network> found = networkDAO.getNetworkList(userNetworkCache.getNetworkIds(principal), null,
+                                                             Arrays.asList(networkId));
             if (found.isEmpty()) {
                 return null;
             }
@@ -68,8 +71,7 @@ public class NetworkService {
             return result;
         } else {
             AccessKey key = principal.getKey();
-            User user = userService.findUserWithNetworks(key.getUser().getId());
-            List<Network> found = networkDAO.getNetworkList(user,
+            List<Network> found = networkDAO.getNetworkList(userNetworkCache.getNetworkIds(principal),
                                                             key.getPermissions(),
                                                             Arrays.asList(networkId));
             Network result = found.isEmpty() ? null : found.get(0);
@@ -92,7 +94,9 @@ public class NetworkService {
     }
 
     public boolean delete(long id) {
-        return networkDAO.delete(id);
+        boolean deleted = networkDAO.delete(id);
+        userNetworkCache.invalidateAll();
+        return deleted;
     }
 
     public Network create(Network newNetwork) {
@@ -133,7 +137,8 @@ public class NetworkService {
                               Integer take,
                               Integer skip,
                               HivePrincipal principal) {
-        return networkDAO.list(name, namePattern, sortField, sortOrder, take, skip, principal);
+        return networkDAO.list(name, namePattern, sortField, sortOrder, take, skip, principal,
+                               userNetworkCache.getNetworkIds(principal));
     }
 
     @TransactionAttribute
@@ -0,0 +1,291 @@
+package com.devicehive.service;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.model.User;
+import com.devicehive.model.UserRole;
+import com.devicehive.model.UserStatus;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+/**
+ * Issues and verifies stateless signed tokens for REST clients. Token is <code>dh1.{payload}.{signature}</code>, where
+ * payload carries user id, role, issue and expiration time, token id and login, and signature is HMAC of the payload
+ * with the key shared by all cluster nodes through configuration. Verification needs no database access.
+ * <p/>
+ * Revoked tokens and users whose tokens were revoked are kept in Hazelcast maps until the tokens expire. Each node
+ * mirrors these maps locally, so revocation check is a local lookup too. All times are Hazelcast cluster time, so clock
+ * skew between nodes does not change token lifetime.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class RestTokenService {
+
+    public static final String TOKEN_PREFIX = "dh1.";
+
+    private static final Logger logger = LoggerFactory.getLogger(RestTokenService.class);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String REVOKED_TOKENS_MAP = "REST_TOKEN_REVOKED_TOKENS";
+    private static final String REVOKED_USERS_MAP = "REST_TOKEN_REVOKED_USERS";
+    private static final String SECRET_LOCK = "REST_TOKEN_SECRET_LOCK";
+    private static final Charset UTF8 = Charset.forName(Constants.UTF8);
+    private static final String SEPARATOR = ":";
+
+    @EJB
+    private HazelcastService hazelcastService;
+    @EJB
+    private ConfigurationService configurationService;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> revokedUsers = new ConcurrentHashMap<>();
+    private HazelcastInstance hazelcast;
+    private SecretKeySpec signingKey;
+    private long ttl;
+    private IMap<String, Long> revokedTokensMap;
+    private IMap<Long, Long> revokedUsersMap;
+    private String revokedTokensListener;
+    private String revokedUsersListener;
+
+    @PostConstruct
+    protected void postConstruct() {
+        hazelcast = hazelcastService.getHazelcast();
+        signingKey = new SecretKeySpec(Base64.decodeBase64(getSecret()), HMAC_ALGORITHM);
+        ttl = configurationService.getLong(Constants.REST_TOKEN_TTL, Constants.REST_TOKEN_TTL_DEFAULT);
+
+        revokedTokensMap = hazelcast.getMap(REVOKED_TOKENS_MAP);
+        revokedUsersMap = hazelcast.getMap(REVOKED_USERS_MAP);
+        revokedTokensListener = revokedTokensMap.addEntryListener(new MirrorListener<>(revokedTokens), true);
+        revokedUsersListener = revokedUsersMap.addEntryListener(new MirrorListener<>(revokedUsers), true);
+        revokedTokens.putAll(revokedTokensMap);
+        revokedUsers.putAll(revokedUsersMap);
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        revokedTokensMap.removeEntryListener(revokedTokensListener);
+        revokedUsersMap.removeEntryListener(revokedUsersListener);
+    }
+
+    public static boolean isToken(String value) {
+        return value != null && value.startsWith(TOKEN_PREFIX);
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Issues new token for the user.
+     */
+    public String issue(User user) {
+        long now = hazelcast.getCluster().getClusterTime();
+        byte[] tokenId = new byte[9];
+        secureRandom.nextBytes(tokenId);
+        String payload = user.getId() + SEPARATOR + user.getRole().getValue() + SEPARATOR + now + SEPARATOR
+                         + (now + ttl) + SEPARATOR + Base64.encodeBase64URLSafeString(tokenId) + SEPARATOR
+                         + user.getLogin();
+        String encodedPayload = Base64.encodeBase64URLSafeString(payload.getBytes(UTF8));
+        return TOKEN_PREFIX + encodedPayload + "." + Base64.encodeBase64URLSafeString(sign(encodedPayload));
+    }
+
+    /**
+     * Verifies token signature, expiration and revocation.
+     *
+     * @return detached user the token was issued to, carrying id, login and role only, or null if token is not valid
+     */
+    public User authenticate(String token) {
+        Token parsed = parse(token);
+        if (parsed == null) {
+            return null;
+        }
+        long now = hazelcast.getCluster().getClusterTime();
+        if (parsed.expiresAt < now || revokedTokens.containsKey(parsed.id)) {
+            return null;
+        }
+        Long revokedBefore = revokedUsers.get(parsed.userId);
+        if (revokedBefore != null && parsed.issuedAt <= revokedBefore) {
+            return null;
+        }
+        User user = new User();
+        user.setId(parsed.userId);
+        user.setLogin(parsed.login);
+        user.setRole(parsed.role);
+        user.setStatus(UserStatus.ACTIVE);
+        return user;
+    }
+
+    /**
+     * Revokes the token on all cluster nodes.
+     */
+    public void revoke(String token) {
+        Token parsed = parse(token);
+        if (parsed != null) {
+            long remaining = parsed.expiresAt - hazelcast.getCluster().getClusterTime();
+            if (remaining > 0) {
+                revokedTokens.put(parsed.id, parsed.expiresAt);
+                revokedTokensMap.put(parsed.id, parsed.expiresAt, remaining, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Revokes all tokens issued to the user so far on all cluster nodes. Should be called when password, role or
+     * status of the user is changed or the user is removed.
+     */
+    public void revokeUser(long userId) {
+        long now = hazelcast.getCluster().getClusterTime();
+        revokedUsers.put(userId, now);
+        revokedUsersMap.put(userId, now, ttl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads signing secret or generates it on the first start. Nodes starting together generate it under cluster lock,
+     * so all of them end up with the same secret.
+     */
+    private String getSecret() {
+        String secret = configurationService.get(Constants.REST_TOKEN_SECRET);
+        if (secret != null) {
+            return secret;
+        }
+        ILock lock = hazelcast.getLock(SECRET_LOCK);
+        lock.lock();
+        try {
+            secret = configurationService.get(Constants.REST_TOKEN_SECRET);
+            if (secret == null) {
+                byte[] secretBytes = new byte[32];
+                secureRandom.nextBytes(secretBytes);
+                secret = Base64.encodeBase64String(secretBytes);
+                configurationService.save(Constants.REST_TOKEN_SECRET, secret);
+                logger.info("REST token signing key generated");
+            }
+            return secret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Token parse(String token) {
+        if (!isToken(token)) {
+            return null;
+        }
+        int dot = token.indexOf('.', TOKEN_PREFIX.length());
+        if (dot < 0) {
+            return null;
+        }
+        String encodedPayload = token.substring(TOKEN_PREFIX.length(), dot);
+        byte[] signature = Base64.decodeBase64(token.substring(dot + 1));
+        if (!MessageDigest.isEqual(signature, sign(encodedPayload))) {
+            return null;
+        }
+        String[] fields = new String(Base64.decodeBase64(encodedPayload), UTF8).split(SEPARATOR, 6);
+        if (fields.length != 6) {
+            return null;
+        }
+        try {
+            Token parsed = new Token();
+            parsed.userId = Long.parseLong(fields[0]);
+            parsed.role = roleOf(Integer.parseInt(fields[1]));
+            parsed.issuedAt = Long.parseLong(fields[2]);
+            parsed.expiresAt = Long.parseLong(fields[3]);
+            parsed.id = fields[4];
+            parsed.login = fields[5];
+            return parsed.role != null ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static UserRole roleOf(int value) {
+        for (UserRole role : UserRole.values()) {
+            if (role.getValue() == value) {
+                return role;
+            }
+        }
+        return null;
+    }
+
+    private byte[] sign(String encodedPayload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            return mac.doFinal(encodedPayload.getBytes(UTF8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Token {
+
+        private long userId;
+        private UserRole role;
+        private long issuedAt;
+        private long expiresAt;
+        private String id;
+        private String login;
+    }
+
+    /**
+     * Keeps local copy of replicated map in sync, entries expired in the map are dropped locally as well.
+     */
+    private static class MirrorListener<K> implements EntryListener<K, Long> {
+
+        private final Map<K, Long> mirror;
+
+        private MirrorListener(Map<K, Long> mirror) {
+            this.mirror = mirror;
+        }
+
+        @Override
+        public void entryAdded(EntryEvent<K, Long> event) {
+            mirror.put(event.getKey(), event.getValue());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<K, Long> event) {
+            mirror.put(event.getKey(), event.getValue());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<K, Long> event) {
+            mirror.remove(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<K, Long> event) {
+            mirror.remove(event.getKey());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.devicehive.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Longs;
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.dao.UserDAO;
+import com.devicehive.model.User;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+/**
+ * Keeps ids of networks every user is assigned to, so access checks do not hit user_network table. Ids are stored as
+ * sorted primitive arrays. Changes of user_network on any node are propagated to the whole cluster through Hazelcast
+ * topic, each node drops its own copy and reloads it lazily. Number of cached users is bounded and entries expire after
+ * configured time, so missed invalidation does not last forever.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class UserNetworkCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserNetworkCache.class);
+    private static final String USER_NETWORK_INVALIDATION = "USER_NETWORK_INVALIDATION";
+
+    @EJB
+    private HazelcastService hazelcastService;
+    @EJB
+    private UserDAO userDAO;
+    @EJB
+    private ConfigurationService configurationService;
+
+    private Cache<Long, long[]> networkIds;
+    private final AtomicLong generation = new AtomicLong();
+    private ITopic<Long> invalidationTopic;
+    private String invalidationListener;
+
+    @PostConstruct
+    protected void postConstruct() {
+        long ttl = configurationService.getLong(Constants.USER_NETWORK_CACHE_TTL,
+                                                Constants.USER_NETWORK_CACHE_TTL_DEFAULT);
+        networkIds = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .maximumSize(Constants.USER_NETWORK_CACHE_MAX_SIZE)
+            .build();
+        HazelcastInstance hazelcast = hazelcastService.getHazelcast();
+        invalidationTopic = hazelcast.getTopic(USER_NETWORK_INVALIDATION);
+        invalidationListener = invalidationTopic.addMessageListener(new MessageListener<Long>() {
+            @Override
+            public void onMessage(Message<Long> message) {
+                evict(message.getMessageObject());
+            }
+        });
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        invalidationTopic.removeMessageListener(invalidationListener);
+    }
+
+    /**
+     * @param userId user id
+     * @return sorted ids of networks user is assigned to. Returned array must not be modified.
+     */
+    public long[] getNetworkIds(long userId) {
+        long[] ids = networkIds.getIfPresent(userId);
+        if (ids != null) {
+            return ids;
+        }
+        long loadGeneration = generation.get();
+        ids = Longs.toArray(userDAO.getNetworkIds(userId));
+        Arrays.sort(ids);
+        // do not store ids if user_network was changed while they were loaded
+        if (loadGeneration == generation.get()) {
+            networkIds.asMap().putIfAbsent(userId, ids);
+        }
+        return ids;
+    }
+
+    public boolean hasNetwork(long userId, long networkId) {
+        return Arrays.binarySearch(getNetworkIds(userId), networkId) >= 0;
+    }
+
+    /**
+     * Resolves networks the principal is restricted to by its user, to be passed to DAO queries.
+     *
+     * @param principal principal, may be null
+     * @return ids of networks of the principal's user or user of its access key, null if principal is not restricted
+     *         by user networks (no user or administrator)
+     */
+    public List<Long> getNetworkIds(HivePrincipal principal) {
+        if (principal == null) {
+            return null;
+        }
+        User user = principal.getUser();
+        if (user == null && principal.getKey() != null) {
+            user = principal.getKey().getUser();
+        }
+        if (user == null || user.isAdmin()) {
+            return null;
+        }
+        return Longs.asList(getNetworkIds(user.getId()));
+    }
+
+    /**
+     * Drops cached networks of the user on all cluster nodes. Should be called after user_network is changed.
+     *
+     * @param userId user id
+     */
+    public void invalidate(long userId) {
+        evict(userId);
+        invalidationTopic.publish(userId);
+    }
+
+    /**
+     * Drops whole cache on all cluster nodes, e.g. after network is removed.
+     */
+    public void invalidateAll() {
+        invalidate(Constants.NULL_ID_SUBSTITUTE);
+    }
+
+    private void evict(Long userId) {
+        generation.incrementAndGet();
+        if (userId == null || userId == Constants.NULL_ID_SUBSTITUTE) {
+            logger.debug("Networks of all users are evicted");
+            networkIds.invalidateAll();
+        } else {
+            logger.debug("Networks of user {} are evicted", userId);
+            networkIds.invalidate(userId);
+        }
+    }
+}
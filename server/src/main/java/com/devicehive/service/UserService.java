@@ -52,6 +52,14 @@ public class UserService {
     private ConfigurationService configurationService;
     @EJB
     private HiveValidator hiveValidator;
+    @EJB
+    private UserNetworkCache userNetworkCache;
+    @EJB
+    private VerifiedCredentialCache verifiedCredentialCache;
+    @EJB
+    private RestTokenService restTokenService;
+    @EJB
+    private AccessKeyCache accessKeyCache;
 
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
@@ -70,7 +78,8 @@ public class UserService {
 
         long loginTimeout = configurationService.getLong(Constants.LAST_LOGIN_TIMEOUT, Constants.LAST_LOGIN_TIMEOUT_DEFAULT);
 
-        if (passwordService.checkPassword(password, user.getPasswordSalt(), user.getPasswordHash())) {
+        if (verifiedCredentialCache.isVerified(login, password, user.getPasswordHash())
+            || checkPassword(login, password, user) && !passwordService.needsRehash(user.getPasswordHash())) {
             boolean willBeChanged = user.getLoginAttempts() != 0
                 || user.getLastLogin() == null
                 || System.currentTimeMillis() - user.getLastLogin().getTime() > loginTimeout;
@@ -83,10 +92,17 @@ public class UserService {
 
         em.refresh(user, LockModeType.PESSIMISTIC_WRITE);
         // repeat whole auth procedure on locked entity
-        if (passwordService.checkPassword(password, user.getPasswordSalt(), user.getPasswordHash())) {
+        if (verifiedCredentialCache.isVerified(login, password, user.getPasswordHash())
+            || checkPassword(login, password, user)) {
             if (user.getLoginAttempts() != 0) {
                 user.setLoginAttempts(0);
             }
+            if (passwordService.needsRehash(user.getPasswordHash())) {
+                String salt = passwordService.generateSalt();
+                user.setPasswordSalt(salt);
+                user.setPasswordHash(passwordService.hashPassword(password, salt));
+                verifiedCredentialCache.verified(login, password, user.getPasswordHash());
+            }
             if (user.getLastLogin() == null || System.currentTimeMillis() - user.getLastLogin().getTime() > loginTimeout) {
                 user.setLastLogin(timestampService.getTimestamp());
             }
@@ -96,11 +112,21 @@ public class UserService {
             if (user.getLoginAttempts() >=
                 configurationService.getInt(Constants.MAX_LOGIN_ATTEMPTS, Constants.MAX_LOGIN_ATTEMPTS_DEFAULT)) {
                 user.setStatus(UserStatus.LOCKED_OUT);
+                restTokenService.revokeUser(user.getId());
+                accessKeyCache.invalidateUser(user.getId());
             }
             return null;
         }
     }
 
+    private boolean checkPassword(String login, String password, User user) {
+        if (passwordService.checkPassword(password, user.getPasswordSalt(), user.getPasswordHash())) {
+            verifiedCredentialCache.verified(login, password, user.getPasswordHash());
+            return true;
+        }
+        return false;
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public User updateUser(@NotNull Long id, UserUpdate userToUpdate) {
         User existing = userDAO.findById(id);
@@ -136,7 +162,13 @@ public class UserService {
         }
 
         hiveValidator.validate(existing);
-        return userDAO.update(existing);
+        User updated = userDAO.update(existing);
+        if (userToUpdate.getLogin() != null || userToUpdate.getPassword() != null || userToUpdate.getRole() != null
+            || userToUpdate.getStatus() != null) {
+            restTokenService.revokeUser(id);
+            accessKeyCache.invalidateUser(id);
+        }
+        return updated;
     }
 
     /**
@@ -159,6 +191,7 @@ public class UserService {
         usersSet.add(existingUser);
         existingNetwork.setUsers(usersSet);
         networkDAO.merge(existingNetwork);
+        userNetworkCache.invalidate(userId);
     }
 
     /**
@@ -177,6 +210,7 @@ public class UserService {
         if (existingNetwork != null) {
             existingNetwork.getUsers().remove(existingUser);
             networkDAO.merge(existingNetwork);
+            userNetworkCache.invalidate(userId);
         }
     }
 
@@ -242,17 +276,25 @@ public class UserService {
      */
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public boolean deleteUser(long id) {
-        return userDAO.delete(id);
+        boolean deleted = userDAO.delete(id);
+        userNetworkCache.invalidate(id);
+        restTokenService.revokeUser(id);
+        accessKeyCache.invalidateUser(id);
+        return deleted;
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public boolean hasAccessToDevice(User user, Device device) {
-        return user.isAdmin() || userDAO.hasAccessToDevice(user, device);
+        if (user.isAdmin()) {
+            return true;
+        }
+        Network network = device.getNetwork();
+        return network != null && userNetworkCache.hasNetwork(user.getId(), network.getId());
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public boolean hasAccessToNetwork(User user, Network network) {
-        return user.isAdmin() || userDAO.hasAccessToNetwork(user, network);
+        return user.isAdmin() || userNetworkCache.hasNetwork(user.getId(), network.getId());
     }
 
 }
@@ -0,0 +1,83 @@
+package com.devicehive.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+/**
+ * Remembers for a short time credentials that were successfully checked against stored password hash, so clients
+ * that send Basic credentials with every request do not pay for key stretching each time. Credentials are never stored
+ * as is, the cache is keyed by HMAC of login and password with a random key generated on startup, and entries are
+ * bound to the password hash they were checked with, so they stop matching as soon as password is changed. Cache is
+ * local to the node and is never replicated.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+public class VerifiedCredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF8 = Charset.forName(Constants.UTF8);
+
+    @EJB
+    private ConfigurationService configurationService;
+
+    private SecretKeySpec hmacKey;
+    private Cache<String, String> verified;
+
+    @PostConstruct
+    protected void postConstruct() {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        long ttl = configurationService.getLong(Constants.VERIFIED_CREDENTIALS_TTL,
+                                                Constants.VERIFIED_CREDENTIALS_TTL_DEFAULT);
+        verified = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .maximumSize(Constants.VERIFIED_CREDENTIALS_MAX_SIZE)
+            .build();
+    }
+
+    /**
+     * @return true if the same credentials were successfully checked against the same password hash recently
+     */
+    public boolean isVerified(String login, String password, String passwordHash) {
+        return passwordHash != null && passwordHash.equals(verified.getIfPresent(key(login, password)));
+    }
+
+    public void verified(String login, String password, String passwordHash) {
+        verified.put(key(login, password), passwordHash);
+    }
+
+    private String key(String login, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            mac.update(login.getBytes(UTF8));
+            mac.update((byte) 0);
+            return Base64.encodeBase64String(mac.doFinal(password.getBytes(UTF8)));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -9,11 +9,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
+import javax.enterprise.inject.Vetoed;
+
 /**
- * this one uses the same scheme as .net server TODO investigate maybe it makes sense to replace it with some
- * key-stretching scheme (scrypt, PBKDF2 or bcrypt)
+ * this one uses the same scheme as .net server. It is kept to verify hashes stored before key-stretching schemes were
+ * introduced, new hashes are produced by {@link PasswordProcessorRegistry}.
  */
-
+@Vetoed
 public class DefaultPasswordProcessor implements PasswordProcessor {
 
     private final SecureRandom secureRandom = new SecureRandom();
@@ -33,6 +35,11 @@ public class DefaultPasswordProcessor implements PasswordProcessor {
         return hash.equals(hashPassword(password, salt));
     }
 
+    @Override
+    public boolean needsRehash(String hash) {
+        return false;
+    }
+
     /**
      * Implements self-made hash scheme.
      */
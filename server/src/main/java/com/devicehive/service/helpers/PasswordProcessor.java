@@ -8,4 +8,11 @@ public interface PasswordProcessor {
     String hashPassword(String password, String salt);
 
     boolean checkPassword(String password, String salt, String hash);
+
+    /**
+     * @param hash stored password hash
+     * @return true if hash was produced by outdated scheme or with lower cost than configured one, so password should
+     *         be hashed again on successful login
+     */
+    boolean needsRehash(String hash);
 }
@@ -0,0 +1,79 @@
+package com.devicehive.service.helpers;
+
+import com.google.common.collect.Maps;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.EJB;
+import javax.inject.Singleton;
+
+/**
+ * Password processor that delegates to the scheme stored hash was produced with. Scheme is taken from hash prefix
+ * <code>${scheme}$</code>, hashes without prefix belong to the legacy {@link DefaultPasswordProcessor}. New hashes
+ * are produced with scheme configured by {@link Constants#PASSWORD_HASH_SCHEME}, hashes of other schemes or of lower
+ * cost are reported by {@link #needsRehash(String)}, so they are replaced on successful login.
+ */
+@Singleton
+public class PasswordProcessorRegistry implements PasswordProcessor {
+
+    public static final String LEGACY_SCHEME = "";
+
+    @EJB
+    private ConfigurationService configurationService;
+
+    private final ConcurrentMap<String, PasswordProcessor> processors = Maps.newConcurrentMap();
+    private volatile String currentScheme;
+
+    @PostConstruct
+    protected void postConstruct() {
+        register(LEGACY_SCHEME, new DefaultPasswordProcessor());
+        register(Pbkdf2PasswordProcessor.SCHEME, new Pbkdf2PasswordProcessor(
+            configurationService.getInt(Constants.PASSWORD_PBKDF2_ITERATIONS,
+                                        Constants.PASSWORD_PBKDF2_ITERATIONS_DEFAULT)));
+        String scheme = configurationService.get(Constants.PASSWORD_HASH_SCHEME);
+        currentScheme = scheme != null && processors.containsKey(scheme)
+                        ? scheme
+                        : Constants.PASSWORD_HASH_SCHEME_DEFAULT;
+    }
+
+    /**
+     * Registers processor for the scheme. Processor should prefix hashes it produces with <code>${scheme}$</code>.
+     */
+    public void register(String scheme, PasswordProcessor processor) {
+        processors.put(scheme, processor);
+    }
+
+    @Override
+    public String generateSalt() {
+        return processors.get(currentScheme).generateSalt();
+    }
+
+    @Override
+    public String hashPassword(String password, String salt) {
+        return processors.get(currentScheme).hashPassword(password, salt);
+    }
+
+    @Override
+    public boolean checkPassword(String password, String salt, String hash) {
+        PasswordProcessor processor = processors.get(getScheme(hash));
+        return processor != null && processor.checkPassword(password, salt, hash);
+    }
+
+    @Override
+    public boolean needsRehash(String hash) {
+        String scheme = getScheme(hash);
+        return !currentScheme.equals(scheme) || processors.get(scheme).needsRehash(hash);
+    }
+
+    private static String getScheme(String hash) {
+        if (hash == null || !hash.startsWith("$")) {
+            return LEGACY_SCHEME;
+        }
+        int end = hash.indexOf('$', 1);
+        return end < 0 ? LEGACY_SCHEME : hash.substring(1, end);
+    }
+}
@@ -0,0 +1,97 @@
+package com.devicehive.service.helpers;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.enterprise.inject.Vetoed;
+
+/**
+ * PBKDF2 key-stretching scheme. Hash is stored as <code>$pbkdf2${iterations}${base64 key}</code>, so iterations can be
+ * increased without breaking existing hashes.
+ */
+@Vetoed
+public class Pbkdf2PasswordProcessor implements PasswordProcessor {
+
+    public static final String SCHEME = "pbkdf2";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final String PREFIX = "$" + SCHEME + "$";
+    private static final int KEY_LENGTH = 256;
+    private static final int SALT_LENGTH = 16;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final int iterations;
+
+    public Pbkdf2PasswordProcessor(int iterations) {
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String generateSalt() {
+        byte[] saltBytes = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(saltBytes);
+        return Base64.encodeBase64String(saltBytes);
+    }
+
+    @Override
+    public String hashPassword(String password, String salt) {
+        return PREFIX + iterations + "$" + Base64.encodeBase64String(derive(password, salt, iterations));
+    }
+
+    @Override
+    public boolean checkPassword(String password, String salt, String hash) {
+        int hashIterations = getIterations(hash);
+        if (hashIterations <= 0) {
+            return false;
+        }
+        byte[] expected = Base64.decodeBase64(hash.substring(hash.lastIndexOf('$') + 1));
+        return slowEquals(expected, derive(password, salt, hashIterations));
+    }
+
+    @Override
+    public boolean needsRehash(String hash) {
+        return getIterations(hash) < iterations;
+    }
+
+    private static int getIterations(String hash) {
+        if (hash == null || !hash.startsWith(PREFIX)) {
+            return -1;
+        }
+        int end = hash.indexOf('$', PREFIX.length());
+        if (end < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] derive(String password, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Base64.decodeBase64(salt), iterations, KEY_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Compares arrays in time that does not depend on position of the first mismatch.
+     */
+    private static boolean slowEquals(byte[] a, byte[] b) {
+        int diff = a.length ^ b.length;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+}
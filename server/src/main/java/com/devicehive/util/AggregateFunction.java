@@ -0,0 +1,45 @@
+package com.devicehive.util;
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Aggregate of numeric notification parameter computed per grid interval.
+ */
+public enum AggregateFunction {
+    MIN, MAX, AVG, LAST, COUNT;
+
+    /**
+     * @param functions comma separated function names, all functions if null
+     * @throws HiveException with 400 status if function is unknown
+     */
+    public static Set<AggregateFunction> parse(String functions) {
+        if (functions == null) {
+            return EnumSet.allOf(AggregateFunction.class);
+        }
+        Set<AggregateFunction> result = EnumSet.noneOf(AggregateFunction.class);
+        for (String name : StringUtils.split(functions, ',')) {
+            result.add(parseFunction(name.trim()));
+        }
+        if (result.isEmpty()) {
+            throw new HiveException(String.format(Messages.UNKNOWN_AGGREGATE_FUNCTION, functions), SC_BAD_REQUEST);
+        }
+        return result;
+    }
+
+    private static AggregateFunction parseFunction(String name) {
+        for (AggregateFunction value : values()) {
+            if (value.name().equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        throw new HiveException(String.format(Messages.UNKNOWN_AGGREGATE_FUNCTION, name), SC_BAD_REQUEST);
+    }
+}
@@ -0,0 +1,143 @@
+package com.devicehive.util;
+
+import com.google.gson.JsonPrimitive;
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.json.adapters.TimestampAdapter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Format of device notification export. Rows are written one by one as they are read from the database, parameters
+ * are copied as stored, without parsing.
+ */
+public enum ExportFormat {
+
+    /**
+     * Single JSON array, same as notification query returns.
+     */
+    JSON("application/json") {
+        @Override
+        public void writeStart(Writer writer) throws IOException {
+            writer.write('[');
+        }
+
+        @Override
+        public void writeRow(Writer writer, long row, long id, Timestamp timestamp, String notification,
+                             String parameters) throws IOException {
+            if (row > 0) {
+                writer.write(',');
+            }
+            writeJsonObject(writer, id, timestamp, notification, parameters);
+        }
+
+        @Override
+        public void writeEnd(Writer writer) throws IOException {
+            writer.write(']');
+        }
+    },
+
+    /**
+     * Newline delimited JSON, one notification per line.
+     */
+    NDJSON("application/x-ndjson") {
+        @Override
+        public void writeRow(Writer writer, long row, long id, Timestamp timestamp, String notification,
+                             String parameters) throws IOException {
+            writeJsonObject(writer, id, timestamp, notification, parameters);
+            writer.write('\n');
+        }
+    },
+
+    /**
+     * RFC 4180 CSV with header, parameters are written as JSON text.
+     */
+    CSV("text/csv") {
+        @Override
+        public void writeStart(Writer writer) throws IOException {
+            writer.write("id,timestamp,notification,parameters\r\n");
+        }
+
+        @Override
+        public void writeRow(Writer writer, long row, long id, Timestamp timestamp, String notification,
+                             String parameters) throws IOException {
+            writer.write(Long.toString(id));
+            writer.write(',');
+            writer.write(TimestampAdapter.formatTimestamp(timestamp));
+            writer.write(',');
+            writeCsvField(writer, notification);
+            writer.write(',');
+            writeCsvField(writer, parameters);
+            writer.write("\r\n");
+        }
+    };
+
+    private final String contentType;
+
+    private ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @throws HiveException with 400 status if format is unknown
+     */
+    public static ExportFormat parse(String format) {
+        if (format == null) {
+            return JSON;
+        }
+        for (ExportFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new HiveException(String.format(Messages.UNKNOWN_EXPORT_FORMAT, format), SC_BAD_REQUEST);
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void writeStart(Writer writer) throws IOException {
+    }
+
+    /**
+     * @param row number of the row, starting from 0
+     */
+    public abstract void writeRow(Writer writer, long row, long id, Timestamp timestamp, String notification,
+                                  String parameters) throws IOException;
+
+    public void writeEnd(Writer writer) throws IOException {
+    }
+
+    private static void writeJsonObject(Writer writer, long id, Timestamp timestamp, String notification,
+                                        String parameters) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(Long.toString(id));
+        writer.write(",\"timestamp\":\"");
+        writer.write(TimestampAdapter.formatTimestamp(timestamp));
+        writer.write("\",\"notification\":");
+        writer.write(notification == null ? "null" : new JsonPrimitive(notification).toString());
+        writer.write(",\"parameters\":");
+        writer.write(parameters == null ? "null" : parameters);
+        writer.write('}');
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+            && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
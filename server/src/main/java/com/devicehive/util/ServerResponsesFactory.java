@@ -3,6 +3,7 @@ package com.devicehive.util;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 
 import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
@@ -13,14 +14,22 @@ import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceEquipment;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.Equipment;
 import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.NullableWrapper;
+import com.devicehive.model.updates.DeviceUpdate;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletResponse;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_TO_DEVICE;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_UPDATE_TO_CLIENT;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.DEVICE_SUBMITTED;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
 
 public class ServerResponsesFactory {
@@ -30,7 +39,7 @@ public class ServerResponsesFactory {
             GsonFactory.createGson(NOTIFICATION_TO_CLIENT).toJsonTree(deviceNotification);
         JsonObject resultMessage = new JsonObject();
         resultMessage.addProperty("action", "notification/insert");
-        resultMessage.addProperty(Constants.DEVICE_GUID, deviceNotification.getDevice().getGuid());
+        resultMessage.addProperty(Constants.DEVICE_GUID, deviceNotification.getDeviceGuid());
         resultMessage.add(Constants.NOTIFICATION, deviceNotificationJson);
         resultMessage.addProperty(Constants.SUBSCRIPTION_ID, subId.toString());
         return resultMessage;
@@ -43,7 +52,7 @@ public class ServerResponsesFactory {
 
         JsonObject resultJsonObject = new JsonObject();
         resultJsonObject.addProperty("action", "command/insert");
-        resultJsonObject.addProperty(Constants.DEVICE_GUID, deviceCommand.getDevice().getGuid());
+        resultJsonObject.addProperty(Constants.DEVICE_GUID, deviceCommand.getDeviceGuid());
         resultJsonObject.add(Constants.COMMAND, deviceCommandJson);
         resultJsonObject.addProperty(Constants.SUBSCRIPTION_ID, subId.toString());
         return resultJsonObject;
@@ -108,4 +117,38 @@ public class ServerResponsesFactory {
         return result;
     }
 
+    /**
+     * Parses devices of bulk save. Each device is an object of device/save format with guid in the id field.
+     * Equipment given next to the device goes to its device class, as in device/save.
+     */
+    public static List<DeviceUpdate> parseDeviceUpdates(JsonElement devices) {
+        if (devices == null || !devices.isJsonArray()) {
+            throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, HttpServletResponse.SC_BAD_REQUEST);
+        }
+        Gson mainGson = GsonFactory.createGson(DEVICE_SUBMITTED);
+        Gson gsonForEquipment = GsonFactory.createGson();
+        List<DeviceUpdate> result = new ArrayList<>(devices.getAsJsonArray().size());
+        for (JsonElement element : devices.getAsJsonArray()) {
+            if (!element.isJsonObject()) {
+                throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, HttpServletResponse.SC_BAD_REQUEST);
+            }
+            JsonObject jsonObject = element.getAsJsonObject();
+            DeviceUpdate device = mainGson.fromJson(jsonObject, DeviceUpdate.class);
+            JsonElement guid = jsonObject.get(Constants.ID);
+            if (guid != null && !guid.isJsonNull()) {
+                device.setGuid(new NullableWrapper<>(guid.getAsString()));
+            }
+            Set<Equipment> equipmentSet = gsonForEquipment.fromJson(
+                jsonObject.get(Constants.EQUIPMENT),
+                new TypeToken<HashSet<Equipment>>() {
+                }.getType());
+            if (equipmentSet != null && device.getDeviceClass() != null && device.getDeviceClass().getValue() != null
+                && device.getDeviceClass().getValue().getEquipment() == null) {
+                equipmentSet.remove(null);
+                device.getDeviceClass().getValue().setEquipment(new NullableWrapper<Set<Equipment>>(equipmentSet));
+            }
+            result.add(device);
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.devicehive.util;
 
 import com.google.gson.JsonObject;
 
+import com.devicehive.auth.websockets.WebsocketActionRequirement;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +15,7 @@ public final class ThreadLocalVariablesKeeper {
     private static Logger logger = LoggerFactory.getLogger(ThreadLocalVariablesKeeper.class);
     private static ThreadLocal<JsonObject> REQUEST = new ThreadLocal<>();
     private static ThreadLocal<Session> SESSION = new ThreadLocal<>();
+    private static ThreadLocal<WebsocketActionRequirement> ACTION_REQUIREMENT = new ThreadLocal<>();
 
     public static JsonObject getRequest() {
         return REQUEST.get();
@@ -30,10 +33,19 @@ public final class ThreadLocalVariablesKeeper {
         SESSION.set(session);
     }
 
+    public static WebsocketActionRequirement getActionRequirement() {
+        return ACTION_REQUIREMENT.get();
+    }
+
+    public static void setActionRequirement(WebsocketActionRequirement actionRequirement) {
+        ACTION_REQUIREMENT.set(actionRequirement);
+    }
+
 
     public static void clean() {
         REQUEST.set(null);
         SESSION.set(null);
+        ACTION_REQUIREMENT.set(null);
     }
 
 }
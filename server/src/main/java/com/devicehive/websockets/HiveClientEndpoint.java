@@ -2,9 +2,12 @@ package com.devicehive.websockets;
 
 import com.google.gson.JsonObject;
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.websockets.converters.JsonEncoder;
 import com.devicehive.websockets.util.HiveEndpoint;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 
 import javax.ejb.Stateless;
@@ -18,7 +21,8 @@ import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
-@ServerEndpoint(value = "/websocket/client", encoders = {JsonEncoder.class})
+@ServerEndpoint(value = "/websocket/client", encoders = {JsonEncoder.class},
+                subprotocols = {Constants.WEBSOCKET_CBOR_SUBPROTOCOL})
 @Stateless
 @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 public class HiveClientEndpoint extends HiveServerEndpoint {
@@ -38,6 +42,12 @@ public class HiveClientEndpoint extends HiveServerEndpoint {
         return super.onMessage(reader, session);
     }
 
+    @Override
+    @OnMessage(maxMessageSize = MAX_MESSAGE_SIZE)
+    public void onBinaryMessage(InputStream input, Session session) throws IOException {
+        super.onBinaryMessage(input, session);
+    }
+
     @Override
     @OnClose
     public void onClose(Session session, CloseReason closeReason) {
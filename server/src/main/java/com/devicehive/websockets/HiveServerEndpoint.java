@@ -1,27 +1,39 @@
 package com.devicehive.websockets;
 
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonParser;
 
 import com.devicehive.auth.HiveSecurityContext;
+import com.devicehive.configuration.Constants;
 import com.devicehive.json.GsonFactory;
-import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.util.LogExecutionTime;
+import com.devicehive.websockets.converters.CborCodec;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.handlers.WebsocketExecutor;
+import com.devicehive.websockets.util.PipelinedRequestRunner;
 import com.devicehive.websockets.util.SessionMonitor;
+import com.devicehive.websockets.util.SessionPipeline;
+import com.devicehive.websockets.util.SessionWriter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.util.UUID;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
+import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
 import javax.websocket.CloseReason;
@@ -38,45 +50,116 @@ abstract class HiveServerEndpoint {
     @Inject
     private SessionMonitor sessionMonitor;
     @Inject
-    private SubscriptionManager subscriptionManager;
-    @Inject
     private WebsocketExecutor executor;
     @Inject
     private HiveSecurityContext hiveSecurityContext;
+    @Resource(name = "concurrent/DeviceHiveMessageService")
+    private ManagedExecutorService mes;
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+    @EJB
+    private PipelinedRequestRunner pipelinedRequestRunner;
 
     public void onOpen(Session session) {
         logger.info("Opening session id {} ", session.getId());
         HiveWebsocketSessionState state = new HiveWebsocketSessionState();
         session.getUserProperties().put(HiveWebsocketSessionState.KEY, state);
+        SessionWriter writer = new SessionWriter(session, mes, scheduler);
+        writer.setBinary(Constants.WEBSOCKET_CBOR_SUBPROTOCOL.equals(session.getNegotiatedSubprotocol()));
+        applyBatching(writer, session.getRequestParameterMap());
+        state.setWriter(writer);
+        final PipelinedRequestRunner runner = pipelinedRequestRunner;
+        SessionPipeline pipeline = new SessionPipeline(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runner.run(command);
+            }
+        });
+        applyPipelining(pipeline, session.getRequestParameterMap());
+        state.setPipeline(pipeline);
         state.setOrigin(hiveSecurityContext.getOrigin());
         state.setHivePrincipal(hiveSecurityContext.getHivePrincipal());
         state.setClientInetAddress(hiveSecurityContext.getClientInetAddress());
         sessionMonitor.registerSession(session);
     }
 
-    public JsonObject onMessage(Reader reader, Session session) {
-        JsonObject request = null;
+    /**
+     * Enables batching if client has requested it with <code>batchSize</code> and <code>batchDelay</code> query
+     * parameters of the websocket URL. Malformed values are ignored, batching may be requested later with
+     * <code>server/options</code> action.
+     */
+    private void applyBatching(SessionWriter writer, Map<String, List<String>> parameters) {
+        String batchSize = getParameter(parameters, Constants.WEBSOCKET_BATCH_SIZE);
+        if (batchSize == null) {
+            return;
+        }
+        String batchDelay = getParameter(parameters, Constants.WEBSOCKET_BATCH_DELAY);
         try {
-            logger.debug("Session id {} ", session.getId());
-            request = new JsonParser().parse(reader).getAsJsonObject();
-            logger.debug("Request is parsed correctly");
-        } catch (IllegalStateException ex) {
-            throw new JsonParseException(ex);
+            int size = Integer.parseInt(batchSize);
+            long delay = batchDelay != null ? Long.parseLong(batchDelay) : 0;
+            if (SessionWriter.isValidBatching(size, delay)) {
+                writer.setBatching(size, delay);
+            } else {
+                logger.debug("Batching options {}, {} are out of bounds", batchSize, batchDelay);
+            }
+        } catch (NumberFormatException e) {
+            logger.debug("Malformed batching options {}, {}", batchSize, batchDelay);
         }
+    }
 
-        return executor.execute(request, session);
+    /**
+     * Enables pipelining if client has requested it with <code>maxInFlight</code> query parameter of the websocket URL.
+     */
+    private void applyPipelining(SessionPipeline pipeline, Map<String, List<String>> parameters) {
+        String maxInFlight = getParameter(parameters, Constants.WEBSOCKET_MAX_IN_FLIGHT);
+        if (maxInFlight == null) {
+            return;
+        }
+        try {
+            int value = Integer.parseInt(maxInFlight);
+            if (value >= 1 && value <= Constants.WEBSOCKET_MAX_IN_FLIGHT_LIMIT) {
+                pipeline.setMaxInFlight(value);
+            } else {
+                logger.debug("Pipelining option {} is out of bounds", maxInFlight);
+            }
+        } catch (NumberFormatException e) {
+            logger.debug("Malformed pipelining option {}", maxInFlight);
+        }
     }
 
+    private static String getParameter(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters != null ? parameters.get(name) : null;
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
 
-    public void onClose(Session session, CloseReason closeReason) {
-        logger.info("Closing session id {}, close reason is {} ", session.getId(), closeReason);
-        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
-        for (UUID subId : state.getCommandSubscriptions()) {
-            subscriptionManager.getCommandSubscriptionStorage().removeBySubscriptionId(subId);
+    public JsonObject onMessage(Reader reader, Session session) {
+        logger.debug("Session id {} ", session.getId());
+        HiveWebsocketSessionState.get(session).touch();
+        return executor.execute(reader, session);
+    }
+
+    /**
+     * Handles CBOR encoded request of the session that negotiated binary subprotocol. Response is sent through the
+     * session writer, so it is encoded the same way.
+     */
+    public void onBinaryMessage(InputStream input, Session session) throws IOException {
+        logger.debug("Session id {} ", session.getId());
+        HiveWebsocketSessionState.get(session).touch();
+        JsonElement request = CborCodec.decode(input, session.getMaxBinaryMessageBufferSize());
+        if (!request.isJsonObject()) {
+            throw new JsonParseException("Request should be a map");
         }
-        for (UUID subId : state.getNotificationSubscriptions()) {
-            subscriptionManager.getNotificationSubscriptionStorage().removeBySubscriptionId(subId);
+        logger.debug("Request is parsed correctly");
+        JsonObject response = executor.execute(request.getAsJsonObject(), session);
+        if (response != null) {
+            HiveWebsocketSessionState.get(session).getWriter().send(response);
         }
+    }
+
+
+    public void onClose(Session session, CloseReason closeReason) {
+        logger.info("Closing session id {}, close reason is {} ", session.getId(), closeReason);
+        sessionMonitor.unregisterSession(session);
         logger.info("Session {} is closed", session.getId());
     }
 
@@ -92,7 +175,12 @@ abstract class HiveServerEndpoint {
             builder = JsonMessageBuilder
                 .createErrorResponseBuilder(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error");
         }
-        session.getAsyncRemote().sendText(GsonFactory.createGson().toJson(builder.build()));
+        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+        if (state != null && state.getWriter() != null) {
+            state.getWriter().send(builder.build());
+        } else {
+            session.getAsyncRemote().sendText(GsonFactory.createGson().toJson(builder.build()));
+        }
 
     }
 }
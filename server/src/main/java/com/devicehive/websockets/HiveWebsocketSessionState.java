@@ -3,19 +3,26 @@ package com.devicehive.websockets;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.gson.JsonElement;
 
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
+import com.devicehive.messages.subscriptions.CommandUpdateSubscription;
+import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.websockets.util.HiveEndpoint;
+import com.devicehive.websockets.util.SessionPipeline;
+import com.devicehive.websockets.util.SessionWriter;
+import com.devicehive.websockets.util.SubscriptionSessionMap;
 
 import java.net.InetAddress;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -25,19 +32,25 @@ import javax.websocket.Session;
 public class HiveWebsocketSessionState {
 
     public static final String KEY = HiveWebsocketSessionState.class.getName();
-    private final Lock queueLock = new ReentrantLock(true);
-    private final ConcurrentLinkedQueue<JsonElement> queue = new ConcurrentLinkedQueue<>();
     private final Set<UUID> commandSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
     private final Lock commandSubscriptionsLock = new ReentrantLock(true);
     private final Set<UUID> notificationSubscriptions =
         Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
     private final Lock notificationSubscriptionsLock = new ReentrantLock(true);
     private final Lock commandUpdateSubscriptionsLock = new ReentrantLock(true);
+    // command id to subscription id, in order of insertion, guarded by commandUpdateSubscriptionsLock
+    private final Map<Long, UUID> commandUpdateSubscriptions = new LinkedHashMap<>();
     private final ConcurrentMap<Set<String>, Set<UUID>> oldFormatCommandSubscriptions = Maps.newConcurrentMap();
     private final ConcurrentMap<Set<String>, Set<UUID>> oldFormatNotificationSubscriptions = Maps.newConcurrentMap();
     private HiveEndpoint endpoint;
-    private HivePrincipal hivePrincipal;
+    private SessionWriter writer;
+    private SessionPipeline pipeline;
+    private final BitSet allowedActions = new BitSet();
+    private final BitSet checkedActions = new BitSet();
+    private volatile HivePrincipal hivePrincipal;
     private InetAddress clientInetAddress;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile boolean closed;
     private String origin;
 
     public static HiveWebsocketSessionState get(Session session) {
@@ -52,12 +65,20 @@ public class HiveWebsocketSessionState {
         this.endpoint = endpoint;
     }
 
-    public Lock getQueueLock() {
-        return queueLock;
+    public SessionWriter getWriter() {
+        return writer;
     }
 
-    public ConcurrentLinkedQueue<JsonElement> getQueue() {
-        return queue;
+    public void setWriter(SessionWriter writer) {
+        this.writer = writer;
+    }
+
+    public SessionPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(SessionPipeline pipeline) {
+        this.pipeline = pipeline;
     }
 
     public Set<UUID> getCommandSubscriptions() {
@@ -80,14 +101,46 @@ public class HiveWebsocketSessionState {
         return hivePrincipal;
     }
 
-    public void setHivePrincipal(HivePrincipal hivePrincipal) {
+    public synchronized void setHivePrincipal(HivePrincipal hivePrincipal) {
         this.hivePrincipal = hivePrincipal;
+        allowedActions.clear();
+        checkedActions.clear();
+    }
+
+    /**
+     * @param actionIndex index of websocket action
+     * @return cached authorization decision of session principal for the action, null if it was not evaluated yet
+     */
+    public synchronized Boolean isActionAllowed(int actionIndex) {
+        return checkedActions.get(actionIndex) ? allowedActions.get(actionIndex) : null;
+    }
+
+    /**
+     * Caches authorization decision for the action. Decision is dropped if session principal has been changed since it
+     * was evaluated.
+     */
+    public synchronized void setActionAllowed(HivePrincipal principal, int actionIndex, boolean allowed) {
+        if (principal == hivePrincipal) {
+            checkedActions.set(actionIndex);
+            allowedActions.set(actionIndex, allowed);
+        }
     }
 
     public Lock getCommandUpdateSubscriptionsLock() {
         return commandUpdateSubscriptionsLock;
     }
 
+    /**
+     * @return time the last message was received from the client
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
     public InetAddress getClientInetAddress() {
         return clientInetAddress;
     }
@@ -104,6 +157,79 @@ public class HiveWebsocketSessionState {
         this.origin = origin;
     }
 
+    /**
+     * @return true if the session is closed, subscriptions should not be added after that
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Marks the session closed and removes all its subscriptions from subscription storages and subscription to
+     * session map. Each kind of subscriptions is removed under its lock, so subscription made concurrently either is
+     * removed here or sees the session closed. Cost is proportional to the number of subscriptions of the session.
+     */
+    public void close(SubscriptionManager subscriptionManager, SubscriptionSessionMap subscriptionSessionMap) {
+        closed = true;
+        commandUpdateSubscriptionsLock.lock();
+        try {
+            for (UUID subId : commandUpdateSubscriptions.values()) {
+                subscriptionManager.getCommandUpdateSubscriptionStorage().removeBySubscriptionId(subId);
+            }
+            commandUpdateSubscriptions.clear();
+        } finally {
+            commandUpdateSubscriptionsLock.unlock();
+        }
+        commandSubscriptionsLock.lock();
+        try {
+            for (UUID subId : commandSubscriptions) {
+                subscriptionManager.getCommandSubscriptionStorage().removeBySubscriptionId(subId);
+            }
+            subscriptionSessionMap.removeAll(commandSubscriptions);
+            commandSubscriptions.clear();
+            oldFormatCommandSubscriptions.clear();
+        } finally {
+            commandSubscriptionsLock.unlock();
+        }
+        notificationSubscriptionsLock.lock();
+        try {
+            for (UUID subId : notificationSubscriptions) {
+                subscriptionManager.getNotificationSubscriptionStorage().removeBySubscriptionId(subId);
+            }
+            subscriptionSessionMap.removeAll(notificationSubscriptions);
+            notificationSubscriptions.clear();
+            oldFormatNotificationSubscriptions.clear();
+        } finally {
+            notificationSubscriptionsLock.unlock();
+        }
+    }
+
+    /**
+     * Subscribes the session for updates of the command it has created. Session keeps a limited number of such
+     * subscriptions, the oldest one is dropped when the limit is reached.
+     *
+     * @return false if the session is closed already
+     */
+    public boolean addCommandUpdateSubscription(CommandUpdateSubscription subscription,
+                                                SubscriptionManager subscriptionManager) {
+        commandUpdateSubscriptionsLock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            subscriptionManager.getCommandUpdateSubscriptionStorage().insert(subscription);
+            commandUpdateSubscriptions.put(subscription.getCommandId(), subscription.getSubscriptionId());
+            if (commandUpdateSubscriptions.size() > Constants.WEBSOCKET_MAX_COMMAND_UPDATE_SUBSCRIPTIONS) {
+                Iterator<UUID> eldest = commandUpdateSubscriptions.values().iterator();
+                subscriptionManager.getCommandUpdateSubscriptionStorage().removeBySubscriptionId(eldest.next());
+                eldest.remove();
+            }
+            return true;
+        } finally {
+            commandUpdateSubscriptionsLock.unlock();
+        }
+    }
+
     public synchronized void addOldFormatCommandSubscription(Set<String> guids, UUID subscriptionId) {
         Set<String> toStore = guids == null
                               ? Sets.newHashSet(Constants.NULL_SUBSTITUTE)
@@ -0,0 +1,422 @@
+package com.devicehive.websockets.converters;
+
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import com.devicehive.configuration.Constants;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Converts messages between Gson tree and <a href="http://tools.ietf.org/html/rfc7049">CBOR</a>, so binary websocket
+ * sessions carry the same action/request model as text ones. Messages are encoded with definite lengths, integers and
+ * floating point numbers are written in the shortest form that keeps the value. Decoder accepts any well-formed CBOR
+ * document that maps to JSON: byte strings are returned as base64 strings, tags are ignored.
+ */
+public final class CborCodec {
+
+    private static final Charset UTF8 = Charset.forName(Constants.UTF8);
+    private static final int MAX_DEPTH = 64;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int UNDEFINED = 0xf7;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+    private static final int BREAK = 0xff;
+    private static final int INDEFINITE = 31;
+
+    private static final BigInteger MAX_UNSIGNED = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private CborCodec() {
+    }
+
+    public static byte[] encode(JsonElement element) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        write(element, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param maxLength maximal length of the message in bytes, lengths of strings, arrays and maps are checked against
+     *                  the bytes left, so a forged length can not force large allocation
+     * @throws JsonParseException if input is not well-formed CBOR, is nested too deep or is longer than maxLength
+     */
+    public static JsonElement decode(InputStream input, int maxLength) throws IOException {
+        CborInput in = new CborInput(new BoundedInputStream(input, maxLength));
+        try {
+            JsonElement result = read(in, in.readUnsignedByte(), 0);
+            if (in.read() != -1) {
+                throw new JsonParseException("Unexpected data after CBOR item");
+            }
+            return result;
+        } catch (EOFException e) {
+            throw new JsonParseException("Truncated CBOR item", e);
+        }
+    }
+
+    private static void write(JsonElement element, ByteArrayOutputStream out) {
+        if (element == null || element.isJsonNull()) {
+            out.write(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            int size = 0;
+            for (Map.Entry<String, JsonElement> ignored : object.entrySet()) {
+                size++;
+            }
+            writeHeader(MAJOR_MAP, size, out);
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(entry.getKey(), out);
+                write(entry.getValue(), out);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHeader(MAJOR_ARRAY, array.size(), out);
+            for (JsonElement item : array) {
+                write(item, out);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(primitive.getAsNumber(), out);
+            } else {
+                writeText(primitive.getAsString(), out);
+            }
+        }
+    }
+
+    private static void writeNumber(Number number, ByteArrayOutputStream out) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short
+            || number instanceof Byte) {
+            writeLong(number.longValue(), out);
+            return;
+        }
+        if (number instanceof Double || number instanceof Float) {
+            writeDouble(number.doubleValue(), out);
+            return;
+        }
+        // LazilyParsedNumber, BigInteger, BigDecimal
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(number.toString());
+        } catch (NumberFormatException e) {
+            writeDouble(number.doubleValue(), out);
+            return;
+        }
+        if (decimal.scale() <= 0) {
+            BigInteger integer = decimal.toBigIntegerExact();
+            if (integer.bitLength() < 64) {
+                writeLong(integer.longValue(), out);
+                return;
+            }
+            if (integer.signum() > 0 && integer.compareTo(MAX_UNSIGNED) <= 0) {
+                writeHeader(MAJOR_UNSIGNED, integer.longValue(), out);
+                return;
+            }
+        }
+        writeDouble(decimal.doubleValue(), out);
+    }
+
+    private static void writeLong(long value, ByteArrayOutputStream out) {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value, out);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value, out);
+        }
+    }
+
+    private static void writeDouble(double value, ByteArrayOutputStream out) {
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            out.write(FLOAT32);
+            writeBytes(Float.floatToIntBits(single), 4, out);
+        } else {
+            out.write(FLOAT64);
+            writeBytes(Double.doubleToLongBits(value), 8, out);
+        }
+    }
+
+    private static void writeText(String text, ByteArrayOutputStream out) {
+        byte[] bytes = text.getBytes(UTF8);
+        writeHeader(MAJOR_TEXT, bytes.length, out);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes major type and argument, argument is treated as unsigned.
+     */
+    private static void writeHeader(int major, long argument, ByteArrayOutputStream out) {
+        int type = major << 5;
+        if (argument >= 0 && argument < 24) {
+            out.write(type | (int) argument);
+        } else if (argument >= 0 && argument <= 0xffL) {
+            out.write(type | 24);
+            out.write((int) argument);
+        } else if (argument >= 0 && argument <= 0xffffL) {
+            out.write(type | 25);
+            writeBytes(argument, 2, out);
+        } else if (argument >= 0 && argument <= 0xffffffffL) {
+            out.write(type | 26);
+            writeBytes(argument, 4, out);
+        } else {
+            out.write(type | 27);
+            writeBytes(argument, 8, out);
+        }
+    }
+
+    private static void writeBytes(long value, int count, ByteArrayOutputStream out) {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+
+    private static JsonElement read(CborInput in, int initial, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new JsonParseException("CBOR item is nested too deep");
+        }
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case MAJOR_UNSIGNED:
+                return readUnsigned(in, info);
+            case MAJOR_NEGATIVE: {
+                long argument = readArgument(in, info);
+                if (argument < 0) {
+                    return new JsonPrimitive(BigInteger.valueOf(argument).add(BigInteger.ONE.shiftLeft(64))
+                                                 .add(BigInteger.ONE).negate());
+                }
+                return new JsonPrimitive(-1 - argument);
+            }
+            case MAJOR_BYTES:
+                return new JsonPrimitive(Base64.encodeBase64String(readString(in, major, info)));
+            case MAJOR_TEXT:
+                return new JsonPrimitive(new String(readString(in, major, info), UTF8));
+            case MAJOR_ARRAY: {
+                JsonArray array = new JsonArray();
+                if (info == INDEFINITE) {
+                    for (int next = in.readUnsignedByte(); next != BREAK; next = in.readUnsignedByte()) {
+                        array.add(read(in, next, depth + 1));
+                    }
+                } else {
+                    for (long i = readLength(in, info); i > 0; i--) {
+                        array.add(read(in, in.readUnsignedByte(), depth + 1));
+                    }
+                }
+                return array;
+            }
+            case MAJOR_MAP: {
+                JsonObject object = new JsonObject();
+                if (info == INDEFINITE) {
+                    for (int next = in.readUnsignedByte(); next != BREAK; next = in.readUnsignedByte()) {
+                        readEntry(in, next, object, depth);
+                    }
+                } else {
+                    for (long i = readLength(in, info); i > 0; i--) {
+                        readEntry(in, in.readUnsignedByte(), object, depth);
+                    }
+                }
+                return object;
+            }
+            case MAJOR_TAG:
+                readArgument(in, info);
+                return read(in, in.readUnsignedByte(), depth + 1);
+            default:
+                return readSimple(in, initial, info);
+        }
+    }
+
+    private static void readEntry(CborInput in, int initial, JsonObject object, int depth) throws IOException {
+        JsonElement key = read(in, initial, depth + 1);
+        if (!key.isJsonPrimitive()) {
+            throw new JsonParseException("CBOR map key should be a string or a number");
+        }
+        object.add(key.getAsString(), read(in, in.readUnsignedByte(), depth + 1));
+    }
+
+    private static JsonElement readUnsigned(CborInput in, int info) throws IOException {
+        long argument = readArgument(in, info);
+        if (argument < 0) {
+            return new JsonPrimitive(BigInteger.valueOf(argument).add(BigInteger.ONE.shiftLeft(64)));
+        }
+        return new JsonPrimitive(argument);
+    }
+
+    private static JsonElement readSimple(CborInput in, int initial, int info) throws IOException {
+        switch (initial) {
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case NULL:
+            case UNDEFINED:
+                return JsonNull.INSTANCE;
+            case FLOAT32:
+                return new JsonPrimitive(Float.intBitsToFloat(in.readInt()));
+            case FLOAT64:
+                return new JsonPrimitive(Double.longBitsToDouble(in.readLong()));
+            default:
+                if (info == 25) {
+                    return new JsonPrimitive(halfToFloat(in.readUnsignedShort()));
+                }
+                throw new JsonParseException("Unsupported CBOR simple value " + initial);
+        }
+    }
+
+    private static byte[] readString(CborInput in, int major, int info) throws IOException {
+        if (info != INDEFINITE) {
+            byte[] bytes = new byte[readLength(in, info)];
+            in.readFully(bytes);
+            return bytes;
+        }
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int next = in.readUnsignedByte(); next != BREAK; next = in.readUnsignedByte()) {
+            if (next >>> 5 != major || (next & 0x1f) == INDEFINITE) {
+                throw new JsonParseException("Malformed CBOR string chunk");
+            }
+            byte[] chunk = readString(in, major, next & 0x1f);
+            chunks.write(chunk, 0, chunk.length);
+        }
+        return chunks.toByteArray();
+    }
+
+    /**
+     * @return length of string, array or map, every byte or item takes at least one byte of the input
+     */
+    private static int readLength(CborInput in, int info) throws IOException {
+        long length = readArgument(in, info);
+        if (length < 0 || length > in.remaining()) {
+            throw new JsonParseException("CBOR item is too long");
+        }
+        return (int) length;
+    }
+
+    /**
+     * @return argument of the item, values above Long.MAX_VALUE are returned as negative numbers
+     */
+    private static long readArgument(CborInput in, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return in.readUnsignedByte();
+            case 25:
+                return in.readUnsignedShort();
+            case 26:
+                return in.readInt() & 0xffffffffL;
+            case 27:
+                return in.readLong();
+            default:
+                throw new JsonParseException("Malformed CBOR item header");
+        }
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * (float) Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    private static class CborInput extends DataInputStream {
+
+        private final BoundedInputStream bounded;
+
+        private CborInput(BoundedInputStream bounded) {
+            super(bounded);
+            this.bounded = bounded;
+        }
+
+        private long remaining() {
+            return bounded.remaining;
+        }
+    }
+
+    /**
+     * Fails reading past the limit, the limit is left as is if the read fails.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return checkEnd();
+            }
+            int result = super.read();
+            if (result != -1) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return checkEnd();
+            }
+            int result = super.read(b, off, (int) Math.min(len, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(Math.min(n, remaining));
+            remaining -= result;
+            return result;
+        }
+
+        private int checkEnd() throws IOException {
+            if (super.read() != -1) {
+                throw new JsonParseException("CBOR message is too long");
+            }
+            return -1;
+        }
+    }
+}
@@ -9,8 +9,10 @@ import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.json.strategies.JsonPolicyApply;
+import com.devicehive.messages.bus.GlobalMessageBus;
 import com.devicehive.messages.handler.WebsocketHandlerCreator;
 import com.devicehive.messages.subscriptions.CommandSubscription;
+import com.devicehive.messages.subscriptions.CommandUpdateSubscription;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
@@ -24,8 +26,6 @@ import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
-import com.devicehive.websockets.util.AsyncMessageSupplier;
-import com.devicehive.websockets.util.FlushQueue;
 import com.devicehive.websockets.util.SubscriptionSessionMap;
 
 import org.apache.commons.lang3.StringUtils;
@@ -42,7 +42,6 @@ import java.util.UUID;
 
 import javax.annotation.security.RolesAllowed;
 import javax.ejb.EJB;
-import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.websocket.Session;
 
@@ -62,6 +61,7 @@ import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_TO_CLI
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.REST_COMMAND_UPDATE_FROM_DEVICE;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static javax.servlet.http.HttpServletResponse.SC_GONE;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
 
@@ -75,16 +75,13 @@ public class CommandHandlers extends WebsocketHandlers {
     @EJB
     private DeviceCommandService commandService;
     @EJB
-    private AsyncMessageSupplier asyncMessageDeliverer;
-    @EJB
     private TimestampService timestampService;
     @EJB
     private SubscriptionSessionMap subscriptionSessionMap;
+    @EJB
+    private GlobalMessageBus globalMessageBus;
     @Inject
     private HiveSecurityContext hiveSecurityContext;
-    @Inject
-    @FlushQueue
-    private Event<Session> event;
 
     public static String createAccessDeniedForGuidsMessage(List<String> guids,
                                                            List<Device> allowedDevices) {
@@ -161,6 +158,9 @@ public class CommandHandlers extends WebsocketHandlers {
         state.getCommandSubscriptionsLock().lock();
         try {
             logger.debug("command/subscribe action. Session {}", session.getId());
+            if (state.isClosed()) {
+                throw new HiveException(Messages.SESSION_CLOSED, SC_GONE);
+            }
             List<CommandSubscription> csList = new ArrayList<>();
             UUID reqId = UUID.randomUUID();
             if (devices != null) {
@@ -195,14 +195,14 @@ public class CommandHandlers extends WebsocketHandlers {
             List<DeviceCommand> commands = commandService.getDeviceCommandsList(devices, names, timestamp, principal);
             if (!commands.isEmpty()) {
                 for (DeviceCommand deviceCommand : commands) {
-                    state.getQueue().add(ServerResponsesFactory.createCommandInsertMessage(deviceCommand, reqId));
+                    state.getWriter().enqueue(ServerResponsesFactory.createCommandInsertMessage(deviceCommand, reqId));
                 }
             }
             return reqId;
         } finally {
             HiveWebsocketSessionState.get(session).getCommandSubscriptionsLock().unlock();
             logger.debug("deliver messages process for session" + session.getId());
-            asyncMessageDeliverer.deliverMessages(session);
+            HiveWebsocketSessionState.get(session).getWriter().flush();
         }
     }
 
@@ -243,7 +243,7 @@ public class CommandHandlers extends WebsocketHandlers {
         } finally {
             state.getCommandSubscriptionsLock().unlock();
             logger.debug("deliver messages process for session" + session.getId());
-            event.fire(session);
+            state.getWriter().flush();
         }
         logger.debug("command/unsubscribe completed for session {}", session.getId());
         return new WebSocketResponse();
@@ -254,8 +254,8 @@ public class CommandHandlers extends WebsocketHandlers {
     @AllowedKeyAction(action = CREATE_DEVICE_COMMAND)
     public WebSocketResponse processCommandInsert(@WsParam(DEVICE_GUID) String deviceGuid,
                                                   @WsParam(COMMAND) @JsonPolicyApply(COMMAND_FROM_CLIENT)
-                                                  DeviceCommand deviceCommand,
-                                                  Session session) {
+                                                  final DeviceCommand deviceCommand,
+                                                  final Session session) {
         logger.debug("command/insert action for {}, Session ", deviceGuid, session.getId());
         if (deviceGuid == null) {
             throw new HiveException(Messages.DEVICE_GUID_REQUIRED, SC_BAD_REQUEST);
@@ -273,7 +273,19 @@ public class CommandHandlers extends WebsocketHandlers {
             user = principal.getKey().getUser();
         }
         deviceCommand.setOriginSessionId(session.getId());
-        commandService.submitDeviceCommand(deviceCommand, device, user);
+        commandService.submitDeviceCommand(deviceCommand, device, user, new Runnable() {
+            @Override
+            public void run() {
+                // device may answer as soon as the command is committed, so session is subscribed before that
+                CommandUpdateSubscription updateSubscription =
+                    new CommandUpdateSubscription(deviceCommand.getId(), UUID.randomUUID(),
+                                                  WebsocketHandlerCreator.createCommandUpdate(session));
+                if (HiveWebsocketSessionState.get(session).addCommandUpdateSubscription(updateSubscription,
+                                                                                       subscriptionManager)) {
+                    globalMessageBus.routeCommandUpdates(deviceCommand.getId());
+                }
+            }
+        });
         WebSocketResponse response = new WebSocketResponse();
         response.addValue(COMMAND, deviceCommand, COMMAND_TO_CLIENT);
         return response;
@@ -1,6 +1,8 @@
 package com.devicehive.websockets.handlers;
 
 
+import com.google.gson.JsonObject;
+
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.ConfigurationService;
 import com.devicehive.configuration.Constants;
@@ -19,6 +21,8 @@ import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
 import com.devicehive.websockets.util.HiveEndpoint;
+import com.devicehive.websockets.util.SessionPipeline;
+import com.devicehive.websockets.util.SessionWriter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +32,7 @@ import javax.ejb.EJB;
 import javax.websocket.Session;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.WEBSOCKET_SERVER_INFO;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 
 public class CommonHandlers extends WebsocketHandlers {
@@ -133,5 +138,49 @@ public class CommonHandlers extends WebsocketHandlers {
         return new WebSocketResponse();
     }
 
-
+    /**
+     * Negotiates session options. Omitted options are not changed.
+     * <p/>
+     * Batching: when <code>batchSize</code> is greater than 1, server sends up to <code>batchSize</code> messages as
+     * one JSON array frame, waiting up to <code>batchDelay</code> milliseconds for more messages. <code>batchSize</code>
+     * of 1 turns batching off.
+     * <p/>
+     * Pipelining: when <code>maxInFlight</code> is greater than 1, requests with <code>requestId</code> are executed
+     * concurrently, up to <code>maxInFlight</code> at a time, responses are sent as soon as they are ready and should
+     * be matched by <code>requestId</code>. Requests with <code>"ordered": true</code> are executed one after another
+     * in order they were sent. <code>maxInFlight</code> of 1 turns pipelining off.
+     *
+     * @param session Current session
+     * @return Json object with the following structure <code> { "action": {string}, "status": {string}, "requestId":
+     *         {object}, "options": { "batchSize": {integer}, "batchDelay": {integer}, "maxInFlight": {integer} } }
+     *         </code>
+     */
+    @Action(value = "server/options")
+    @PermitAll
+    public WebSocketResponse processServerOptions(@WsParam(Constants.WEBSOCKET_BATCH_SIZE) Integer batchSize,
+                                                  @WsParam(Constants.WEBSOCKET_BATCH_DELAY) Long batchDelay,
+                                                  @WsParam(Constants.WEBSOCKET_MAX_IN_FLIGHT) Integer maxInFlight,
+                                                  Session session) {
+        logger.debug("server/options action started. Session {}", session.getId());
+        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+        SessionWriter writer = state.getWriter();
+        SessionPipeline pipeline = state.getPipeline();
+        int size = batchSize != null ? batchSize : writer.getBatchSize();
+        long delay = batchDelay != null ? batchDelay : writer.getBatchDelay();
+        int inFlight = maxInFlight != null ? maxInFlight : pipeline.getMaxInFlight();
+        if (!SessionWriter.isValidBatching(size, delay)
+            || inFlight < 1 || inFlight > Constants.WEBSOCKET_MAX_IN_FLIGHT_LIMIT) {
+            throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, SC_BAD_REQUEST);
+        }
+        writer.setBatching(size, delay);
+        pipeline.setMaxInFlight(inFlight);
+        JsonObject options = new JsonObject();
+        options.addProperty(Constants.WEBSOCKET_BATCH_SIZE, writer.getBatchSize());
+        options.addProperty(Constants.WEBSOCKET_BATCH_DELAY, writer.getBatchDelay());
+        options.addProperty(Constants.WEBSOCKET_MAX_IN_FLIGHT, pipeline.getMaxInFlight());
+        WebSocketResponse response = new WebSocketResponse();
+        response.addValue("options", options, null);
+        logger.debug("server/options action completed. Session {}", session.getId());
+        return response;
+    }
 }
@@ -17,6 +17,7 @@ import com.devicehive.model.Equipment;
 import com.devicehive.model.NullableWrapper;
 import com.devicehive.model.updates.DeviceUpdate;
 import com.devicehive.service.DeviceService;
+import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
@@ -25,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.security.PermitAll;
@@ -184,4 +186,47 @@ public class DeviceHandlers extends WebsocketHandlers {
         return new WebSocketResponse();
     }
 
+    /**
+     * Registers or updates several devices at once, each in the same way as device/save. Devices are saved in one
+     * transaction, so if any of them fails, none is saved.
+     *
+     * @param message Json object with the following structure
+     *                <pre>
+     *                {
+     *                  "action": {string},
+     *                  "requestId": {object},
+     *                  "devices": [
+     *                  {
+     *                    "id": {guid},
+     *                    "key": {string},
+     *                    "name": {string},
+     *                    "status": {string},
+     *                    "data": {object},
+     *                    "network": {integer or object},
+     *                    "deviceClass": {integer or object},
+     *                    "equipment": [{equipment}]
+     *                  }
+     *                  ]
+     *                }
+     *                </pre>
+     * @param session Current session
+     * @return Json object with the following structure
+     *         <pre>
+     *         {
+     *           "action": {string},
+     *           "status": {string},
+     *           "requestId": {object}
+     *         }
+     *         </pre>
+     */
+    @Action(value = "device/save/batch")
+    @PermitAll
+    public WebSocketResponse processDeviceSaveBatch(JsonObject message, Session session) {
+        logger.debug("device/save/batch process started for session {}", session.getId());
+        List<DeviceUpdate> devices = ServerResponsesFactory.parseDeviceUpdates(message.get(Constants.DEVICES));
+        deviceService.deviceSaveBatchAndNotify(devices, hiveSecurityContext.getHivePrincipal());
+        logger.debug("device/save/batch process ended for session  {}", session.getId());
+        return new WebSocketResponse();
+    }
+
 }
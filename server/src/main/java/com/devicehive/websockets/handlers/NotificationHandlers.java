@@ -22,8 +22,6 @@ import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
-import com.devicehive.websockets.util.AsyncMessageSupplier;
-import com.devicehive.websockets.util.FlushQueue;
 import com.devicehive.websockets.util.SubscriptionSessionMap;
 
 import org.slf4j.Logger;
@@ -39,7 +37,6 @@ import java.util.UUID;
 
 import javax.annotation.security.RolesAllowed;
 import javax.ejb.EJB;
-import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.websocket.Session;
 
@@ -55,6 +52,7 @@ import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_F
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_DEVICE;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static javax.servlet.http.HttpServletResponse.SC_GONE;
 
 
 public class NotificationHandlers extends WebsocketHandlers {
@@ -67,16 +65,11 @@ public class NotificationHandlers extends WebsocketHandlers {
     @EJB
     private DeviceNotificationService deviceNotificationService;
     @EJB
-    private AsyncMessageSupplier asyncMessageDeliverer;
-    @EJB
     private TimestampService timestampService;
     @EJB
     private SubscriptionSessionMap subscriptionSessionMap;
     @Inject
     private HiveSecurityContext hiveSecurityContext;
-    @Inject
-    @FlushQueue
-    private Event<Session> event;
 
     @Action(value = "notification/subscribe")
     @RolesAllowed({HiveRoles.ADMIN, HiveRoles.CLIENT, HiveRoles.KEY})
@@ -135,6 +128,9 @@ public class NotificationHandlers extends WebsocketHandlers {
         state.getNotificationSubscriptionsLock().lock();
         try {
             logger.debug("notification/subscribe action. Session {}", session.getId());
+            if (state.isClosed()) {
+                throw new HiveException(Messages.SESSION_CLOSED, SC_GONE);
+            }
             List<NotificationSubscription> nsList = new ArrayList<>();
             UUID reqId = UUID.randomUUID();
             if (devices != null) {
@@ -169,14 +165,14 @@ public class NotificationHandlers extends WebsocketHandlers {
                 deviceNotificationService.getDeviceNotificationList(devices, names, timestamp, principal);
             if (!notifications.isEmpty()) {
                 for (DeviceNotification notification : notifications) {
-                    state.getQueue().add(ServerResponsesFactory.createNotificationInsertMessage(notification, reqId));
+                    state.getWriter().enqueue(ServerResponsesFactory.createNotificationInsertMessage(notification, reqId));
                 }
             }
             return reqId;
         } finally {
             state.getNotificationSubscriptionsLock().unlock();
             logger.debug("deliver messages process for session" + session.getId());
-            asyncMessageDeliverer.deliverMessages(session);
+            HiveWebsocketSessionState.get(session).getWriter().flush();
         }
     }
 
@@ -225,7 +221,7 @@ public class NotificationHandlers extends WebsocketHandlers {
         } finally {
             state.getNotificationSubscriptionsLock().unlock();
             logger.debug("deliver messages process for session" + session.getId());
-            event.fire(session);
+            state.getWriter().flush();
         }
         logger.debug("notification/unsubscribe completed for session {}", session.getId());
         return new WebSocketResponse();
@@ -0,0 +1,183 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+import com.devicehive.auth.websockets.WebsocketActionRequirement;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.json.strategies.JsonPolicyApply;
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.websockets.converters.WebSocketResponse;
+import com.devicehive.websockets.handlers.annotations.WsParam;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.websocket.Session;
+
+/**
+ * Websocket action bound to its handler. Handler method is invoked through method handle prepared once, parameters are
+ * described once as well, so dispatching a request involves no reflection.
+ */
+final class WebsocketAction {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final String name;
+    private final Method method;
+    private final MethodHandle invoker;
+    private final List<WebsocketParameterDescriptor> parameters;
+    private final Map<String, WebsocketParameterDescriptor> streamingParameters;
+    private final WebsocketActionRequirement requirement;
+
+    private WebsocketAction(String name, Method method, MethodHandle invoker,
+                            List<WebsocketParameterDescriptor> parameters,
+                            Map<String, WebsocketParameterDescriptor> streamingParameters,
+                            WebsocketActionRequirement requirement) {
+        this.name = name;
+        this.method = method;
+        this.invoker = invoker;
+        this.parameters = parameters;
+        this.streamingParameters = streamingParameters;
+        this.requirement = requirement;
+    }
+
+    /**
+     * @param index index of the action, used to cache authorization decisions
+     * @throws IllegalStateException if the method can not be an action
+     */
+    static WebsocketAction of(String name, Object handler, Method method, int index) {
+        Preconditions.checkState(method.getReturnType().equals(WebSocketResponse.class),
+                                 "Method should have %s return type", WebSocketResponse.class);
+        List<WebsocketParameterDescriptor> parameters = describeParameters(method);
+        MethodHandle invoker;
+        try {
+            method.setAccessible(true);
+            invoker = MethodHandles.lookup().unreflect(method)
+                .bindTo(handler)
+                .asSpreader(Object[].class, parameters.size())
+                .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Action " + name + " is not accessible", e);
+        }
+        return new WebsocketAction(name, method, invoker, parameters, getStreamingParameters(parameters),
+                                   WebsocketActionRequirement.of(index, method));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    List<WebsocketParameterDescriptor> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return parameters that may be bound while the request is being read, no parameters if the action needs the
+     *         whole request
+     */
+    Map<String, WebsocketParameterDescriptor> getStreamingParameters() {
+        return streamingParameters;
+    }
+
+    WebsocketActionRequirement getRequirement() {
+        return requirement;
+    }
+
+    Object[] bindArguments(WebsocketRequest request, Session session) {
+        if (request.getBindingError() != null) {
+            throw request.getBindingError();
+        }
+        Object[] values = new Object[parameters.size()];
+        JsonObject tree = request.getTree();
+        for (int i = 0; i < values.length; i++) {
+            WebsocketParameterDescriptor descriptor = parameters.get(i);
+            String parameterName = descriptor.getName();
+            if (descriptor.isSession()) {
+                values[i] = session;
+            } else if (descriptor.isRequest()) {
+                values[i] = parameterName != null ? tree.getAsJsonObject(parameterName) : tree;
+            } else if (request.isBound(parameterName)) {
+                values[i] = request.getBoundValue(parameterName);
+            } else {
+                JsonElement element = tree.get(parameterName);
+                try {
+                    values[i] = element != null ? descriptor.getAdapter().fromJsonTree(element) : null;
+                } catch (IllegalStateException ex) {
+                    // tree reader reports type mismatch this way, respond as to malformed parameter
+                    throw new JsonSyntaxException(ex);
+                }
+            }
+        }
+        return values;
+    }
+
+    WebSocketResponse invoke(Object[] arguments) {
+        try {
+            return (WebSocketResponse) (Object) invoker.invokeExact(arguments);
+        } catch (Throwable ex) {
+            Throwables.propagateIfPossible(ex);
+            throw new HiveException(ex.getMessage(), ex);
+        }
+    }
+
+    private static List<WebsocketParameterDescriptor> describeParameters(Method method) {
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        Annotation[][] allAnnotations = method.getParameterAnnotations();
+        ImmutableList.Builder<WebsocketParameterDescriptor> descriptors = ImmutableList.builder();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            String name = null;
+            JsonPolicyDef.Policy jsonPolicy = null;
+            for (Annotation currentParamAnnotation : allAnnotations[i]) {
+                if (currentParamAnnotation instanceof WsParam) {
+                    name = ((WsParam) currentParamAnnotation).value();
+                }
+                if (currentParamAnnotation instanceof JsonPolicyApply) {
+                    jsonPolicy = ((JsonPolicyApply) currentParamAnnotation).value();
+                }
+            }
+            WebsocketParameterDescriptor descriptor =
+                new WebsocketParameterDescriptor(name, parameterTypes[i], jsonPolicy);
+            Preconditions.checkState(name != null || descriptor.isSession() || descriptor.isRequest(),
+                                     "Parameter %s of %s should be annotated with @WsParam", i, method);
+            descriptors.add(descriptor);
+        }
+        return descriptors.build();
+    }
+
+    private static Map<String, WebsocketParameterDescriptor> getStreamingParameters(
+        List<WebsocketParameterDescriptor> descriptors) {
+        Map<String, WebsocketParameterDescriptor> result = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (WebsocketParameterDescriptor descriptor : descriptors) {
+            if (descriptor.isRequest() && descriptor.getName() == null) {
+                return ImmutableMap.of();
+            }
+            if (!descriptor.isSession() && !descriptor.isRequest()
+                && result.put(descriptor.getName(), descriptor) != null) {
+                ambiguous.add(descriptor.getName());
+            }
+        }
+        // several parameters read from the same field are bound from the tree
+        result.keySet().removeAll(ambiguous);
+        return ImmutableMap.copyOf(result);
+    }
+}
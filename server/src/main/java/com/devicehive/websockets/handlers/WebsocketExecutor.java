@@ -1,39 +1,38 @@
 package com.devicehive.websockets.handlers;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
-import com.google.gson.Gson;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
-import com.devicehive.json.GsonFactory;
-import com.devicehive.json.strategies.JsonPolicyApply;
-import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.util.ThreadLocalVariablesKeeper;
+import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WebsocketController;
-import com.devicehive.websockets.handlers.annotations.WsParam;
+import com.devicehive.websockets.util.SessionPipeline;
+import com.devicehive.websockets.util.SessionWriter;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
@@ -54,16 +53,83 @@ public class WebsocketExecutor {
     @Any
     private Instance<WebsocketHandlers> handlers;
 
-    private ConcurrentMap<String, Pair<WebsocketHandlers, Method>> methodsCache = Maps.newConcurrentMap();
-    private ConcurrentMap<Method, List<WebsocketParameterDescriptor>> parametersCache = Maps.newConcurrentMap();
+    private Map<String, WebsocketAction> actions;
 
+    /**
+     * Builds dispatch table of all actions of websocket handlers.
+     *
+     * @throws IllegalStateException if some action is declared twice or its handler method is malformed
+     */
+    @PostConstruct
+    protected void registerActions() {
+        Map<String, WebsocketAction> registered = new HashMap<>();
+        for (WebsocketHandlers current : handlers) {
+            for (Method method : current.getClass().getMethods()) {
+                if (method.isAnnotationPresent(Action.class)) {
+                    String action = method.getAnnotation(Action.class).value();
+                    WebsocketAction previous = registered.get(action);
+                    Preconditions.checkState(previous == null, "Action %s is declared by both %s and %s", action,
+                                             previous != null ? previous.getMethod() : null, method);
+                    registered.put(action, WebsocketAction.of(action, current, method, registered.size()));
+                }
+            }
+        }
+        actions = ImmutableMap.copyOf(registered);
+        logger.info("{} websocket actions registered", actions.size());
+    }
+
+
+    /**
+     * Reads request from the frame in one pass and executes it. Object and array values of action parameters are bound
+     * right from the reader with precompiled type adapters, provided that the action is known by the time they are
+     * read, i.e. when action goes before them. Other values are kept in the request tree and bound afterwards.
+     *
+     * @return response, or null if the request is pipelined
+     * @throws JsonParseException if frame is not a well-formed JSON object
+     */
+    public JsonObject execute(Reader reader, Session session) {
+        return dispatch(readRequest(reader), session);
+    }
 
     public JsonObject execute(JsonObject request, Session session) {
+        return dispatch(new WebsocketRequest(request), session);
+    }
+
+    /**
+     * Executes request in the current thread, unless the session has pipelining enabled and the request has request id.
+     * Such request is submitted to the session pipeline, its response is sent through the session writer.
+     *
+     * @return response, or null if the request is pipelined
+     */
+    private JsonObject dispatch(final WebsocketRequest request, final Session session) {
+        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+        SessionPipeline pipeline = state != null ? state.getPipeline() : null;
+        if (pipeline == null || !pipeline.isEnabled() || !request.getTree().has(JsonMessageBuilder.REQUEST_ID)) {
+            return execute(request, session);
+        }
+        final SessionWriter writer = state.getWriter();
+        JsonElement ordered = request.getTree().get(Constants.WEBSOCKET_ORDERED);
+        try {
+            pipeline.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writer.send(execute(request, session));
+                }
+            }, ordered != null && ordered.isJsonPrimitive() && ordered.getAsBoolean());
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return execute(request, session);
+        }
+    }
+
+    private JsonObject execute(WebsocketRequest websocketRequest, Session session) {
+        JsonObject request = websocketRequest.getTree();
         JsonObject response = null;
         try {
             ThreadLocalVariablesKeeper.setRequest(request);
             ThreadLocalVariablesKeeper.setSession(session);
-            response = tryExecute(request, session);
+            response = tryExecute(websocketRequest, session);
         } catch (HiveException ex) {
             logger.error("Error executing the request", ex);
             response = JsonMessageBuilder.createError(ex).build();
@@ -111,18 +177,72 @@ public class WebsocketExecutor {
             .build();
     }
 
-    public JsonObject tryExecute(JsonObject request, Session session) {
-        Pair<WebsocketHandlers, Method> methodPair = getMethod(request);
-        List<Object> args = prepareArgumentValues(methodPair.getRight(), request, session);
+    private WebsocketRequest readRequest(Reader reader) {
+        DepthCountingJsonReader jsonReader = new DepthCountingJsonReader(reader);
+        jsonReader.setLenient(true);
+        JsonParser parser = new JsonParser();
+        WebsocketRequest request = new WebsocketRequest(new JsonObject());
+        try {
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonSyntaxException("Request should be an object");
+            }
+            jsonReader.beginObject();
+            Map<String, WebsocketParameterDescriptor> streaming = Collections.emptyMap();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                WebsocketParameterDescriptor descriptor = streaming.get(name);
+                JsonToken token = jsonReader.peek();
+                if (descriptor != null && (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY)) {
+                    int depth = jsonReader.getDepth();
+                    int begun = jsonReader.getBegun();
+                    try {
+                        request.bind(name, descriptor.getAdapter().read(jsonReader));
+                    } catch (JsonParseException | IllegalStateException ex) {
+                        // the action will respond with error, request id and action after the value are still read
+                        if (request.getBindingError() == null) {
+                            request.setBindingError(new JsonSyntaxException(ex));
+                        }
+                        try {
+                            if (jsonReader.getBegun() == begun) {
+                                jsonReader.skipValue();
+                            } else {
+                                jsonReader.skipTo(depth);
+                            }
+                        } catch (IOException | IllegalStateException malformed) {
+                            // the rest of the frame is not a valid JSON
+                            return request;
+                        }
+                    }
+                } else {
+                    JsonElement value = parser.parse(jsonReader);
+                    request.getTree().add(name, value);
+                    if (JsonMessageBuilder.ACTION.equals(name) && value.isJsonPrimitive()) {
+                        WebsocketAction action = actions.get(value.getAsString());
+                        if (action != null) {
+                            streaming = action.getStreamingParameters();
+                        }
+                    }
+                }
+            }
+            jsonReader.endObject();
+            if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document");
+            }
+        } catch (IOException ex) {
+            throw new JsonSyntaxException(ex);
+        }
+        return request;
+    }
+
+    private JsonObject tryExecute(WebsocketRequest request, Session session) {
+        WebsocketAction action = getAction(getActionName(request.getTree()));
+        Object[] args = action.bindArguments(request, session);
         WebSocketResponse response = null;
         try {
-            response = (WebSocketResponse) methodPair.getRight().invoke(methodPair.getLeft(), args.toArray());
-        } catch (InvocationTargetException ex) {
-            Throwable target = ex.getTargetException();
-            Throwables.propagateIfPossible(target);
-            throw new HiveException(target.getMessage(), target);
-        } catch (IllegalAccessException ex) {
-            throw HiveException.fatal();
+            ThreadLocalVariablesKeeper.setActionRequirement(action.getRequirement());
+            response = action.invoke(args);
+        } finally {
+            ThreadLocalVariablesKeeper.setActionRequirement(null);
         }
         if (response == null) {
             logger.error("[tryExecute]  response is null ");
@@ -132,7 +252,7 @@ public class WebsocketExecutor {
         }
     }
 
-    private String getAction(JsonObject request) {
+    private String getActionName(JsonObject request) {
         JsonElement action = request.get(JsonMessageBuilder.ACTION);
         if (action == null || !action.isJsonPrimitive()) {
             return null;
@@ -141,118 +261,83 @@ public class WebsocketExecutor {
     }
 
 
-    private Pair<WebsocketHandlers, Method> getMethod(JsonObject request) {
-        String action = getAction(request);
-
-        if (action == null) {
+    private WebsocketAction getAction(String name) {
+        if (name == null) {
             throw new JsonParseException("Action parameter is bad");
         }
-
-        Pair<WebsocketHandlers, Method> methodPair = methodsCache.get(action);
-        if (methodPair != null) {
-            return methodPair;
-        }
-
-        for (Iterator<WebsocketHandlers> iter = handlers.iterator(); iter.hasNext(); ) {
-            WebsocketHandlers current = iter.next();
-            Class<? extends WebsocketHandlers> currentClass = current.getClass();
-            boolean found = false;
-            for (final Method method : currentClass.getMethods()) {
-                if (method.isAnnotationPresent(Action.class)) {
-                    if (method.getAnnotation(Action.class).value().equals(action)) {
-                        Preconditions.checkState(method.getReturnType().equals(WebSocketResponse.class),
-                                                 "Method should have %s return type", WebSocketResponse.class);
-                        methodPair = ImmutablePair.of(current, method);
-                        found = true;
-                        break;
-                    }
-                }
-            }
-            if (found) {
-                break;
-            }
-        }
-        if (methodPair == null) {
-            throw new HiveException(String.format(Messages.UNKNOWN_ACTION_REQUESTED_WS, action),
+        WebsocketAction action = actions.get(name);
+        if (action == null) {
+            throw new HiveException(String.format(Messages.UNKNOWN_ACTION_REQUESTED_WS, name),
                                     HttpServletResponse.SC_NOT_FOUND);
         }
-        methodsCache.put(action, methodPair);
-        return methodPair;
+        return action;
     }
 
-    private List<WebsocketParameterDescriptor> getArguments(Method executedMethod) {
-        List<WebsocketParameterDescriptor> descriptors = parametersCache.get(executedMethod);
-        if (descriptors != null) {
-            return descriptors;
+    /**
+     * Counts objects and arrays the reader is in, so the rest of a value can be skipped after it failed to bind halfway.
+     */
+    private static class DepthCountingJsonReader extends JsonReader {
+
+        private int depth;
+        private int begun;
+
+        DepthCountingJsonReader(Reader in) {
+            super(in);
         }
-        Type[] parameterTypes = executedMethod.getGenericParameterTypes();
-        Annotation[][] allAnnotations = executedMethod.getParameterAnnotations();
-        descriptors = new ArrayList<>(parameterTypes.length);
-        for (int i = 0; i < parameterTypes.length; i++) {
-            Type type = parameterTypes[i];
-            String name = null;
-            JsonPolicyDef.Policy jsonPolicy = null;
-            for (Annotation currentParamAnnotation : allAnnotations[i]) {
-                if (currentParamAnnotation instanceof WsParam) {
-                    name = ((WsParam) currentParamAnnotation).value();
-                }
-                if (currentParamAnnotation instanceof JsonPolicyApply) {
-                    jsonPolicy = ((JsonPolicyApply) currentParamAnnotation).value();
-                }
-            }
-            descriptors.add(new WebsocketParameterDescriptor(name, type, jsonPolicy));
+
+        int getDepth() {
+            return depth;
         }
-        parametersCache.put(executedMethod, descriptors);
-        return descriptors;
-    }
 
-    private List<Object> prepareArgumentValues(Method executedMethod, JsonObject request, Session session) {
-        List<WebsocketParameterDescriptor> descriptors = getArguments(executedMethod);
-        List<Object> values = new ArrayList<>(descriptors.size());
+        /**
+         * @return number of objects and arrays begun so far
+         */
+        int getBegun() {
+            return begun;
+        }
 
-        for (WebsocketParameterDescriptor descriptor : descriptors) {
-            Type type = descriptor.getType();
-            if (Session.class.equals(type)) {
-                values.add(session);
-            } else {
-                String name = descriptor.getName();
-                if (JsonObject.class.equals(type)) {
-                    values.add(name != null ? request.getAsJsonObject(name) : request);
+        /**
+         * Skips the rest of objects and arrays until the reader is at given depth.
+         */
+        void skipTo(int target) throws IOException {
+            while (depth > target) {
+                JsonToken token = peek();
+                if (token == JsonToken.END_OBJECT) {
+                    endObject();
+                } else if (token == JsonToken.END_ARRAY) {
+                    endArray();
+                } else if (token == JsonToken.NAME) {
+                    nextName();
                 } else {
-                    Preconditions.checkNotNull(name);
-                    Gson gson = descriptor.getPolicy() == null
-                                ? GsonFactory.createGson()
-                                : GsonFactory.createGson(descriptor.getPolicy());
-                    values.add(gson.fromJson(request.get(name), type));
+                    skipValue();
                 }
             }
         }
-        return values;
-    }
-
-
-    private static class WebsocketParameterDescriptor {
-
-        private String name;
-        private Type type;
-        private JsonPolicyDef.Policy policy;
 
-        public WebsocketParameterDescriptor(String name, Type type, JsonPolicyDef.Policy policy) {
-            this.name = name;
-            this.type = type;
-            this.policy = policy;
+        @Override
+        public void beginArray() throws IOException {
+            super.beginArray();
+            depth++;
+            begun++;
         }
 
-        private String getName() {
-            return name;
+        @Override
+        public void endArray() throws IOException {
+            super.endArray();
+            depth--;
         }
 
-        private Type getType() {
-            return type;
+        @Override
+        public void beginObject() throws IOException {
+            super.beginObject();
+            depth++;
+            begun++;
         }
 
-        private JsonPolicyDef.Policy getPolicy() {
-            return policy;
+        @Override
+        public void endObject() throws IOException {
+            super.endObject();
+            depth--;
         }
     }
 }
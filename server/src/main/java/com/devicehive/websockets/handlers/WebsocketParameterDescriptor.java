@@ -0,0 +1,63 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.json.strategies.JsonPolicyDef;
+
+import java.lang.reflect.Type;
+
+import javax.websocket.Session;
+
+/**
+ * Parameter of websocket action with type adapter resolved for its type and JSON policy.
+ */
+final class WebsocketParameterDescriptor {
+
+    private final String name;
+    private final Type type;
+    private final JsonPolicyDef.Policy policy;
+    private final TypeAdapter<?> adapter;
+
+    WebsocketParameterDescriptor(String name, Type type, JsonPolicyDef.Policy policy) {
+        this.name = name;
+        this.type = type;
+        this.policy = policy;
+        if (isSession() || isRequest()) {
+            this.adapter = null;
+        } else {
+            Gson gson = policy == null ? GsonFactory.createGson() : GsonFactory.createGson(policy);
+            this.adapter = gson.getAdapter(TypeToken.get(type));
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    JsonPolicyDef.Policy getPolicy() {
+        return policy;
+    }
+
+    TypeAdapter<?> getAdapter() {
+        return adapter;
+    }
+
+    boolean isSession() {
+        return Session.class.equals(type);
+    }
+
+    /**
+     * @return true if parameter takes the request or its part as is
+     */
+    boolean isRequest() {
+        return JsonObject.class.equals(type);
+    }
+}
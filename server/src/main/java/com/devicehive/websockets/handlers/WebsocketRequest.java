@@ -0,0 +1,53 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request read from websocket frame. Action parameters bound while the frame was being read are kept apart from the
+ * rest of the request, which is kept as Gson tree.
+ */
+final class WebsocketRequest {
+
+    private final JsonObject tree;
+    private Map<String, Object> boundValues;
+    private JsonParseException bindingError;
+
+    WebsocketRequest(JsonObject tree) {
+        this.tree = tree;
+    }
+
+    JsonObject getTree() {
+        return tree;
+    }
+
+    boolean isBound(String name) {
+        return boundValues != null && boundValues.containsKey(name);
+    }
+
+    Object getBoundValue(String name) {
+        return boundValues != null ? boundValues.get(name) : null;
+    }
+
+    void bind(String name, Object value) {
+        if (boundValues == null) {
+            boundValues = new HashMap<>();
+        }
+        boundValues.put(name, value);
+    }
+
+    /**
+     * @return error of parameter binding, reported when the action is executed, so response still carries action and
+     *         request id
+     */
+    JsonParseException getBindingError() {
+        return bindingError;
+    }
+
+    void setBindingError(JsonParseException bindingError) {
+        this.bindingError = bindingError;
+    }
+}
@@ -1,12 +0,0 @@
-package com.devicehive.websockets.util;
-
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-
-import javax.inject.Qualifier;
-
-@Qualifier
-@Retention(RetentionPolicy.RUNTIME)
-public @interface FlushQueue {
-
-}
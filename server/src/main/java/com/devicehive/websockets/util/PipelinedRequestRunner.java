@@ -0,0 +1,20 @@
+package com.devicehive.websockets.util;
+
+import javax.ejb.Asynchronous;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Executes pipelined websocket requests on container threads. Asynchronous invocation provides the same request
+ * context the message thread has, so request scoped security context works for pipelined actions as well.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class PipelinedRequestRunner {
+
+    @Asynchronous
+    public void run(Runnable task) {
+        task.run();
+    }
+}
@@ -15,10 +15,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -43,13 +47,24 @@ import static javax.ejb.ConcurrencyManagementType.BEAN;
 public class SessionMonitor {
 
     private static final Logger logger = LoggerFactory.getLogger(SessionMonitor.class);
+    /**
+     * Number of timing wheel slots, one slot is processed every second, so every session is visited once per
+     * <code>WHEEL_SIZE</code> seconds.
+     */
+    private static final int WHEEL_SIZE = 30;
+    private static final long PING_INTERVAL = WHEEL_SIZE * 1000;
     private ConcurrentMap<String, Session> sessionMap;
+    private List<ConcurrentMap<String, Session>> wheel;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicInteger currentSlot = new AtomicInteger();
     @EJB
     private ConfigurationService configurationService;
     @EJB
     private DeviceActivityService deviceActivityService;
     @EJB
     private SubscriptionManager subscriptionManager;
+    @EJB
+    private SubscriptionSessionMap subscriptionSessionMap;
 
     @EJB
     private SessionMonitor self;
@@ -58,11 +73,13 @@ public class SessionMonitor {
         session.addMessageHandler(new MessageHandler.Whole<PongMessage>() {
             @Override
             public void onMessage(PongMessage message) {
-                logger.info("Pong received for session " + session.getId());
+                logger.debug("Pong received for session {}", session.getId());
+                WebsocketStatistics.get().pongReceived();
                 updateDeviceSession(session);
             }
         });
         sessionMap.put(session.getId(), session);
+        wheel.get(slotOf(nextSlot.getAndIncrement())).put(session.getId(), session);
         session.setMaxIdleTimeout(configurationService
                                       .getLong(Constants.WEBSOCKET_SESSION_PING_TIMEOUT,
                                                Constants.WEBSOCKET_SESSION_PING_TIMEOUT_DEFAULT));
@@ -70,6 +87,23 @@ public class SessionMonitor {
         session.setMaxTextMessageBufferSize(Constants.WEBSOCKET_MAX_BUFFER_SIZE);
     }
 
+    /**
+     * Drops the session with all its subscriptions.
+     */
+    public void unregisterSession(Session session) {
+        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+        if (state != null && !state.isClosed()) {
+            state.close(subscriptionManager, subscriptionSessionMap);
+        }
+        if (sessionMap.remove(session.getId()) != null) {
+            for (ConcurrentMap<String, Session> slot : wheel) {
+                if (slot.remove(session.getId()) != null) {
+                    break;
+                }
+            }
+        }
+    }
+
     public Session getSession(String sessionId) {
         Session session = sessionMap.get(sessionId);
         return session != null && session.isOpen() ? session : null;
@@ -91,24 +125,43 @@ public class SessionMonitor {
         }
     }
 
-    @Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
-    public synchronized void ping() {
-        for (Session session : sessionMap.values()) {
-            if (session.isOpen()) {
-                logger.info("Pinging session " + session.getId());
-                try {
-                    session.getAsyncRemote().sendPing(Constants.PING);
-                } catch (IOException ex) {
-                    logger.error("Error sending ping", ex);
-                    self.closePing(session);
-                }
-            } else {
-                logger.debug("Session " + session.getId() + " is closed.");
-                sessionMap.remove(session.getId());
+    /**
+     * Processes next slot of the timing wheel: pings its sessions and drops closed ones. Sessions that have received a
+     * message within the last ping interval are alive anyway, they are not pinged, but their devices are marked as
+     * active as if pong was received.
+     */
+    @Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+    public void ping() {
+        long activeSince = System.currentTimeMillis() - PING_INTERVAL;
+        ConcurrentMap<String, Session> slot = wheel.get(slotOf(currentSlot.getAndIncrement()));
+        for (Iterator<Session> iter = slot.values().iterator(); iter.hasNext(); ) {
+            Session session = iter.next();
+            if (!session.isOpen()) {
+                logger.debug("Session {} is closed", session.getId());
+                iter.remove();
+                unregisterSession(session);
+                continue;
+            }
+            HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+            if (state != null && state.getLastActivity() > activeSince) {
+                WebsocketStatistics.get().pingSkipped();
+                updateDeviceSession(session);
+                continue;
+            }
+            try {
+                session.getAsyncRemote().sendPing(Constants.PING.duplicate());
+                WebsocketStatistics.get().pingSent();
+            } catch (IOException ex) {
+                logger.error("Error sending ping", ex);
+                self.closePing(session);
             }
         }
     }
 
+    private static int slotOf(int counter) {
+        return (counter & Integer.MAX_VALUE) % WHEEL_SIZE;
+    }
+
 
     @Asynchronous
     public void closePing(Session session) {
@@ -122,6 +175,11 @@ public class SessionMonitor {
     @PostConstruct
     public void init() {
         sessionMap = new ConcurrentHashMap<>();
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ConcurrentHashMap<String, Session>());
+        }
+        WebsocketStatistics.register();
     }
 
     @PreDestroy
@@ -134,5 +192,9 @@ public class SessionMonitor {
             }
         }
         sessionMap.clear();
+        for (ConcurrentMap<String, Session> slot : wheel) {
+            slot.clear();
+        }
+        WebsocketStatistics.unregister();
     }
 }
@@ -0,0 +1,118 @@
+package com.devicehive.websockets.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits requests of the session executed concurrently when client has opted in for pipelining. Reader of the session
+ * waits until one of in-flight requests completes, so a client that sends requests faster than they are executed is
+ * slowed down by the transport. Ordered requests are additionally executed one after another in order they were
+ * submitted, unordered ones may overtake them.
+ */
+public class SessionPipeline {
+
+    private final Executor executor;
+    private final Object lock = new Object();
+    private final ConcurrentLinkedQueue<Runnable> ordered = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean orderedActive = new AtomicBoolean();
+    private int inFlight;
+    private volatile int maxInFlight = 1;
+
+    private final Runnable drainOrdered = new Runnable() {
+        @Override
+        public void run() {
+            Runnable task = ordered.poll();
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } finally {
+                orderedActive.set(false);
+                scheduleOrdered();
+            }
+        }
+    };
+
+    public SessionPipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return true if client has opted in for pipelining
+     */
+    public boolean isEnabled() {
+        return maxInFlight > 1;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight maximum number of requests executed concurrently, 1 disables pipelining
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        synchronized (lock) {
+            this.maxInFlight = maxInFlight;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Submits request for execution, waits while maximum number of requests is in flight.
+     *
+     * @param task    request execution, should deliver the response by itself
+     * @param inOrder true if request should be executed after all ordered requests submitted before it
+     */
+    public void submit(final Runnable task, boolean inOrder) throws InterruptedException {
+        acquire();
+        Runnable releasing = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    release();
+                }
+            }
+        };
+        if (inOrder) {
+            ordered.add(releasing);
+            scheduleOrdered();
+        } else {
+            execute(releasing);
+        }
+    }
+
+    private void scheduleOrdered() {
+        if (!ordered.isEmpty() && orderedActive.compareAndSet(false, true)) {
+            execute(drainOrdered);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            // executor has rejected the task, run it in the reader thread
+            task.run();
+        }
+    }
+
+    private void acquire() throws InterruptedException {
+        synchronized (lock) {
+            while (inFlight >= maxInFlight) {
+                lock.wait();
+            }
+            inFlight++;
+        }
+    }
+
+    private void release() {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+}
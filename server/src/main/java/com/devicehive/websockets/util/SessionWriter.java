@@ -0,0 +1,179 @@
+package com.devicehive.websockets.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.json.GsonFactory;
+import com.devicehive.websockets.converters.CborCodec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * Delivers queued messages to the websocket session. Messages are sent with async remote endpoint, at most one send
+ * per session is in flight, next message is sent from the shared executor when the previous one is completed. Drain
+ * is scheduled only when writer goes from idle to active, so enqueueing a message is a queue offer and a CAS.
+ * <p/>
+ * If client has opted in for batching, up to <code>batchSize</code> queued messages are sent as one JSON array frame.
+ * With <code>batchDelay</code> set, drain of a short queue is postponed for that many milliseconds to collect more
+ * messages.
+ * <p/>
+ * Sessions that negotiated binary subprotocol get frames encoded with {@link CborCodec}.
+ */
+public class SessionWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionWriter.class);
+
+    private final Session session;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentLinkedQueue<JsonElement> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean active = new AtomicBoolean();
+    private volatile int batchSize = 1;
+    private volatile long batchDelay = 0;
+    private volatile boolean binary;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            sendNext();
+        }
+    };
+
+    private final SendHandler completion = new SendHandler() {
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                logger.error("Session " + session.getId() + ": unable to deliver message", result.getException());
+            }
+            executor.execute(drain);
+        }
+    };
+
+    public SessionWriter(Session session, Executor executor, ScheduledExecutorService scheduler) {
+        this.session = session;
+        this.executor = executor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds message to the queue and schedules delivery.
+     */
+    public void send(JsonElement message) {
+        queue.add(message);
+        flush();
+    }
+
+    /**
+     * Adds message to the queue, delivery should be scheduled with {@link #flush()} later.
+     */
+    public void enqueue(JsonElement message) {
+        queue.add(message);
+    }
+
+    /**
+     * Schedules delivery of queued messages, unless it is in progress already.
+     */
+    public void flush() {
+        if (!queue.isEmpty() && active.compareAndSet(false, true)) {
+            long delay = batchDelay;
+            if (delay > 0 && queue.size() < batchSize) {
+                scheduler.schedule(drain, delay, TimeUnit.MILLISECONDS);
+            } else {
+                executor.execute(drain);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables batching of messages.
+     *
+     * @param batchSize  maximum number of messages in one frame, 1 disables batching
+     * @param batchDelay time in milliseconds to wait for more messages before sending a frame
+     */
+    public void setBatching(int batchSize, long batchDelay) {
+        this.batchSize = batchSize;
+        this.batchDelay = batchSize > 1 ? batchDelay : 0;
+    }
+
+    /**
+     * @return true if batching options are within allowed bounds
+     */
+    public static boolean isValidBatching(int batchSize, long batchDelay) {
+        return batchSize >= 1 && batchSize <= Constants.WEBSOCKET_MAX_BATCH_SIZE
+               && batchDelay >= 0 && batchDelay <= Constants.WEBSOCKET_MAX_BATCH_DELAY;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void sendNext() {
+        if (!session.isOpen()) {
+            logger.debug("Session {} is closed. {} messages are dropped", session.getId(), queue.size());
+            queue.clear();
+            active.set(false);
+            return;
+        }
+        JsonElement frame;
+        int messages;
+        int maxMessages = batchSize;
+        if (maxMessages > 1) {
+            JsonArray batch = new JsonArray();
+            JsonElement message;
+            while (batch.size() < maxMessages && (message = queue.poll()) != null) {
+                batch.add(message);
+            }
+            frame = batch.size() == 0 ? null : batch;
+            messages = batch.size();
+        } else {
+            frame = queue.poll();
+            messages = 1;
+        }
+        if (frame == null) {
+            active.set(false);
+            // message could be added after poll but before writer became idle
+            flush();
+            return;
+        }
+        try {
+            if (binary) {
+                session.getAsyncRemote().sendBinary(ByteBuffer.wrap(CborCodec.encode(frame)), completion);
+            } else {
+                session.getAsyncRemote().sendText(GsonFactory.createGson().toJson(frame), completion);
+            }
+            WebsocketStatistics.get().frameSent(messages);
+        } catch (RuntimeException e) {
+            logger.error("Session " + session.getId() + ": unable to deliver message", e);
+            executor.execute(drain);
+        }
+    }
+}
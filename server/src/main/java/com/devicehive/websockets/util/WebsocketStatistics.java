@@ -0,0 +1,107 @@
+package com.devicehive.websockets.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Websocket server counters. Counters are updated without locking from session writers and session monitor and are
+ * published as <code>com.devicehive:type=WebsocketStatistics</code> MXBean.
+ */
+public final class WebsocketStatistics implements WebsocketStatisticsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebsocketStatistics.class);
+    private static final WebsocketStatistics INSTANCE = new WebsocketStatistics();
+    private static final String OBJECT_NAME = "com.devicehive:type=WebsocketStatistics";
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong pingsSkipped = new AtomicLong();
+    private final AtomicLong pongsReceived = new AtomicLong();
+
+    private WebsocketStatistics() {
+    }
+
+    public static WebsocketStatistics get() {
+        return INSTANCE;
+    }
+
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to register websocket statistics MXBean", e);
+        }
+    }
+
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to unregister websocket statistics MXBean", e);
+        }
+    }
+
+    public void frameSent(int messages) {
+        framesSent.incrementAndGet();
+        messagesSent.addAndGet(messages);
+    }
+
+    public void pingSent() {
+        pingsSent.incrementAndGet();
+    }
+
+    public void pingSkipped() {
+        pingsSkipped.incrementAndGet();
+    }
+
+    public void pongReceived() {
+        pongsReceived.incrementAndGet();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    @Override
+    public double getMessagesPerFrame() {
+        long frames = framesSent.get();
+        return frames == 0 ? 0 : (double) messagesSent.get() / frames;
+    }
+
+    @Override
+    public long getPingsSent() {
+        return pingsSent.get();
+    }
+
+    @Override
+    public long getPingsSkipped() {
+        return pingsSkipped.get();
+    }
+
+    @Override
+    public long getPongsReceived() {
+        return pongsReceived.get();
+    }
+}
@@ -0,0 +1,25 @@
+package com.devicehive.websockets.util;
+
+/**
+ * Websocket server counters exposed through JMX.
+ */
+public interface WebsocketStatisticsMXBean {
+
+    long getMessagesSent();
+
+    long getFramesSent();
+
+    /**
+     * @return average number of messages delivered in one websocket frame
+     */
+    double getMessagesPerFrame();
+
+    long getPingsSent();
+
+    /**
+     * @return number of pings not sent because the session had recent traffic
+     */
+    long getPingsSkipped();
+
+    long getPongsReceived();
+}
@@ -0,0 +1,82 @@
+package com.devicehive.controller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Measures rows per second of notification history query with 10k rows against running server. Missing notifications
+ * are inserted to the device before measurement. Run with <code>mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=com.devicehive.controller.HistoryQueryBenchmark
+ * -Dexec.args="http://localhost:8080/DeviceHive/rest deviceGuid login password"</code>.
+ */
+public class HistoryQueryBenchmark {
+
+    private static final int ROWS = 10000;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Arguments: <rest url> <device guid> <login> <password>");
+            return;
+        }
+        String history = args[0] + "/device/" + args[1] + "/notification";
+        String authorization = "Basic " + Base64.encodeBase64String((args[2] + ":" + args[3]).getBytes(UTF8));
+
+        int existing = query(history + "?take=" + ROWS, authorization);
+        for (int i = existing; i < ROWS; i++) {
+            insert(history, authorization, "{\"notification\":\"benchmark\",\"parameters\":{\"value\":" + i + "}}");
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            query(history + "?take=" + ROWS, authorization);
+        }
+        long rows = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            rows += query(history + "?take=" + ROWS, authorization);
+        }
+        long total = System.nanoTime() - start;
+        System.out.printf("%d queries, %d ms per query, %d rows/sec%n", ITERATIONS,
+                          total / ITERATIONS / 1000000, rows * 1000000000L / total);
+    }
+
+    private static int query(String url, String authorization) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Authorization", authorization);
+        try (InputStream input = connection.getInputStream();
+             Reader reader = new InputStreamReader(input, UTF8)) {
+            JsonArray result = new JsonParser().parse(reader).getAsJsonArray();
+            return result.size();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void insert(String url, String authorization, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Authorization", authorization);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(UTF8));
+        }
+        if (connection.getResponseCode() >= 300) {
+            throw new IOException("Notification insert failed with status " + connection.getResponseCode());
+        }
+        connection.disconnect();
+    }
+}
@@ -0,0 +1,236 @@
+package com.devicehive.controller;
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.auth.HiveSecurityContext;
+import com.devicehive.configuration.Constants;
+import com.devicehive.dao.DeviceCommandDAO;
+import com.devicehive.dao.DeviceNotificationDAO;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceClass;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.service.DeviceCommandService;
+import com.devicehive.service.DeviceNotificationService;
+import com.devicehive.service.DeviceService;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Gets command and notification by id through the controllers. Messages are read the way container reads them outside
+ * of transaction: persistence context is closed as soon as the lookup returns, so anything lazy the controller touches
+ * fails.
+ */
+@RunWith(JUnit4.class)
+public class MessageByIdTest {
+
+    private static EntityManagerFactory entityManagerFactory;
+    private static Device device;
+    private static Device otherDevice;
+    private static long commandId;
+    private static long notificationId;
+
+    private final HiveSecurityContext hiveSecurityContext = new HiveSecurityContext();
+    private DeviceCommandService commandService;
+    private DeviceNotificationService notificationService;
+    private DeviceService deviceService;
+
+    @BeforeClass
+    public static void populate() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:messages;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.transactionType", "RESOURCE_LOCAL");
+        properties.put("javax.persistence.jtaDataSource", dataSource);
+        properties.put("javax.persistence.validation.mode", "none");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        properties.put("hibernate.transaction.jta.platform",
+                       "org.hibernate.engine.transaction.jta.platform.internal.NoJtaPlatform");
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        entityManagerFactory = Persistence.createEntityManagerFactory(Constants.PERSISTENCE_UNIT, properties);
+
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            DeviceClass deviceClass = new DeviceClass();
+            deviceClass.setName("test");
+            deviceClass.setVersion("1");
+            em.persist(deviceClass);
+            device = createDevice(em, deviceClass);
+            otherDevice = createDevice(em, deviceClass);
+
+            DeviceCommand command = new DeviceCommand();
+            command.setCommand("test");
+            command.setDevice(device);
+            em.persist(command);
+            em.flush();
+            // updated command is returned by wait at once
+            command.setStatus("done");
+
+            DeviceNotification notification = new DeviceNotification();
+            notification.setNotification("test");
+            notification.setDevice(device);
+            em.persist(notification);
+            em.getTransaction().commit();
+            commandId = command.getId();
+            notificationId = notification.getId();
+        } finally {
+            em.close();
+        }
+    }
+
+    @AfterClass
+    public static void close() {
+        entityManagerFactory.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        commandService = new DeviceCommandService();
+        setField(commandService, "commandDAO", new DeviceCommandDAO() {
+            @Override
+            public DeviceCommand findById(Long id) {
+                EntityManager em = entityManagerFactory.createEntityManager();
+                try {
+                    setField(this, DeviceCommandDAO.class, "em", em);
+                    return super.findById(id);
+                } finally {
+                    em.close();
+                }
+            }
+        });
+        notificationService = new DeviceNotificationService();
+        setField(notificationService, "deviceNotificationDAO", new DeviceNotificationDAO() {
+            @Override
+            public DeviceNotification findById(long id) {
+                EntityManager em = entityManagerFactory.createEntityManager();
+                try {
+                    setField(this, DeviceNotificationDAO.class, "em", em);
+                    return super.findById(id);
+                } finally {
+                    em.close();
+                }
+            }
+        });
+        deviceService = new DeviceService() {
+            @Override
+            public Device findByGuidWithPermissionsCheck(String guid, HivePrincipal principal) {
+                return device.getGuid().equals(guid) ? device : otherDevice;
+            }
+        };
+    }
+
+    @Test
+    public void waitCommandTest() throws Exception {
+        assertEquals(Response.Status.OK.getStatusCode(), waitCommand(device).getStatus());
+    }
+
+    @Test
+    public void waitCommandOfOtherDeviceTest() throws Exception {
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), waitCommand(otherDevice).getStatus());
+    }
+
+    @Test
+    public void getNotificationTest() throws Exception {
+        Response response = notificationController().get(device.getGuid(), notificationId);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(notificationId, (long) ((DeviceNotification) response.getEntity()).getId());
+    }
+
+    @Test
+    public void getNotificationOfOtherDeviceTest() throws Exception {
+        Response response = notificationController().get(otherDevice.getGuid(), notificationId);
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    private Response waitCommand(Device target) throws Exception {
+        DeviceCommandController controller = new DeviceCommandController();
+        setField(controller, "commandService", commandService);
+        setField(controller, "deviceService", deviceService);
+        setField(controller, "hiveSecurityContext", hiveSecurityContext);
+        setField(controller, "mes", implement(ManagedExecutorService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("submit".equals(method.getName())) {
+                    ((Runnable) args[0]).run();
+                }
+                return null;
+            }
+        }));
+        final Object[] result = new Object[1];
+        controller.wait(target.getGuid(), commandId, 0, implement(AsyncResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("resume".equals(method.getName())) {
+                    result[0] = args[0];
+                    return true;
+                }
+                return null;
+            }
+        }));
+        if (result[0] instanceof Throwable) {
+            throw new AssertionError(result[0]);
+        }
+        return (Response) result[0];
+    }
+
+    private DeviceNotificationController notificationController() throws Exception {
+        DeviceNotificationController controller = new DeviceNotificationController();
+        setField(controller, "notificationService", notificationService);
+        setField(controller, "deviceService", deviceService);
+        setField(controller, "hiveSecurityContext", hiveSecurityContext);
+        return controller;
+    }
+
+    private static Device createDevice(EntityManager em, DeviceClass deviceClass) {
+        Device device = new Device();
+        device.setGuid(UUID.randomUUID().toString());
+        device.setKey("key");
+        device.setName("test");
+        device.setDeviceClass(deviceClass);
+        em.persist(device);
+        return device;
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        setField(target, target.getClass(), name, value);
+    }
+
+    private static void setField(Object target, Class<?> declaringClass, String name, Object value) {
+        try {
+            Field field = declaringClass.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T implement(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
@@ -0,0 +1,149 @@
+package com.devicehive.dao;
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceClass;
+import com.devicehive.model.Equipment;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+
+/**
+ * Compares device list page query with fetch joins paginated in memory, as it was done before, with the two-phase
+ * query of {@link DeviceDAO#getList}. 100k devices of 100 device classes with 20 equipment each are stored in
+ * in-memory H2 in PostgreSQL mode. Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.devicehive.dao.DeviceListBenchmark</code>.
+ */
+public class DeviceListBenchmark {
+
+    private static final int DEVICES = 100000;
+    private static final int DEVICE_CLASSES = 100;
+    private static final int EQUIPMENT_PER_CLASS = 20;
+    private static final int TAKE = 100;
+    private static final int WARMUP = 1;
+    private static final int ITERATIONS = 3;
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        EntityManagerFactory entityManagerFactory = createEntityManagerFactory();
+        try {
+            populate(entityManagerFactory);
+            for (int skip : new int[]{0, DEVICES / 2}) {
+                System.out.printf("skip %d: fetch join %d ms per page, two-phase %d ms per page%n", skip,
+                                  measure(entityManagerFactory, skip, false),
+                                  measure(entityManagerFactory, skip, true));
+            }
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+
+    private static long measure(EntityManagerFactory entityManagerFactory, int skip, boolean twoPhase)
+        throws ReflectiveOperationException {
+        long total = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            EntityManager em = entityManagerFactory.createEntityManager();
+            try {
+                long start = System.nanoTime();
+                List<Device> devices = twoPhase ? twoPhase(em, skip) : fetchJoin(em, skip);
+                if (devices.size() != TAKE) {
+                    throw new IllegalStateException("Unexpected page size " + devices.size());
+                }
+                if (i >= WARMUP) {
+                    total += System.nanoTime() - start;
+                }
+            } finally {
+                em.close();
+            }
+        }
+        return total / ITERATIONS / 1000000;
+    }
+
+    private static List<Device> fetchJoin(EntityManager em, int skip) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<Device> criteria = criteriaBuilder.createQuery(Device.class);
+        Root<Device> from = criteria.from(Device.class);
+        from.fetch("network", JoinType.LEFT);
+        from.fetch("deviceClass").fetch("equipment", JoinType.LEFT);
+        criteria.orderBy(criteriaBuilder.asc(from.get("id")));
+        TypedQuery<Device> query = em.createQuery(criteria);
+        query.setFirstResult(skip);
+        query.setMaxResults(TAKE);
+        return query.getResultList();
+    }
+
+    private static List<Device> twoPhase(EntityManager em, int skip) throws ReflectiveOperationException {
+        DeviceDAO deviceDAO = new DeviceDAO();
+        Field field = DeviceDAO.class.getDeclaredField("em");
+        field.setAccessible(true);
+        field.set(deviceDAO, em);
+        return deviceDAO.getList(null, null, null, null, null, null, null, null, null, null, TAKE, skip, null, null);
+    }
+
+    private static void populate(EntityManagerFactory entityManagerFactory) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Long[] deviceClassIds = new Long[DEVICE_CLASSES];
+            for (int i = 0; i < DEVICE_CLASSES; i++) {
+                DeviceClass deviceClass = new DeviceClass();
+                deviceClass.setName("benchmark");
+                deviceClass.setVersion(String.valueOf(i));
+                em.persist(deviceClass);
+                for (int j = 0; j < EQUIPMENT_PER_CLASS; j++) {
+                    Equipment equipment = new Equipment();
+                    equipment.setName("equipment " + j);
+                    equipment.setCode("code" + i + "." + j);
+                    equipment.setType("sensor");
+                    equipment.setDeviceClass(deviceClass);
+                    em.persist(equipment);
+                }
+                deviceClassIds[i] = deviceClass.getId();
+            }
+            for (int i = 0; i < DEVICES; i++) {
+                Device device = new Device();
+                device.setGuid(UUID.randomUUID().toString());
+                device.setKey("key");
+                device.setName("device " + i);
+                device.setDeviceClass(em.getReference(DeviceClass.class, deviceClassIds[i % DEVICE_CLASSES]));
+                em.persist(device);
+                if (i % 1000 == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static EntityManagerFactory createEntityManagerFactory() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:devices;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.transactionType", "RESOURCE_LOCAL");
+        properties.put("javax.persistence.jtaDataSource", dataSource);
+        properties.put("javax.persistence.validation.mode", "none");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        properties.put("hibernate.transaction.jta.platform",
+                       "org.hibernate.engine.transaction.jta.platform.internal.NoJtaPlatform");
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        return Persistence.createEntityManagerFactory(Constants.PERSISTENCE_UNIT, properties);
+    }
+}
@@ -0,0 +1,114 @@
+package com.devicehive.dao;
+
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceClass;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceEquipment;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.Equipment;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.Network;
+import com.devicehive.model.OAuthClient;
+import com.devicehive.model.OAuthGrant;
+import com.devicehive.model.User;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Configuration;
+
+import java.util.UUID;
+
+/**
+ * Measures notification insert throughput with and without JDBC batching. Ids are allocated from the sequence in
+ * blocks, as on the server. In-memory H2 in PostgreSQL mode stands in for the database, so round trips are much
+ * cheaper than over the network and the real difference is larger. Run with <code>mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=com.devicehive.dao.NotificationInsertBenchmark</code>.
+ */
+public class NotificationInsertBenchmark {
+
+    private static final int NOTIFICATIONS = 200000;
+    private static final int NOTIFICATIONS_PER_TRANSACTION = 100;
+    private static final Class<?>[] ENTITIES = {User.class, Device.class, DeviceClass.class, DeviceCommand.class,
+                                                DeviceEquipment.class, DeviceNotification.class, Equipment.class,
+                                                Network.class, AccessKey.class, AccessKeyPermission.class,
+                                                OAuthClient.class, OAuthGrant.class,
+                                                com.devicehive.model.Configuration.class};
+
+    public static void main(String[] args) {
+        for (int batchSize : new int[]{1, 50}) {
+            SessionFactory sessionFactory = createSessionFactory(batchSize);
+            try {
+                Device device = createDevice(sessionFactory);
+                insert(sessionFactory, device, NOTIFICATIONS / 10);
+                long start = System.nanoTime();
+                insert(sessionFactory, device, NOTIFICATIONS);
+                long total = System.nanoTime() - start;
+                System.out.printf("batch size %d: %d notifications in %d ms, %d inserts/sec%n", batchSize,
+                                  NOTIFICATIONS, total / 1000000, NOTIFICATIONS * 1000000000L / total);
+            } finally {
+                sessionFactory.close();
+            }
+        }
+    }
+
+    private static void insert(SessionFactory sessionFactory, Device device, int count) {
+        for (int i = 0; i < count; i += NOTIFICATIONS_PER_TRANSACTION) {
+            Session session = sessionFactory.openSession();
+            Transaction transaction = session.beginTransaction();
+            Device reference = (Device) session.load(Device.class, device.getId());
+            for (int j = 0; j < NOTIFICATIONS_PER_TRANSACTION; j++) {
+                DeviceNotification notification = new DeviceNotification();
+                notification.setNotification("temperature");
+                notification.setParameters(new JsonStringWrapper("{\"value\": " + (i + j) + "}"));
+                notification.setDevice(reference);
+                session.persist(notification);
+            }
+            transaction.commit();
+            session.close();
+        }
+    }
+
+    private static Device createDevice(SessionFactory sessionFactory) {
+        Session session = sessionFactory.openSession();
+        Transaction transaction = session.beginTransaction();
+        DeviceClass deviceClass = new DeviceClass();
+        deviceClass.setName("benchmark");
+        deviceClass.setVersion("1.0");
+        session.persist(deviceClass);
+        Device device = new Device();
+        device.setGuid(UUID.randomUUID().toString());
+        device.setKey("key");
+        device.setName("benchmark");
+        device.setDeviceClass(deviceClass);
+        session.persist(device);
+        transaction.commit();
+        session.close();
+        return device;
+    }
+
+    private static SessionFactory createSessionFactory(int batchSize) {
+        Configuration configuration = new Configuration();
+        for (Class<?> entity : ENTITIES) {
+            configuration.addAnnotatedClass(entity);
+        }
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url",
+                                  "jdbc:h2:mem:benchmark" + batchSize + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.setProperty("javax.persistence.validation.mode", "none");
+        // same as in persistence.xml
+        configuration.setProperty("hibernate.id.new_generator_mappings", "true");
+        configuration.setProperty("hibernate.id.optimizer.pooled.prefer_lo", "true");
+        configuration.setProperty("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+        configuration.setProperty("hibernate.order_inserts", "true");
+        StandardServiceRegistry registry =
+            new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
+        return configuration.buildSessionFactory(registry);
+    }
+}
@@ -0,0 +1,138 @@
+package com.devicehive.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks replica lag against WAL locations of the primary, the way PostgreSQL reports them.
+ */
+@RunWith(JUnit4.class)
+public class ReplicaLagMonitorTest {
+
+    private static final long MAX_LAG = 5000;
+
+    private final ReplicaLagMonitor monitor = new ReplicaLagMonitor();
+    private String primaryLocation;
+    private String replayLocation;
+
+    @Before
+    public void setUp() throws Exception {
+        setField(monitor, "em", entityManager(new Location() {
+            @Override
+            public String get() {
+                return primaryLocation;
+            }
+        }));
+        setField(monitor, "replicaEm", entityManager(new Location() {
+            @Override
+            public String get() {
+                return replayLocation;
+            }
+        }));
+        setField(monitor, "maxLag", MAX_LAG);
+    }
+
+    @Test
+    public void disconnectedStandbyTest() {
+        primaryLocation = "0/1000";
+        replayLocation = "0/1000";
+        monitor.check(0);
+        assertTrue(monitor.isUsable(null));
+
+        // standby has replayed everything it received, but receives nothing since
+        for (long now = 1000; now <= MAX_LAG + 1000; now += 1000) {
+            primaryLocation = "0/" + Long.toHexString(0x1000 + now);
+            monitor.check(now);
+        }
+        assertFalse(monitor.isUsable(null));
+
+        // reconnected standby catches up
+        replayLocation = primaryLocation;
+        monitor.check(MAX_LAG + 2000);
+        assertTrue(monitor.isUsable(null));
+    }
+
+    @Test
+    public void slowStandbyTest() {
+        primaryLocation = "1/FFFFFF00";
+        replayLocation = "1/FFFFFF00";
+        monitor.check(0);
+        primaryLocation = "2/00000100";
+        monitor.check(1000);
+        assertTrue(monitor.isUsable(null));
+
+        // standby replays the sample taken at 1000 only at MAX_LAG + 2000, so it was behind by more than MAX_LAG
+        primaryLocation = "2/00000200";
+        monitor.check(MAX_LAG + 1000);
+        replayLocation = "2/00000100";
+        monitor.check(MAX_LAG + 2000);
+        assertFalse(monitor.isUsable(null));
+
+        monitor.check(MAX_LAG + 3000);
+        assertFalse(monitor.isUsable(null));
+        replayLocation = "2/00000200";
+        monitor.check(MAX_LAG + 4000);
+        assertTrue(monitor.isUsable(null));
+    }
+
+    @Test
+    public void replicaIsPrimaryTest() {
+        primaryLocation = "0/1000";
+        replayLocation = null;
+        monitor.check(0);
+        assertTrue(monitor.isUsable(null));
+    }
+
+    @Test
+    public void primaryUnavailableTest() {
+        primaryLocation = "0/1000";
+        replayLocation = "0/1000";
+        monitor.check(0);
+        primaryLocation = "unavailable";
+        monitor.check(1000);
+        assertFalse(monitor.isUsable(null));
+    }
+
+    private interface Location {
+
+        String get();
+    }
+
+    private static EntityManager entityManager(final Location location) {
+        final Query query = implement(Query.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getSingleResult".equals(method.getName()) ? location.get() : null;
+            }
+        });
+        return implement(EntityManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "createNativeQuery".equals(method.getName()) ? query : null;
+            }
+        });
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static <T> T implement(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
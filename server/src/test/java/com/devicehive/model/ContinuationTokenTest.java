@@ -0,0 +1,36 @@
+package com.devicehive.model;
+
+import com.devicehive.exceptions.HiveException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(JUnit4.class)
+public class ContinuationTokenTest {
+
+    @Test
+    public void formatParseTest() {
+        Timestamp timestamp = Timestamp.valueOf("2014-06-01 12:30:45.123456");
+        ContinuationToken token = ContinuationToken.parse(new ContinuationToken(timestamp, 42L, false).format());
+        assertEquals(timestamp, token.getTimestamp());
+        assertEquals(123456000, token.getTimestamp().getNanos());
+        assertEquals(42L, token.getId());
+        assertFalse(token.isAscending());
+    }
+
+    @Test(expected = HiveException.class)
+    public void malformedTokenTest() {
+        ContinuationToken.parse("bm90IGEgdG9rZW4");
+    }
+
+    @Test(expected = HiveException.class)
+    public void malformedNumberTest() {
+        ContinuationToken.parse(new ContinuationToken(new Timestamp(0), 1L, true).format().substring(2));
+    }
+}
@@ -0,0 +1,278 @@
+package com.devicehive.service;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.dao.DeviceEquipmentDAO;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceEquipment;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.HiveValidator;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.TimerService;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs equipment cache against an in-memory table that keeps the newest state of each device and code.
+ */
+@RunWith(JUnit4.class)
+public class DeviceEquipmentCacheTest {
+
+    private final DeviceEquipmentCache cache = new DeviceEquipmentCache();
+    private final Device device = new Device();
+    private final Map<String, DeviceEquipment> stored = new HashMap<>();
+    private final List<List<DeviceEquipment>> saved = new ArrayList<>();
+    private final List<List<Long>> published = new ArrayList<>();
+    private final List<Synchronization> synchronizations = new ArrayList<>();
+    private final Member localMember = implement(Member.class, new Identity());
+    private final Member otherMember = implement(Member.class, new Identity());
+    private MessageListener<ArrayList<Long>> invalidationListener;
+    private Object transactionKey;
+    private boolean failSave;
+
+    @Before
+    public void setUp() throws Exception {
+        device.setId(1L);
+        final Cluster cluster = implement(Cluster.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getLocalMember".equals(method.getName()) ? localMember : null;
+            }
+        });
+        final ITopic<?> topic = implement(ITopic.class, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "addMessageListener":
+                        invalidationListener = (MessageListener<ArrayList<Long>>) args[0];
+                        return "listener";
+                    case "publish":
+                        published.add((List<Long>) args[0]);
+                        return null;
+                    default:
+                        return null;
+                }
+            }
+        });
+        final HazelcastInstance hazelcast = implement(HazelcastInstance.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getTopic":
+                        return topic;
+                    case "getCluster":
+                        return cluster;
+                    default:
+                        return null;
+                }
+            }
+        });
+        setField(cache, "hazelcastService", new HazelcastService() {
+            @Override
+            public HazelcastInstance getHazelcast() {
+                return hazelcast;
+            }
+        });
+        setField(cache, "deviceEquipmentDAO", new DeviceEquipmentDAO() {
+            @Override
+            public List<DeviceEquipment> findByFK(Device device) {
+                List<DeviceEquipment> result = new ArrayList<>();
+                for (DeviceEquipment equipment : stored.values()) {
+                    if (equipment.getDevice().getId().equals(device.getId())) {
+                        result.add(copy(equipment));
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public void saveStates(List<DeviceEquipment> states) {
+                if (failSave) {
+                    throw new IllegalStateException("device_equipment_device_id_code_unique");
+                }
+                for (DeviceEquipment state : states) {
+                    String key = state.getDevice().getId() + "/" + state.getCode();
+                    DeviceEquipment existing = stored.get(key);
+                    if (existing == null || !existing.getTimestamp().after(state.getTimestamp())) {
+                        stored.put(key, copy(state));
+                    }
+                }
+                saved.add(states);
+            }
+        });
+        setField(cache, "configurationService", new ConfigurationService() {
+            @Override
+            public long getLong(String name, long defaultValue) {
+                return defaultValue;
+            }
+        });
+        setField(cache, "hiveValidator", new HiveValidator() {
+            @Override
+            public <T> void validate(T object) {
+            }
+        });
+        setField(cache, "timerService", implement(TimerService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+            }
+        }));
+        setField(cache, "transactionSynchronizationRegistry",
+                 implement(TransactionSynchronizationRegistry.class, new InvocationHandler() {
+                     @Override
+                     public Object invoke(Object proxy, Method method, Object[] args) {
+                         switch (method.getName()) {
+                             case "getTransactionKey":
+                                 return transactionKey;
+                             case "registerInterposedSynchronization":
+                                 synchronizations.add((Synchronization) args[0]);
+                                 return null;
+                             default:
+                                 return null;
+                         }
+                     }
+                 }));
+        cache.postConstruct();
+    }
+
+    @Test
+    public void coalescingTest() {
+        cache.update(state("temperature", 1000, "1"));
+        cache.update(state("temperature", 2000, "2"));
+        cache.update(state("humidity", 1000, "3"));
+        cache.flush();
+
+        assertEquals(1, saved.size());
+        assertEquals(2, saved.get(0).size());
+        assertEquals("2", stored.get("1/temperature").getParameters().getJsonString());
+        assertEquals(Arrays.asList(1L), published.get(0));
+
+        cache.flush();
+        assertEquals(1, saved.size());
+    }
+
+    @Test
+    public void rollbackTest() {
+        transactionKey = "transaction";
+        cache.update(state("temperature", 1000, "1"));
+        synchronizations.get(0).afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertNull(cache.getEquipment(device, "temperature"));
+        cache.flush();
+        assertTrue(saved.isEmpty());
+
+        cache.update(state("temperature", 2000, "2"));
+        assertNull(cache.getEquipment(device, "temperature"));
+        synchronizations.get(1).afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals("2", cache.getEquipment(device, "temperature").getParameters().getJsonString());
+    }
+
+    @Test
+    public void reloadTest() {
+        stored.put("1/temperature", state("temperature", 1000, "stored"));
+        stored.put("1/humidity", state("humidity", 3000, "written by another node"));
+        cache.update(state("temperature", 2000, "pending"));
+        cache.update(state("humidity", 2000, "older pending"));
+        cache.update(state("pressure", 2000, "new code"));
+
+        // another node flushes the device, states not flushed here yet still win over older stored ones
+        invalidationListener.onMessage(
+            new Message<>("topic", new ArrayList<>(Arrays.asList(device.getId())), 0, otherMember));
+        assertEquals("pending", cache.getEquipment(device, "temperature").getParameters().getJsonString());
+        assertEquals("written by another node",
+                     cache.getEquipment(device, "humidity").getParameters().getJsonString());
+        assertEquals("new code", cache.getEquipment(device, "pressure").getParameters().getJsonString());
+        assertEquals(3, cache.getEquipment(device).size());
+    }
+
+    @Test
+    public void failedFlushTest() {
+        cache.update(state("temperature", 1000, "1"));
+        cache.update(state("humidity", 1000, "2"));
+        failSave = true;
+        cache.flush();
+        assertTrue(saved.isEmpty());
+        assertTrue(published.isEmpty());
+
+        cache.update(state("temperature", 2000, "3"));
+        invalidationListener.onMessage(
+            new Message<>("topic", new ArrayList<>(Arrays.asList(device.getId())), 0, otherMember));
+        assertEquals("3", cache.getEquipment(device, "temperature").getParameters().getJsonString());
+        assertEquals("2", cache.getEquipment(device, "humidity").getParameters().getJsonString());
+
+        failSave = false;
+        cache.flush();
+        assertEquals(1, saved.size());
+        assertEquals("3", stored.get("1/temperature").getParameters().getJsonString());
+        assertEquals("2", stored.get("1/humidity").getParameters().getJsonString());
+    }
+
+    private DeviceEquipment state(String code, long timestamp, String parameters) {
+        DeviceEquipment equipment = new DeviceEquipment();
+        equipment.setDevice(device);
+        equipment.setCode(code);
+        equipment.setTimestamp(new Timestamp(timestamp));
+        equipment.setParameters(new JsonStringWrapper(parameters));
+        return equipment;
+    }
+
+    private static DeviceEquipment copy(DeviceEquipment equipment) {
+        DeviceEquipment copy = new DeviceEquipment();
+        copy.setDevice(equipment.getDevice());
+        copy.setCode(equipment.getCode());
+        copy.setTimestamp(equipment.getTimestamp());
+        copy.setParameters(equipment.getParameters());
+        return copy;
+    }
+
+    private static class Identity implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static <T> T implement(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
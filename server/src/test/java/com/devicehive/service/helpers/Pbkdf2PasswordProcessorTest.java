@@ -0,0 +1,37 @@
+package com.devicehive.service.helpers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class Pbkdf2PasswordProcessorTest {
+
+    @Test
+    public void checkPasswordTest() {
+        PasswordProcessor processor = new Pbkdf2PasswordProcessor(1000);
+        String salt = processor.generateSalt();
+        String hash = processor.hashPassword("secret", salt);
+        assertTrue(hash.length() <= 64);
+        assertTrue(processor.checkPassword("secret", salt, hash));
+        assertFalse(processor.checkPassword("Secret", salt, hash));
+        assertFalse(processor.checkPassword("secret", processor.generateSalt(), hash));
+    }
+
+    @Test
+    public void needsRehashTest() {
+        String salt = new Pbkdf2PasswordProcessor(1000).generateSalt();
+        String hash = new Pbkdf2PasswordProcessor(1000).hashPassword("secret", salt);
+        assertFalse(new Pbkdf2PasswordProcessor(1000).needsRehash(hash));
+        assertTrue(new Pbkdf2PasswordProcessor(2000).needsRehash(hash));
+        assertTrue(new Pbkdf2PasswordProcessor(2000).checkPassword("secret", salt, hash));
+
+        String legacySalt = new DefaultPasswordProcessor().generateSalt();
+        String legacyHash = new DefaultPasswordProcessor().hashPassword("secret", legacySalt);
+        assertTrue(new Pbkdf2PasswordProcessor(1000).needsRehash(legacyHash));
+        assertFalse(new Pbkdf2PasswordProcessor(1000).checkPassword("secret", legacySalt, legacyHash));
+    }
+}
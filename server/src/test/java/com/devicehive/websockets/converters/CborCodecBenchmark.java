@@ -0,0 +1,103 @@
+package com.devicehive.websockets.converters;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.ServerResponsesFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Compares size of messages and encoding/decoding time of JSON text and CBOR websocket frames for typical notification
+ * and command messages. Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.devicehive.websockets.converters.CborCodecBenchmark</code>.
+ */
+public class CborCodecBenchmark {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws Exception {
+        Device device = new Device();
+        device.setGuid(UUID.randomUUID().toString());
+
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(123456789L);
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        notification.setParameters(new JsonStringWrapper("{\"value\": 36.6, \"scale\": \"C\", \"sensor\": 3}"));
+        notification.setDevice(device);
+
+        DeviceCommand command = new DeviceCommand();
+        command.setId(987654321L);
+        command.setCommand("setState");
+        command.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        command.setParameters(new JsonStringWrapper("{\"equipment\": \"led\", \"state\": 1}"));
+        command.setLifetime(60);
+        command.setDevice(device);
+
+        run("notification/insert", ServerResponsesFactory.createNotificationInsertMessage(notification,
+                                                                                           UUID.randomUUID()));
+        run("command/insert", ServerResponsesFactory.createCommandInsertMessage(command, UUID.randomUUID()));
+    }
+
+    private static void run(String name, JsonObject message) throws Exception {
+        Gson gson = GsonFactory.createGson();
+        byte[] json = gson.toJson(message).getBytes(UTF8);
+        byte[] cbor = CborCodec.encode(message);
+        System.out.printf("%s: JSON %d bytes, CBOR %d bytes (%.0f%%)%n", name, json.length, cbor.length,
+                          100.0 * cbor.length / json.length);
+
+        measure(message, gson, WARMUP);
+        long[] times = measure(message, gson, ITERATIONS);
+        System.out.printf("%s: encode JSON %d ns, CBOR %d ns; decode JSON %d ns, CBOR %d ns per message%n", name,
+                          times[0] / ITERATIONS, times[1] / ITERATIONS, times[2] / ITERATIONS,
+                          times[3] / ITERATIONS);
+    }
+
+    private static long[] measure(JsonObject message, Gson gson, int iterations) throws Exception {
+        long[] times = new long[4];
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += gson.toJson(message).getBytes(UTF8).length;
+        }
+        times[0] = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += CborCodec.encode(message).length;
+        }
+        times[1] = System.nanoTime() - start;
+
+        String text = gson.toJson(message);
+        byte[] binary = CborCodec.encode(message);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonElement decoded = new JsonParser().parse(new StringReader(text));
+            sink += decoded.isJsonObject() ? 1 : 0;
+        }
+        times[2] = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonElement decoded = CborCodec.decode(new ByteArrayInputStream(binary), binary.length);
+            sink += decoded.isJsonObject() ? 1 : 0;
+        }
+        times[3] = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return times;
+    }
+}
@@ -0,0 +1,105 @@
+package com.devicehive.websockets.converters;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class CborCodecTest {
+
+    @Test
+    public void encodeTest() throws Exception {
+        // examples from RFC 7049, appendix A
+        assertEncoded("17", "23");
+        assertEncoded("1818", "24");
+        assertEncoded("1903e8", "1000");
+        assertEncoded("1b000000e8d4a51000", "1000000000000");
+        assertEncoded("3863", "-100");
+        assertEncoded("fb3ff199999999999a", "1.1");
+        assertEncoded("fa47c35000", "100000.0");
+        assertEncoded("f5", "true");
+        assertEncoded("f6", "null");
+        assertEncoded("6449455446", "\"IETF\"");
+        assertEncoded("8301820203820405", "[1, [2, 3], [4, 5]]");
+        assertEncoded("a26161016162820203", "{\"a\": 1, \"b\": [2, 3]}");
+    }
+
+    @Test
+    public void decodeTest() throws Exception {
+        assertEquals(parse("1000000"), decode("1a000f4240"));
+        assertEquals(parse("-1000"), decode("3903e7"));
+        assertEquals(parse("1.5"), decode("f93e00"));
+        assertEquals(parse("\"\\u00fc\""), decode("62c3bc"));
+        // indefinite length items
+        assertEquals(parse("[1, [2, 3], [4, 5]]"), decode("9f018202039f0405ffff"));
+        assertEquals(parse("{\"a\": 1, \"b\": [2, 3]}"), decode("bf61610161629f0203ffff"));
+        assertEquals(parse("\"streaming\""), decode("7f657374726561646d696e67ff"));
+    }
+
+    @Test
+    public void roundTripTest() throws Exception {
+        JsonObject message = parse("{\"action\": \"notification/insert\", \"requestId\": 42, "
+                                   + "\"deviceGuid\": \"e50d6085-2aba-48e9-b1c3-73c673e414be\", "
+                                   + "\"notification\": {\"notification\": \"temperature\", "
+                                   + "\"parameters\": {\"value\": 36.6, \"scale\": \"C\", \"valid\": true, "
+                                   + "\"history\": [35, -1, 1e3, null]}}}").getAsJsonObject();
+        byte[] encoded = CborCodec.encode(message);
+        assertEquals(message, CborCodec.decode(new ByteArrayInputStream(encoded), encoded.length));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void truncatedTest() throws Exception {
+        decode("a2616101616282");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void trailingDataTest() throws Exception {
+        decode("0101");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void forgedLengthTest() throws Exception {
+        // byte string of 2^31 - 1 bytes followed by a few bytes only
+        decode("5a7fffffff0102");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void forgedChunkLengthTest() throws Exception {
+        decode("7f7a7fffffff61ff");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void forgedArrayLengthTest() throws Exception {
+        decode("9b7fffffffffffffff01");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void tooLongMessageTest() throws Exception {
+        byte[] encoded = CborCodec.encode(parse("\"0123456789\""));
+        CborCodec.decode(new ByteArrayInputStream(encoded), encoded.length - 1);
+    }
+
+    private static void assertEncoded(String expectedHex, String json) throws Exception {
+        assertArrayEquals(Hex.decodeHex(expectedHex.toCharArray()), CborCodec.encode(parse(json)));
+    }
+
+    private static JsonElement decode(String hex) throws Exception {
+        byte[] bytes = Hex.decodeHex(hex.toCharArray());
+        return CborCodec.decode(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private static JsonElement parse(String json) {
+        return new JsonParser().parse(json);
+    }
+}
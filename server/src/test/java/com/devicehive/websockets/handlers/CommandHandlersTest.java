@@ -0,0 +1,175 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.auth.HiveSecurityContext;
+import com.devicehive.configuration.Constants;
+import com.devicehive.messages.bus.GlobalMessageBus;
+import com.devicehive.messages.bus.LocalMessageBus;
+import com.devicehive.messages.subscriptions.SubscriptionManager;
+import com.devicehive.model.Device;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.User;
+import com.devicehive.service.DeviceCommandService;
+import com.devicehive.service.DeviceService;
+import com.devicehive.websockets.HiveWebsocketSessionState;
+import com.devicehive.websockets.util.SessionWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.websocket.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Inserts command over websocket while the device answers it at once, before the insert handler returns.
+ */
+@RunWith(JUnit4.class)
+public class CommandHandlersTest {
+
+    private static final long COMMAND_ID = 42L;
+
+    private final SubscriptionManager subscriptionManager = new SubscriptionManager();
+    private final LocalMessageBus localMessageBus = new LocalMessageBus();
+    private final List<JsonElement> sent = new ArrayList<>();
+    private final List<Long> routed = new ArrayList<>();
+    private final Device device = new Device();
+    private final User user = new User();
+    private CommandHandlers handlers;
+    private Session session;
+
+    @Before
+    public void setUp() throws Exception {
+        device.setId(1L);
+        device.setGuid("device");
+        user.setId(2L);
+
+        final Map<String, Object> userProperties = new HashMap<>();
+        session = implement(Session.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getUserProperties":
+                        return userProperties;
+                    case "isOpen":
+                        return true;
+                    case "getId":
+                        return "session";
+                    default:
+                        return null;
+                }
+            }
+        });
+        HiveWebsocketSessionState state = new HiveWebsocketSessionState();
+        state.setWriter(new SessionWriter(session, null, null) {
+            @Override
+            public void enqueue(JsonElement message) {
+                sent.add(message);
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        userProperties.put(HiveWebsocketSessionState.KEY, state);
+
+        setField(localMessageBus, "subscriptionManager", subscriptionManager);
+        setField(localMessageBus, "mes", implement(ManagedExecutorService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("submit".equals(method.getName())) {
+                    ((Runnable) args[0]).run();
+                }
+                return null;
+            }
+        }));
+
+        HiveSecurityContext hiveSecurityContext = new HiveSecurityContext();
+        hiveSecurityContext.setHivePrincipal(new HivePrincipal(user, null, null));
+        handlers = new CommandHandlers();
+        setField(handlers, "subscriptionManager", subscriptionManager);
+        setField(handlers, "hiveSecurityContext", hiveSecurityContext);
+        setField(handlers, "deviceService", new DeviceService() {
+            @Override
+            public Device findByGuidWithPermissionsCheck(String guid, HivePrincipal principal) {
+                return device;
+            }
+        });
+        setField(handlers, "globalMessageBus", new GlobalMessageBus() {
+            @Override
+            public void routeCommandUpdates(Long commandId) {
+                routed.add(commandId);
+            }
+        });
+        setField(handlers, "commandService", new DeviceCommandService() {
+            @Override
+            public void submitDeviceCommand(DeviceCommand command, Device device, User user, Runnable beforeCommit) {
+                command.setId(COMMAND_ID);
+                command.setDevice(device);
+                command.setUser(user);
+                if (beforeCommit != null) {
+                    beforeCommit.run();
+                }
+                // device gets the command on commit and answers before the insert handler returns
+                DeviceCommand update = new DeviceCommand();
+                update.setId(COMMAND_ID);
+                update.setCommand(command.getCommand());
+                update.setDevice(device);
+                update.setUser(user);
+                update.setStatus("done");
+                localMessageBus.submitDeviceCommandUpdate(update);
+            }
+        });
+    }
+
+    @Test
+    public void updateBeforeInsertReturnsTest() throws Exception {
+        DeviceCommand command = new DeviceCommand();
+        command.setCommand("test");
+        handlers.processCommandInsert(device.getGuid(), command, session);
+
+        assertEquals(1, sent.size());
+        JsonObject update = sent.get(0).getAsJsonObject();
+        assertEquals("command/update", update.get("action").getAsString());
+        JsonObject updated = update.getAsJsonObject(Constants.COMMAND);
+        assertEquals(COMMAND_ID, updated.get("id").getAsLong());
+        assertEquals("done", updated.get("status").getAsString());
+        assertEquals(1, routed.size());
+        assertTrue(routed.contains(COMMAND_ID));
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Class<?> type = target.getClass();
+        while (type.getSuperclass() != null) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static <T> T implement(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
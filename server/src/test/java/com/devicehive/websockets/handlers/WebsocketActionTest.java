@@ -0,0 +1,123 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.websockets.converters.WebSocketResponse;
+import com.devicehive.websockets.handlers.annotations.Action;
+import com.devicehive.websockets.handlers.annotations.WsParam;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.security.PermitAll;
+import javax.websocket.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class WebsocketActionTest {
+
+    @Test
+    public void invokeTest() throws Exception {
+        TestHandlers handlers = new TestHandlers();
+        WebsocketAction action = WebsocketAction.of("test/echo", handlers,
+                                                    TestHandlers.class.getMethod("echo", String.class, List.class,
+                                                                                 JsonObject.class, Session.class), 0);
+        JsonObject tree = new JsonParser().parse("{\"action\": \"test/echo\", \"name\": \"value\", "
+                                                 + "\"numbers\": [1, 2, 3]}").getAsJsonObject();
+        WebsocketRequest request = new WebsocketRequest(tree);
+        Object[] arguments = action.bindArguments(request, null);
+        assertEquals("value", arguments[0]);
+        assertEquals(3, ((List<?>) arguments[1]).size());
+        assertSame(tree, arguments[2]);
+        assertNull(arguments[3]);
+        assertTrue(action.getStreamingParameters().isEmpty());
+
+        WebSocketResponse response = action.invoke(arguments);
+        assertEquals("value", response.getResponseAsJson().get("name").getAsString());
+    }
+
+    @Test
+    public void streamingParametersTest() throws Exception {
+        WebsocketAction action = WebsocketAction.of("test/fail", new TestHandlers(),
+                                                    TestHandlers.class.getMethod("fail", String.class), 1);
+        assertEquals(1, action.getStreamingParameters().size());
+        assertEquals(1, action.getRequirement().getIndex());
+    }
+
+    @Test(expected = HiveException.class)
+    public void checkedExceptionTest() throws Exception {
+        WebsocketAction action = WebsocketAction.of("test/fail", new TestHandlers(),
+                                                    TestHandlers.class.getMethod("fail", String.class), 0);
+        action.invoke(new Object[]{"checked"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uncheckedExceptionTest() throws Exception {
+        WebsocketAction action = WebsocketAction.of("test/fail", new TestHandlers(),
+                                                    TestHandlers.class.getMethod("fail", String.class), 0);
+        action.invoke(new Object[]{"unchecked"});
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void bindingErrorTest() throws Exception {
+        WebsocketAction action = WebsocketAction.of("test/fail", new TestHandlers(),
+                                                    TestHandlers.class.getMethod("fail", String.class), 0);
+        WebsocketRequest request = new WebsocketRequest(new JsonObject());
+        request.setBindingError(new JsonSyntaxException("malformed"));
+        action.bindArguments(request, null);
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void typeMismatchTest() throws Exception {
+        WebsocketAction action = WebsocketAction.of("test/echo", new TestHandlers(),
+                                                    TestHandlers.class.getMethod("echo", String.class, List.class,
+                                                                                 JsonObject.class, Session.class), 0);
+        JsonObject tree = new JsonParser().parse("{\"action\": \"test/echo\", \"numbers\": \"1, 2, 3\"}")
+            .getAsJsonObject();
+        action.bindArguments(new WebsocketRequest(tree), null);
+    }
+
+    public static class TestHandlers extends WebsocketHandlers {
+
+        @Action("test/echo")
+        @PermitAll
+        public WebSocketResponse echo(@WsParam("name") String name, @WsParam("numbers") List<Integer> numbers,
+                                      JsonObject request, Session session) {
+            WebSocketResponse response = new WebSocketResponse();
+            response.addValue("name", name, null);
+            return response;
+        }
+
+        @Action("test/sum")
+        @PermitAll
+        public WebSocketResponse sum(@WsParam("numbers") List<Integer> numbers) {
+            int sum = 0;
+            for (Integer number : numbers) {
+                sum += number;
+            }
+            WebSocketResponse response = new WebSocketResponse();
+            response.addValue("sum", sum, null);
+            return response;
+        }
+
+        @Action("test/fail")
+        @PermitAll
+        public WebSocketResponse fail(@WsParam("reason") String reason) throws IOException {
+            if ("checked".equals(reason)) {
+                throw new IOException(reason);
+            }
+            throw new IllegalArgumentException(reason);
+        }
+    }
+}
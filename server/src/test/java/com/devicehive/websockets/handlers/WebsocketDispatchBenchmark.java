@@ -0,0 +1,83 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.devicehive.json.GsonFactory;
+
+import com.devicehive.websockets.converters.WebSocketResponse;
+import com.devicehive.websockets.handlers.annotations.Action;
+import com.devicehive.websockets.handlers.annotations.WsParam;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.security.PermitAll;
+import javax.websocket.Session;
+
+/**
+ * Compares dispatch overhead per action of reflective invocation with arguments collected to a list, as it was done
+ * before dispatch table was introduced, with precompiled {@link WebsocketAction}. Run with <code>mvn test-compile
+ * exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.devicehive.websockets.handlers.WebsocketDispatchBenchmark
+ * </code>.
+ */
+public class WebsocketDispatchBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkHandlers handlers = new BenchmarkHandlers();
+        Method method = BenchmarkHandlers.class.getMethod("process", String.class, Long.class, Session.class);
+        WebsocketAction action = WebsocketAction.of("benchmark/process", handlers, method, 0);
+        JsonObject request = new JsonParser().parse("{\"action\": \"benchmark/process\", \"name\": \"value\", "
+                                                    + "\"id\": 42}").getAsJsonObject();
+
+        reflective(handlers, method, request, WARMUP);
+        precompiled(action, request, WARMUP);
+        long reflective = reflective(handlers, method, request, ITERATIONS);
+        long precompiled = precompiled(action, request, ITERATIONS);
+        System.out.printf("reflective dispatch %d ns, dispatch table %d ns per request%n", reflective / ITERATIONS,
+                          precompiled / ITERATIONS);
+    }
+
+    private static long reflective(Object handlers, Method method, JsonObject request, int iterations)
+        throws Exception {
+        String[] names = {"name", "id", null};
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Type[] types = method.getGenericParameterTypes();
+            List<Object> values = new ArrayList<>(types.length);
+            for (int j = 0; j < types.length; j++) {
+                if (Session.class.equals(types[j])) {
+                    values.add(null);
+                } else {
+                    values.add(GsonFactory.createGson().fromJson(request.get(names[j]), types[j]));
+                }
+            }
+            method.invoke(handlers, values.toArray());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long precompiled(WebsocketAction action, JsonObject request, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            action.invoke(action.bindArguments(new WebsocketRequest(request), null));
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static class BenchmarkHandlers extends WebsocketHandlers {
+
+        private static final WebSocketResponse RESPONSE = new WebSocketResponse();
+
+        @Action("benchmark/process")
+        @PermitAll
+        public WebSocketResponse process(@WsParam("name") String name, @WsParam("id") Long id, Session session) {
+            return RESPONSE;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.devicehive.websockets.handlers;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonObject;
+
+import com.devicehive.websockets.converters.JsonMessageBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.websocket.Session;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class WebsocketExecutorTest {
+
+    private WebsocketExecutor executor;
+    private Session session;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new WebsocketExecutor();
+        WebsocketAction action = WebsocketAction.of("test/sum", new WebsocketActionTest.TestHandlers(),
+                                                    WebsocketActionTest.TestHandlers.class
+                                                        .getMethod("sum", List.class), 0);
+        Field actions = WebsocketExecutor.class.getDeclaredField("actions");
+        actions.setAccessible(true);
+        actions.set(executor, ImmutableMap.of("test/sum", action));
+        final Map<String, Object> userProperties = new HashMap<>();
+        session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                                                   new InvocationHandler() {
+                                                       @Override
+                                                       public Object invoke(Object proxy, Method method,
+                                                                            Object[] args) {
+                                                           return "getUserProperties".equals(method.getName())
+                                                                  ? userProperties : null;
+                                                       }
+                                                   });
+    }
+
+    @Test
+    public void streamingTest() throws Exception {
+        JsonObject response = execute("{\"action\": \"test/sum\", \"numbers\": [1, 2, 3], \"requestId\": 7}");
+        assertEquals(6, response.get("sum").getAsInt());
+        assertEquals(7, response.get(JsonMessageBuilder.REQUEST_ID).getAsInt());
+    }
+
+    @Test
+    public void bindingErrorBeforeRequestIdTest() throws Exception {
+        JsonObject response = execute("{\"action\": \"test/sum\", \"numbers\": [1, {\"nested\": [2, {}]}, 3], "
+                                      + "\"requestId\": 7}");
+        assertError(response);
+        assertEquals(7, response.get(JsonMessageBuilder.REQUEST_ID).getAsInt());
+    }
+
+    @Test
+    public void bindingErrorAtValueStartTest() throws Exception {
+        JsonObject response = execute("{\"action\": \"test/sum\", \"numbers\": {\"first\": 1}, \"requestId\": 7}");
+        assertError(response);
+        assertEquals(7, response.get(JsonMessageBuilder.REQUEST_ID).getAsInt());
+        assertEquals("test/sum", response.get(JsonMessageBuilder.ACTION).getAsString());
+    }
+
+    private JsonObject execute(String frame) {
+        return executor.execute(new StringReader(frame), session);
+    }
+
+    private static void assertError(JsonObject response) {
+        assertEquals(JsonMessageBuilder.ERROR, response.get(JsonMessageBuilder.STATUS).getAsString());
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.get(JsonMessageBuilder.ERROR_CODE).getAsInt());
+    }
+}
@@ -0,0 +1,87 @@
+package com.devicehive.websockets.util;
+
+import com.devicehive.messages.subscriptions.CommandSubscription;
+import com.devicehive.messages.subscriptions.NotificationSubscription;
+import com.devicehive.messages.subscriptions.SubscriptionManager;
+import com.devicehive.websockets.HiveWebsocketSessionState;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.websocket.Session;
+
+/**
+ * Opens and closes sessions with a few command and notification subscriptions each and measures time of the session
+ * teardown. Subscriptions are spread over a small set of devices, so storages keep many subscriptions per device, as
+ * they do in production. Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.devicehive.websockets.util.SessionChurnBenchmark</code>.
+ */
+public class SessionChurnBenchmark {
+
+    private static final int SESSIONS = 100000;
+    private static final int SUBSCRIPTIONS_PER_SESSION = 4;
+    private static final int DEVICES = 1000;
+
+    public static void main(String[] args) {
+        SubscriptionManager subscriptionManager = new SubscriptionManager();
+        SubscriptionSessionMap subscriptionSessionMap = new SubscriptionSessionMap();
+
+        churn(subscriptionManager, subscriptionSessionMap, SESSIONS / 10);
+        long start = System.nanoTime();
+        long closeTime = churn(subscriptionManager, subscriptionSessionMap, SESSIONS);
+        long total = System.nanoTime() - start;
+
+        for (long deviceId = 0; deviceId < DEVICES; deviceId++) {
+            if (!subscriptionManager.getCommandSubscriptionStorage().get(deviceId).isEmpty()
+                || !subscriptionManager.getNotificationSubscriptionStorage().get(deviceId).isEmpty()) {
+                throw new IllegalStateException("Subscriptions of device " + deviceId + " are left after close");
+            }
+        }
+        System.out.printf("%d sessions opened and closed in %d ms, close %d ns per session%n", SESSIONS,
+                          total / 1000000, closeTime / SESSIONS);
+    }
+
+    private static long churn(SubscriptionManager subscriptionManager, SubscriptionSessionMap subscriptionSessionMap,
+                              int sessions) {
+        long closeTime = 0;
+        for (int i = 0; i < sessions; i++) {
+            Session session = session(String.valueOf(i));
+            HiveWebsocketSessionState state = new HiveWebsocketSessionState();
+            for (int j = 0; j < SUBSCRIPTIONS_PER_SESSION; j++) {
+                long deviceId = (i * SUBSCRIPTIONS_PER_SESSION + j) % DEVICES;
+                Set<String> guids = Collections.singleton(String.valueOf(deviceId));
+                UUID commandSubscription = UUID.randomUUID();
+                subscriptionSessionMap.put(commandSubscription, session);
+                state.addOldFormatCommandSubscription(guids, commandSubscription);
+                state.getCommandSubscriptions().add(commandSubscription);
+                subscriptionManager.getCommandSubscriptionStorage().insert(
+                    new CommandSubscription(null, deviceId, commandSubscription, null, null));
+                UUID notificationSubscription = UUID.randomUUID();
+                subscriptionSessionMap.put(notificationSubscription, session);
+                state.addOldFormatNotificationSubscription(guids, notificationSubscription);
+                state.getNotificationSubscriptions().add(notificationSubscription);
+                subscriptionManager.getNotificationSubscriptionStorage().insert(
+                    new NotificationSubscription(null, deviceId, notificationSubscription, null, null));
+            }
+            long start = System.nanoTime();
+            state.close(subscriptionManager, subscriptionSessionMap);
+            closeTime += System.nanoTime() - start;
+        }
+        return closeTime;
+    }
+
+    private static Session session(final String id) {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                                                new InvocationHandler() {
+                                                    @Override
+                                                    public Object invoke(Object proxy, Method method,
+                                                                         Object[] args) {
+                                                        return "getId".equals(method.getName()) ? id : null;
+                                                    }
+                                                });
+    }
+}
@@ -0,0 +1,96 @@
+package com.devicehive.websockets.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SessionPipelineTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void maxInFlightTest() throws Exception {
+        SessionPipeline pipeline = new SessionPipeline(executor);
+        assertFalse(pipeline.isEnabled());
+        pipeline.setMaxInFlight(3);
+        assertTrue(pipeline.isEnabled());
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    sleep(5);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }, false);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void orderedTest() throws Exception {
+        SessionPipeline pipeline = new SessionPipeline(executor);
+        pipeline.setMaxInFlight(8);
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            final int number = i;
+            pipeline.submit(new Runnable() {
+                @Override
+                public void run() {
+                    sleep(number % 3);
+                    executed.add(number);
+                    done.countDown();
+                }
+            }, true);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+CREATE TABLE device_notification_rollup (
+  device_id       BIGINT                   NOT NULL,
+  notification    VARCHAR(128)             NOT NULL,
+  bucket_size     INT                      NOT NULL,
+  bucket_start    TIMESTAMP WITH TIME ZONE NOT NULL,
+  first_id        BIGINT                   NOT NULL,
+  first_timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  count           BIGINT                   NOT NULL
+);
+
+ALTER TABLE device_notification_rollup ADD CONSTRAINT device_notification_rollup_pk PRIMARY KEY (device_id, bucket_size, bucket_start, notification);
+ALTER TABLE device_notification_rollup ADD CONSTRAINT device_notification_rollup_device_fk FOREIGN KEY (device_id) REFERENCES device (id) ON DELETE CASCADE;
+
+-- Buckets are aligned to epoch, the same way as floor(extract(EPOCH FROM timestamp) / gridInterval) of grid queries
+CREATE FUNCTION device_notification_rollup_insert() RETURNS TRIGGER AS $$
+DECLARE
+  rollup_size  INT;
+  rollup_start TIMESTAMP WITH TIME ZONE;
+BEGIN
+  FOREACH rollup_size IN ARRAY ARRAY[60, 300, 3600] LOOP
+    rollup_start := to_timestamp(floor(extract(EPOCH FROM NEW.timestamp) / rollup_size) * rollup_size);
+    LOOP
+      UPDATE device_notification_rollup
+      SET count = count + 1,
+        first_id = CASE WHEN (NEW.timestamp, NEW.id) < (first_timestamp, first_id) THEN NEW.id ELSE first_id END,
+        first_timestamp = LEAST(NEW.timestamp, first_timestamp)
+      WHERE device_id = NEW.device_id AND bucket_size = rollup_size AND bucket_start = rollup_start
+            AND notification = NEW.notification;
+      EXIT WHEN FOUND;
+      BEGIN
+        INSERT INTO device_notification_rollup (device_id, notification, bucket_size, bucket_start, first_id,
+                                                first_timestamp, count)
+        VALUES (NEW.device_id, NEW.notification, rollup_size, rollup_start, NEW.id, NEW.timestamp, 1);
+        EXIT;
+      EXCEPTION WHEN unique_violation THEN
+        -- concurrent insert of the same bucket, update it on the next iteration
+      END;
+    END LOOP;
+  END LOOP;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER device_notification_rollup_trigger AFTER INSERT ON device_notification
+FOR EACH ROW EXECUTE PROCEDURE device_notification_rollup_insert();
+
+INSERT INTO device_notification_rollup (device_id, notification, bucket_size, bucket_start, first_id, first_timestamp,
+                                        count)
+  SELECT DISTINCT ON (n.device_id, s.size, bucket_start, n.notification)
+    n.device_id, n.notification, s.size,
+    to_timestamp(floor(extract(EPOCH FROM n.timestamp) / s.size) * s.size) AS bucket_start,
+    n.id, n.timestamp,
+    count(*) OVER (PARTITION BY n.device_id, s.size, to_timestamp(floor(extract(EPOCH FROM n.timestamp) / s.size) * s.size),
+      n.notification)
+  FROM device_notification n CROSS JOIN (VALUES (60), (300), (3600)) AS s(size)
+  ORDER BY n.device_id, s.size, bucket_start, n.notification, n.timestamp, n.id;
@@ -0,0 +1,3 @@
+-- Server allocates notification and command ids in blocks of 50 (pooled-lo), so inserts can be batched
+ALTER SEQUENCE device_notification_id_seq INCREMENT BY 50;
+ALTER SEQUENCE device_command_id_seq INCREMENT BY 50;
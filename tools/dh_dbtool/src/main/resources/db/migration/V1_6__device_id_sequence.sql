@@ -0,0 +1,2 @@
+-- Server allocates device ids in blocks of 50 (pooled-lo), so bulk device registration can batch inserts
+ALTER SEQUENCE device_id_seq INCREMENT BY 50;
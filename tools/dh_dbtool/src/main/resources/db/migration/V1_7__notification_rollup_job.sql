@@ -0,0 +1,20 @@
+-- Rollups are built by a periodic job instead of a row trigger, so notification insert does not update shared rollup
+-- rows. The job rolls up closed buckets from rolled_up_to on, newer notifications are read from device_notification.
+DROP TRIGGER device_notification_rollup_trigger ON device_notification;
+DROP FUNCTION device_notification_rollup_insert();
+
+CREATE TABLE device_notification_rollup_state (
+  bucket_size  INT                      NOT NULL,
+  rolled_up_to TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+ALTER TABLE device_notification_rollup_state ADD CONSTRAINT device_notification_rollup_state_pk PRIMARY KEY (bucket_size);
+
+-- Buckets filled by the trigger are complete except the current one, it is rolled up again by the job
+INSERT INTO device_notification_rollup_state (bucket_size, rolled_up_to)
+  SELECT s.size, to_timestamp(floor(extract(EPOCH FROM now()) / s.size) * s.size)
+  FROM (VALUES (60), (300), (3600)) AS s(size);
+
+DELETE FROM device_notification_rollup r
+USING device_notification_rollup_state s
+WHERE r.bucket_size = s.bucket_size AND r.bucket_start >= s.rolled_up_to;